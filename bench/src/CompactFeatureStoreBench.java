@@ -0,0 +1,61 @@
+package src;
+
+import java.util.Random;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 比较普通边权表与以 {@link CompactFeatureStore} 为后备的紧凑边权表的大小、A*耗时与路径长度。
+ * <p>基准测试不随应用发布，编译与运行方式见 README 的“基准测试”一节。</p>
+ */
+public class CompactFeatureStoreBench {
+
+    /**
+     * 基准测试：同一幅随机图像上分别用普通边权表与紧凑边权表做A*，比较边权表大小、耗时与路径长度
+     * @param args 可选的图像边长，默认2000
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int[][] matrix = new int[size][size];
+        Random random = new Random(25);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int value = (int) (128 + 100 * Math.sin(x * 0.03) * Math.cos(y * 0.02)) + random.nextInt(32);
+                matrix[x][y] = value * 0x010101;
+            }
+        }
+        FeatureMap gMatrix = FeaturePipeline.findGMatrix(matrix);
+        FeatureMap fgMatrix = FeaturePipeline.findFgMatrix(gMatrix);
+        CompactFeatureStore store = CompactFeatureStore.compute(matrix, fgMatrix);
+        // 存储上的fg视图是另一个FeatureMap对象，两张边权表分开缓存
+        FeatureMap compactFg = FeatureMap.view(store);
+        CostTable dense = CostTable.of(fgMatrix);
+        CostTable compact = CostTable.of(compactFg);
+        System.out.printf("%s%n边权表: 普通 %d MB, 紧凑 %d MB%n", store,
+                dense.byteSize() >> 20, compact.byteSize() >> 20);
+
+        int[][] queries = new int[10][4];
+        for (int[] query : queries) {
+            for (int i = 0; i < 4; i++) query[i] = random.nextInt(size);
+        }
+        double worst = 0;
+        for (int round = 0; round < 3; round++) {
+            long denseNanos = 0;
+            long compactNanos = 0;
+            for (int[] query : queries) {
+                long start = System.nanoTime();
+                ComputeMinCostPath.PathResult expected = ComputeMinCostPath.findShortestPath(fgMatrix,
+                        query[1], query[0], query[3], query[2], SearchStrategy.ASTAR);
+                long middle = System.nanoTime();
+                ComputeMinCostPath.PathResult actual = ComputeMinCostPath.findShortestPath(compactFg,
+                        query[1], query[0], query[3], query[2], SearchStrategy.ASTAR);
+                compactNanos += System.nanoTime() - middle;
+                denseNanos += middle - start;
+                double scale = Math.max(1, expected.getDistance());
+                worst = Math.max(worst, Math.abs(expected.getDistance() - actual.getDistance()) / scale);
+            }
+            System.out.printf("A* %d次: 普通 %.1f ms, 紧凑 %.1f ms, 路径长度最大相对误差 %.2e%n",
+                    queries.length, denseNanos / 1e6, compactNanos / 1e6, worst);
+        }
+    }
+}
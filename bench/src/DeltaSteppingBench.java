@@ -0,0 +1,67 @@
+package src;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 比较 {@link DeltaStepping} 与串行 {@link PixelDijkstra} 整图建树的耗时与结果。
+ * <p>基准测试不随应用发布，编译与运行方式见 README 的“基准测试”一节。</p>
+ */
+public class DeltaSteppingBench {
+
+    /**
+     * 基准测试：与串行的逐像素Dijkstra比较整图建树的耗时，线程数从1到CPU核数（至少到4），
+     * 并验证各线程数下结果逐位相同
+     * @param args 可选：图像边长（默认2000）
+     */
+    public static void main(String[] args) throws Exception {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Random random = new Random(16);
+        FeatureMap fgMatrix = new FeatureMap(side, side);
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                fgMatrix.set(i, j, (float) (0.5 + 0.4 * Math.sin(i * 0.05) * Math.cos(j * 0.04) + 0.1 * random.nextDouble()));
+            }
+        }
+        CostTable.of(fgMatrix);
+        int seedRow = side / 3;
+        int seedCol = side / 2;
+
+        PixelDijkstra sequential = new PixelDijkstra(fgMatrix);
+        long sequentialTime = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long t0 = System.nanoTime();
+            sequential.reset(seedRow, seedCol);
+            sequential.expandUntil(-1);
+            sequentialTime = Math.min(sequentialTime, System.nanoTime() - t0);
+        }
+        System.out.printf("%d x %d, sequential PixelDijkstra: %d ms%n", side, side, sequentialTime / 1_000_000);
+
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        Long reference = null;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            ForkJoinPool pool = threads == 1 ? null : new ForkJoinPool(threads);
+            DeltaStepping deltaStepping = new DeltaStepping(fgMatrix, pool);
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                long t0 = System.nanoTime();
+                deltaStepping.build(seedRow, seedCol);
+                best = Math.min(best, System.nanoTime() - t0);
+            }
+            long checksum = deltaStepping.checksum();
+            if (reference == null) reference = checksum;
+
+            double maxRelativeDiff = 0;
+            for (int i = 0; i < side * side; i++) {
+                double expected = sequential.distance(i);
+                maxRelativeDiff = Math.max(maxRelativeDiff, Math.abs(deltaStepping.distance(i) - expected) / Math.max(1, expected));
+            }
+            System.out.printf("threads %d: %d ms, speedup x%.2f, identical=%b, max relative diff vs sequential %.2e%n",
+                    threads, best / 1_000_000, (double) sequentialTime / best, checksum == reference, maxRelativeDiff);
+            if (pool != null) pool.shutdown();
+        }
+        System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+    }
+}
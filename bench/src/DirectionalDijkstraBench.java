@@ -0,0 +1,70 @@
+package src;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 比较逐像素A*（{@link PixelDijkstra}）与展开状态A*（{@link DirectionalDijkstra}）。
+ * <p>基准测试不随应用发布，编译与运行方式见 README 的“基准测试”一节。</p>
+ */
+public class DirectionalDijkstraBench {
+
+    /**
+     * 基准测试：在同一组随机起止点上比较逐像素A*与展开状态A*的耗时、结算数与路径长度
+     */
+    public static void main(String[] args) {
+        int rows = 1000;
+        int cols = 1000;
+        int queries = 40;
+        Random random = new Random(10);
+        FeatureMap fgMatrix = new FeatureMap(rows, cols);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                fgMatrix.set(i, j, (float) (0.5 + 0.4 * Math.sin(i * 0.05) * Math.cos(j * 0.04) + 0.1 * random.nextDouble()));
+            }
+        }
+        int[][] endpoints = new int[queries][4];
+        for (int[] e : endpoints) {
+            e[0] = random.nextInt(rows);
+            e[1] = random.nextInt(cols);
+            e[2] = Math.min(rows - 1, Math.max(0, e[0] + random.nextInt(301) - 150));
+            e[3] = Math.min(cols - 1, Math.max(0, e[1] + random.nextInt(301) - 150));
+        }
+
+        PixelDijkstra pixelSearch = new PixelDijkstra(fgMatrix);
+        DirectionalDijkstra directionalSearch = new DirectionalDijkstra(fgMatrix);
+        for (int round = 0; round < 3; round++) { // 前两轮预热
+            long pixelTime = 0;
+            long directionalTime = 0;
+            long pixelSettled = 0;
+            long directionalSettled = 0;
+            double pixelCost = 0;
+            double directionalCost = 0;
+            for (int[] e : endpoints) {
+                long t0 = System.nanoTime();
+                int target = pixelSearch.index(e[2], e[3]);
+                pixelSearch.reset(e[0], e[1], target);
+                pixelSearch.expandUntil(target);
+                List<int[]> path = pixelSearch.pathTo(target).getPath();
+                long t1 = System.nanoTime();
+                ComputeMinCostPath.PathResult exact = directionalSearch.findPath(e[0], e[1], e[2], e[3]);
+                long t2 = System.nanoTime();
+
+                pixelTime += t1 - t0;
+                directionalTime += t2 - t1;
+                pixelSettled += pixelSearch.getSettledCount();
+                directionalSettled += directionalSearch.getSettledCount();
+                pixelCost += DirectionalDijkstra.pathCost(fgMatrix, path);
+                directionalCost += exact.getDistance();
+            }
+            System.out.printf("round %d: pixel %d ms / %d settled, directional %d ms / %d settled, "
+                            + "time x%.2f, path cost %.4f -> %.4f (%.3f%%)%n",
+                    round, pixelTime / 1_000_000, pixelSettled, directionalTime / 1_000_000, directionalSettled,
+                    (double) directionalTime / pixelTime, pixelCost, directionalCost,
+                    100 * (pixelCost - directionalCost) / pixelCost);
+        }
+        System.out.println("state storage: " + ((Float.BYTES + Byte.BYTES) * CostTable.DIRECTION_COUNT + Float.BYTES) + " B/px");
+    }
+}
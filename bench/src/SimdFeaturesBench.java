@@ -0,0 +1,70 @@
+package src;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 比较 {@link SimdFeatures} 的标量实现与向量实现的耗时，并检查结果逐位相同。
+ * <p>基准测试不随应用发布，编译与运行方式见 README 的“基准测试”一节。</p>
+ */
+public class SimdFeaturesBench {
+
+    /**
+     * 基准测试：比较标量实现与当前向量实现，并检查结果逐位相同。
+     * 需要 --add-modules jdk.incubator.vector；用 -Dsimd.bits=64/128/256/512 依次运行即可比较各向量宽度
+     * @param args 可选的图像边长，默认2000
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int[][] matrix = new int[size][size];
+        Random random = new Random(23);
+        for (int[] row : matrix) {
+            for (int x = 0; x < size; x++) row[x] = random.nextInt(1 << 24);
+        }
+        float[] src = SimdFeatures.flatten(matrix);
+
+        FloatKernels scalar = new ScalarFloatKernels();
+        float[][] expected = run(scalar, src, size);
+        double scalarMillis = time(scalar, src, size);
+        System.out.printf("%-12s %8.2f ms%n", scalar.name(), scalarMillis);
+        if (!SimdFeatures.isVectorized()) {
+            System.out.println("Vector API不可用，只测标量实现");
+            return;
+        }
+        float[][] actual = run(SimdFeatures.kernels(), src, size);
+        boolean identical = true;
+        for (int i = 0; i < expected.length; i++) {
+            identical &= Arrays.equals(expected[i], actual[i]);
+        }
+        double millis = time(SimdFeatures.kernels(), src, size);
+        System.out.printf("%-12s %8.2f ms  加速 %.2fx  逐位相同: %b%n",
+                SimdFeatures.implementation(), millis, scalarMillis / millis, identical);
+    }
+
+    // 依次计算Sobel、梯度值、拉普拉斯与fg，返回全部结果
+    private static float[][] run(FloatKernels kernels, float[] src, int size) {
+        float[] ix = new float[src.length];
+        float[] iy = new float[src.length];
+        float[] g = new float[src.length];
+        float[] laplacian = new float[src.length];
+        float[] fg = new float[src.length];
+        kernels.sobel(src, size, size, ix, iy);
+        kernels.magnitude(ix, iy, g);
+        kernels.laplacian(src, size, size, laplacian);
+        kernels.normalize(g, kernels.max(g, 0, g.length), fg, 0, g.length);
+        return new float[][]{ix, iy, g, laplacian, fg};
+    }
+
+    // 预热后取多次的最小耗时
+    private static double time(FloatKernels kernels, float[] src, int size) {
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < 15; i++) {
+            long start = System.nanoTime();
+            run(kernels, src, size);
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+        }
+        return best;
+    }
+}
@@ -8,6 +8,7 @@ module src {
     requires javafx.web;
     requires javafx.swt;
     requires java.desktop;
+    requires static jdk.incubator.vector; // 可选：SIMD特征内核，运行时不存在时退回标量实现
     opens src;
 
 }
@@ -0,0 +1,89 @@
+package src;
+
+import java.util.Collections;
+import java.util.function.Consumer;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 随时可交出结果的（anytime）窗口A*搜索，用于实时路径。
+ * <p>与 {@link SearchStrategy#WINDOWED} 一样只在起点、终点包围盒外扩的窗口内朝终点做A*，缓冲区只随窗口大小增长；
+ * 窗口边框上一旦有像素先于终点结算，说明可能存在绕出窗口的更短路径，立即放弃这个窗口、把外扩量加倍重来，
+ * 因此结果与窗口搜索（也即整幅图像上的搜索）一致。同时记下当前窗口已结算像素中离终点最近的一个。</p>
+ * <p>预算（见 {@link SearchBudget}，从第一个窗口开始计）用完时终点若仍未结算，就把起点到这个最近像素的路径
+ * 标记为部分路径（{@link ComputeMinCostPath.PathResult#isPartial()}）先交给调用方显示。
+ * 边框上还没有像素结算时，窗口内已结算像素的距离与父指针都与整幅图像上的搜索一致，部分路径就是完整路径的可靠前缀之一。</p>
+ * <p>交出部分路径后搜索继续，终点结算后返回完整路径，调用方用它替换部分路径。
+ * 线程被中断时（例如光标又移动了）立即放弃。</p>
+ */
+public class AnytimeSearch {
+
+    // 每结算这么多个像素（减一后作掩码）检查一次时间预算与线程中断
+    private static final int BUDGET_CHECK_MASK = 255;
+
+    /**
+     * 在预算内搜索(startRow, startCol)到(endRow, endCol)的最短路，超出预算时先交出部分路径
+     * @param budget 交出部分路径之前的预算
+     * @param partialConsumer 接收部分路径，至多调用一次，在搜索线程上调用
+     * @return 完整的最短路径；不可达或线程被中断时路径为空
+     */
+    public static ComputeMinCostPath.PathResult search(FeatureMap fgMatrix, int startRow, int startCol,
+                                                       int endRow, int endCol, SearchBudget budget,
+                                                       Consumer<ComputeMinCostPath.PathResult> partialConsumer) {
+        long startNanos = System.nanoTime();
+        SearchWorkspace workspace = SearchWorkspace.current();
+        int rows = fgMatrix.getRows();
+        int cols = fgMatrix.getCols();
+        int span = Math.max(Math.abs(startRow - endRow), Math.abs(startCol - endCol));
+        int margin = Math.max(ComputeMinCostPath.WINDOW_MIN_MARGIN, span / 2);
+        boolean partialSent = false;
+        int settled = 0; // 所有窗口累计的结算数
+
+        while (true) {
+            int top = Math.max(0, Math.min(startRow, endRow) - margin);
+            int left = Math.max(0, Math.min(startCol, endCol) - margin);
+            int bottom = Math.min(rows, Math.max(startRow, endRow) + margin + 1);
+            int right = Math.min(cols, Math.max(startCol, endCol) + margin + 1);
+            boolean wholeImage = top == 0 && left == 0 && bottom == rows && right == cols;
+
+            PixelDijkstra search = new PixelDijkstra(fgMatrix, top, left, bottom - top, right - left, false, workspace);
+            int target = search.index(endRow, endCol);
+            search.reset(startRow, startCol, target);
+
+            int nearest = -1;
+            long nearestDistance = Long.MAX_VALUE;
+            boolean widen = false;
+            while (!widen) {
+                int current = search.step();
+                if (current < 0) return new ComputeMinCostPath.PathResult(-1, Collections.emptyList());
+                if (current == target) return search.pathTo(target);
+                settled++;
+                if (!wholeImage && search.isOnWindowBorder(current)) {
+                    widen = true;
+                    continue;
+                }
+
+                // 离光标（终点）最近的已结算像素，按欧氏距离的平方比较
+                long dRow = search.rowOf(current) - endRow;
+                long dCol = search.colOf(current) - endCol;
+                long distance = dRow * dRow + dCol * dCol;
+                if (distance < nearestDistance) {
+                    nearestDistance = distance;
+                    nearest = current;
+                }
+
+                if ((settled & BUDGET_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) {
+                    return new ComputeMinCostPath.PathResult(-1, Collections.emptyList());
+                }
+                if (!partialSent && (settled >= budget.getNodes()
+                        || ((settled & BUDGET_CHECK_MASK) == 0 && budget.isExceeded(startNanos, settled)))) {
+                    partialSent = true;
+                    ComputeMinCostPath.PathResult prefix = search.pathTo(nearest);
+                    partialConsumer.accept(new ComputeMinCostPath.PathResult(
+                            prefix.getDistance(), prefix.getPath(), 0, true));
+                }
+            }
+            margin *= 2;
+        }
+    }
+}
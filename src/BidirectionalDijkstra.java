@@ -0,0 +1,238 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 双向Dijkstra，用于种子点之间的长路径段。
+ * <p>正向从起点、反向从终点同时扩展（有两个以上核心且交互车道有空闲线程时各占一个线程，否则在当前线程交替扩展），
+ * 一旦某个像素被两侧都结算，就得到一条候选路径，其长度μ是最短路长度的上界；
+ * 当两侧堆顶键值之和不小于μ时，任何更短的路径都必然经过两侧都已标号的像素，于是停止。
+ * 两侧在不同线程上时互不读取对方的状态，每扩展一轮在 {@link Meeting} 中会合一次，再做汇合检测与终止判断。
+ * 最后在两侧结算过的像素中精确地取最优的汇合点，拼接出完整路径。</p>
+ * <p>转向惩罚只取决于相邻两条边，汇合点处的那一次转向在拼接时补上，
+ * 因此返回的distance就是整条路径按 {@link ComputeMinCostPath#calculateDynamicCost} 累加的长度。
+ * 不计转向惩罚时结果与单向Dijkstra完全一致；计入转向惩罚后边权依赖于走来的方向，
+ * 单向、双向的逐像素搜索都只是近似，两者给出的路径可能略有不同。</p>
+ */
+public class BidirectionalDijkstra {
+
+    // 正向一侧最多单独结算这么多个像素等待反向一侧在交互车道上开始，超过后由当前线程收回反向一侧
+    private static final int BACKWARD_START_WINDOW = 1 << 14;
+    // 两侧在不同线程上扩展时，每侧结算这么多个像素后会合一次，检测汇合并判断终止
+    private static final int CONCURRENT_ROUND = 1 << 10;
+
+    /**
+     * 双向搜索(startRow, startCol)到(endRow, endCol)的最短路
+     * @return 最短路径，坐标为 {row, col}
+     */
+    public static ComputeMinCostPath.PathResult search(FeatureMap fgMatrix, int startRow, int startCol,
+                                                       int endRow, int endCol) {
+        // 两侧同时使用，取当前线程的两个不同槽位
+        PixelDijkstra forwardSearch = new PixelDijkstra(fgMatrix, false, SearchWorkspace.current(0));
+        PixelDijkstra backwardSearch = new PixelDijkstra(fgMatrix, true, SearchWorkspace.current(1));
+        forwardSearch.reset(startRow, startCol);
+        backwardSearch.reset(endRow, endCol);
+
+        Side forward = new Side(forwardSearch);
+        Side backward = new Side(backwardSearch);
+        Meeting meeting = new Meeting(forward, backward);
+
+        TaskLanes lanes = TaskLanes.shared();
+        Future<?> backwardTask = null;
+        if (Runtime.getRuntime().availableProcessors() >= 2 && lanes.hasIdleThread(TaskLanes.Lane.INTERACTIVE)) {
+            // 反向一侧交给交互车道，正向一侧在当前线程扩展。
+            // 反向一侧由先取得claimed的一方执行：车道线程迟迟没有开始时，当前线程收回它，避免正向一侧独自扩展整幅图像
+            AtomicBoolean claimed = new AtomicBoolean();
+            backwardTask = lanes.submit(TaskLanes.Lane.INTERACTIVE, () -> {
+                if (claimed.compareAndSet(false, true)) meeting.runRounds(backward);
+            });
+            // 这一段只扩展正向一侧自己的状态，汇合检测留到第一次同步时进行
+            while (!claimed.get() && forward.settledSize < BACKWARD_START_WINDOW && forward.expand(1)) {
+                // 等待反向一侧开始
+            }
+            if (claimed.compareAndSet(false, true)) {
+                backwardTask = null;
+            } else {
+                meeting.runRounds(forward);
+                awaitUninterruptibly(backwardTask);
+            }
+        }
+        if (backwardTask == null) {
+            // 两侧在当前线程交替扩展，每结算一对像素检测一次汇合
+            boolean finished = false;
+            while (!finished) {
+                forward.expand(1);
+                backward.expand(1);
+                finished = meeting.meet();
+            }
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            return new ComputeMinCostPath.PathResult(-1, Collections.emptyList());
+        }
+
+        // 两侧线程都已结束，此时读取的状态是完整的；在结算过的像素中精确地找最优汇合点
+        int bestMeeting = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (Side side : new Side[]{forward, backward}) {
+            for (int i = 0; i < side.settledSize; i++) {
+                int node = side.settledNodes[i];
+                double total = joinedDistance(forwardSearch, backwardSearch, node);
+                if (total < bestDistance) {
+                    bestDistance = total;
+                    bestMeeting = node;
+                }
+            }
+        }
+        if (bestMeeting < 0) {
+            return new ComputeMinCostPath.PathResult(-1, Collections.emptyList());
+        }
+        return buildResult(forwardSearch, backwardSearch, bestMeeting, bestDistance);
+    }
+
+    // 反向一侧使用的是调用线程的工作区，必须等它结束后才能返回；期间的中断留给调用方处理
+    private static void awaitUninterruptibly(Future<?> task) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                task.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("反向搜索失败", e.getCause());
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // 经过node的完整路径长度：正向距离 + 反向距离 + node处的转向惩罚
+    private static double joinedDistance(PixelDijkstra forward, PixelDijkstra backward, int node) {
+        double forwardDistance = forward.distance(node);
+        double backwardDistance = backward.distance(node);
+        if (forwardDistance == Double.MAX_VALUE || backwardDistance == Double.MAX_VALUE) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double total = forwardDistance + backwardDistance;
+        int inDirection = forward.inDirection(node);
+        int outDirection = backward.inDirection(node);
+        if (inDirection >= 0 && outDirection >= 0) {
+            CostTable costTable = forward.getCostTable();
+            int pixel = costTable.index(forward.rowOf(node), forward.colOf(node));
+            total += costTable.staticCost(pixel, outDirection) * (costTable.turnPenalty(inDirection, outDirection) - 1);
+        }
+        return total;
+    }
+
+    private static ComputeMinCostPath.PathResult buildResult(PixelDijkstra forward, PixelDijkstra backward,
+                                                             int meeting, double distance) {
+        List<int[]> path = new ArrayList<>();
+        for (int current = meeting; current != -1; current = forward.parent(current)) {
+            path.add(new int[]{forward.rowOf(current), forward.colOf(current)});
+        }
+        Collections.reverse(path);
+        for (int current = backward.parent(meeting); current != -1; current = backward.parent(current)) {
+            path.add(new int[]{backward.rowOf(current), backward.colOf(current)});
+        }
+        return new ComputeMinCostPath.PathResult(distance, path);
+    }
+
+    /**
+     * 两侧的汇合检测与终止判断。
+     * <p>两侧在不同线程上扩展时，一侧的距离、父节点与结算标记在另一侧线程上没有可见性保证，
+     * 所以扩展期间两侧互不读取对方的状态：各自扩展 {@link #CONCURRENT_ROUND} 个像素后在 {@link Phaser} 上会合，
+     * 由最后到达的线程在两侧都停下时检测本轮新结算的像素并判断是否终止；
+     * 会合建立了happens-before关系，检测读到的是两侧完整的状态。终止最多晚一轮，结果不变。</p>
+     */
+    private static final class Meeting {
+        private final Side forward;
+        private final Side backward;
+        private final Phaser rounds;
+        private double best = Double.POSITIVE_INFINITY; // 当前已知的最短候选路径长度μ
+        private boolean stopped = false;                // 某一侧线程被中断或异常退出
+
+        Meeting(Side forward, Side backward) {
+            this.forward = forward;
+            this.backward = backward;
+            this.rounds = new Phaser(2) {
+                @Override
+                protected boolean onAdvance(int phase, int registeredParties) {
+                    return meet();
+                }
+            };
+        }
+
+        /**
+         * 在两侧都停下时调用：把两侧新结算、且另一侧也已结算的像素作为候选汇合点
+         * @return 是否可以终止
+         */
+        boolean meet() {
+            offerNew(forward, backward);
+            offerNew(backward, forward);
+            return stopped || Thread.currentThread().isInterrupted()
+                    || forward.search.peekKey() + backward.search.peekKey() >= best;
+        }
+
+        private void offerNew(Side side, Side other) {
+            for (int i = side.checked; i < side.settledSize; i++) {
+                int node = side.settledNodes[i];
+                if (other.search.isSettled(node)) {
+                    best = Math.min(best, joinedDistance(forward.search, backward.search, node));
+                }
+            }
+            side.checked = side.settledSize;
+        }
+
+        // 在线程上扩展一侧，直到会合时判定终止；异常退出时终止会合，另一侧不会一直等下去
+        void runRounds(Side side) {
+            try {
+                while (!rounds.isTerminated()) {
+                    if (!side.expand(CONCURRENT_ROUND) && Thread.currentThread().isInterrupted()) stopped = true;
+                    rounds.arriveAndAwaitAdvance();
+                }
+            } catch (RuntimeException | Error e) {
+                rounds.forceTermination();
+                throw e;
+            }
+        }
+    }
+
+    // 搜索的一侧，只读写自己的状态
+    private static final class Side {
+        final PixelDijkstra search;
+        int[] settledNodes = new int[1024];
+        int settledSize = 0;
+        int checked = 0; // settledNodes中已做过汇合检测的前缀长度
+
+        Side(PixelDijkstra search) {
+            this.search = search;
+        }
+
+        /**
+         * 结算本侧至多limit个像素
+         * @return 是否结算满了limit个；堆已空或当前线程被中断时为false
+         */
+        boolean expand(int limit) {
+            for (int i = 0; i < limit; i++) {
+                if (search.peekKey() == Double.POSITIVE_INFINITY) return false;
+                if ((settledSize & PixelDijkstra.INTERRUPT_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                int node = search.step();
+                if (settledSize == settledNodes.length) {
+                    settledNodes = Arrays.copyOf(settledNodes, settledSize * 2);
+                }
+                settledNodes[settledSize++] = node;
+            }
+            return true;
+        }
+    }
+}
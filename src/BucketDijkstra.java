@@ -0,0 +1,181 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static src.ComputeMinCostPath.DIRECTIONS;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 量化边权后的Dial桶队列最短路。
+ * <p>{@link ComputeMinCostPath#calculateDynamicCost} 的边权由fg值加上小常数构成，有明确上下界：
+ * 最小为 0.1（fg = 0、直行、横纵移动），最大为 (maxFg + 0.1) * 2 * √2。
+ * 把边权乘以 {@link #QUANTIZATION_SCALE} 后四舍五入成整数，就能用 maxCost + 1 个循环桶代替二叉堆，
+ * 每次入队、出队、decrease-key都是O(1)。</p>
+ * <p>返回的distance是所选路径按真实（未量化）边权累加的长度；
+ * errorBound给出它与真实最短路长度之差的上界，见 {@link #search}。</p>
+ * <p>桶的个数由 {@link CostTable#maxEdgeCost()} 确定，它随边权表缓存，不必每次查询都扫描fg图。
+ * 链表、距离与父节点数组来自 {@link SearchWorkspace}，到达与结算标记是代号戳，开始搜索不必清空任何逐像素数组。</p>
+ */
+public class BucketDijkstra {
+
+    // 量化精度：边权以 1 / QUANTIZATION_SCALE 为单位取整
+    public static final double QUANTIZATION_SCALE = 100;
+
+    /**
+     * 在fg矩阵上用量化边权的Dial算法求最短路
+     * <p>每条边的取整误差不超过 0.5 / scale。设返回路径P有k条边，真实最短路P*有k*条边，则
+     * cost(P) ≤ cost(P*) + (k + k*) * 0.5 / scale；又因每条边至少为 {@link ComputeMinCostPath#MIN_EDGE_COST}，
+     * k* ≤ cost(P*) / MIN_EDGE_COST ≤ cost(P) / MIN_EDGE_COST，由此得到可计算的误差上界。</p>
+     * @param fgMatrix fg特征图
+     * @param startRow 起点行
+     * @param startCol 起点列
+     * @param endRow 终点行
+     * @param endCol 终点列
+     * @return 最短路径，errorBound为上述误差上界
+     */
+    public static ComputeMinCostPath.PathResult search(FeatureMap fgMatrix, int startRow, int startCol,
+                                                       int endRow, int endCol) {
+        return search(fgMatrix, startRow, startCol, endRow, endCol, QUANTIZATION_SCALE);
+    }
+
+    public static ComputeMinCostPath.PathResult search(FeatureMap fgMatrix, int startRow, int startCol,
+                                                       int endRow, int endCol, double scale) {
+        return search(fgMatrix, startRow, startCol, endRow, endCol, scale, SearchWorkspace.current());
+    }
+
+    /**
+     * @param workspace 可复用的缓冲区，同一时刻只能被一个搜索使用
+     */
+    public static ComputeMinCostPath.PathResult search(FeatureMap fgMatrix, int startRow, int startCol,
+                                                       int endRow, int endCol, double scale,
+                                                       SearchWorkspace workspace) {
+        int rows = fgMatrix.getRows();
+        int cols = fgMatrix.getCols();
+        CostTable costTable = CostTable.of(fgMatrix);
+
+        // 桶的个数 = 最大量化边权 + 1，保证同一时刻队列中的距离落在一个循环周期内
+        int maxCost = quantize(costTable.maxEdgeCost(), scale);
+        int bucketCount = maxCost + 1;
+
+        // 以下缓冲区来自SearchWorkspace，长度可能大于本图像所需；与releaseAll互斥，保证取到的是同一组数组
+        int[] next;               // 桶内双向链表
+        int[] prev;
+        int[] distances;          // 量化距离
+        double[] exactDistances;  // 沿父指针累加的真实边权
+        int[] parents;
+        byte[] inDirections;
+        int[] stamps;             // 等于epoch：已到达且仍在桶中；等于epoch + 1：已结算
+        synchronized (workspace) {
+            workspace.ensureBucketCapacity(Math.multiplyExact(rows, cols));
+            next = workspace.bucketNext;
+            prev = workspace.bucketPrev;
+            distances = workspace.bucketDistances;
+            exactDistances = workspace.distances;
+            parents = workspace.parents;
+            inDirections = workspace.inDirections;
+            stamps = workspace.stamps;
+        }
+        int epoch = workspace.nextEpoch(stamps);
+        int settledStamp = epoch + 1;
+
+        int[] heads = new int[bucketCount];  // 桶 -> 链表头
+        Arrays.fill(heads, -1);
+
+        int source = startRow * cols + startCol;
+        int target = endRow * cols + endCol;
+        distances[source] = 0;
+        exactDistances[source] = 0;
+        parents[source] = -1;
+        inDirections[source] = -1;
+        stamps[source] = epoch;
+        insert(heads, next, prev, source, 0);
+        int queueSize = 1;
+
+        int cursor = 0; // 当前扫描到的量化距离
+        int settledCount = 0;
+        while (queueSize > 0) {
+            int bucket = cursor % bucketCount;
+            int current = heads[bucket];
+            if (current < 0) {
+                cursor++;
+                continue;
+            }
+            remove(heads, next, prev, current, bucket);
+            queueSize--;
+            stamps[current] = settledStamp;
+            if ((++settledCount & PixelDijkstra.INTERRUPT_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) {
+                break;
+            }
+
+            if (current == target) {
+                return buildResult(parents, exactDistances, cols, target, scale);
+            }
+
+            int row = current / cols;
+            int col = current - row * cols;
+            int inDirection = inDirections[current];
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int newRow = row + DIRECTIONS[d][0];
+                int newCol = col + DIRECTIONS[d][1];
+                if (newRow < 0 || newRow >= rows || newCol < 0 || newCol >= cols) continue;
+
+                int neighbor = newRow * cols + newCol;
+                int stamp = stamps[neighbor];
+                if (stamp == settledStamp) continue;
+
+                double cost = costTable.cost(current, inDirection, d);
+                int newDistance = cursor + Math.min(maxCost, quantize(cost, scale));
+                if (stamp != epoch || newDistance < distances[neighbor]) {
+                    if (stamp == epoch) {
+                        remove(heads, next, prev, neighbor, distances[neighbor] % bucketCount);
+                    } else {
+                        stamps[neighbor] = epoch;
+                        queueSize++;
+                    }
+                    distances[neighbor] = newDistance;
+                    exactDistances[neighbor] = exactDistances[current] + cost;
+                    parents[neighbor] = current;
+                    inDirections[neighbor] = (byte) d;
+                    insert(heads, next, prev, neighbor, newDistance % bucketCount);
+                }
+            }
+        }
+        return new ComputeMinCostPath.PathResult(-1, Collections.emptyList());
+    }
+
+    // 量化后的边权至少为1，保证桶扫描单调前进
+    private static int quantize(double cost, double scale) {
+        return Math.max(1, (int) Math.round(cost * scale));
+    }
+
+    private static void insert(int[] heads, int[] next, int[] prev, int node, int bucket) {
+        prev[node] = -1;
+        next[node] = heads[bucket];
+        if (heads[bucket] >= 0) prev[heads[bucket]] = node;
+        heads[bucket] = node;
+    }
+
+    private static void remove(int[] heads, int[] next, int[] prev, int node, int bucket) {
+        if (prev[node] >= 0) next[prev[node]] = next[node];
+        else heads[bucket] = next[node];
+        if (next[node] >= 0) prev[next[node]] = prev[node];
+    }
+
+    private static ComputeMinCostPath.PathResult buildResult(int[] parents, double[] exactDistances,
+                                                             int cols, int target, double scale) {
+        List<int[]> path = new ArrayList<>();
+        for (int current = target; current != -1; current = parents[current]) {
+            path.add(new int[]{current / cols, current % cols});
+        }
+        Collections.reverse(path);
+
+        double distance = exactDistances[target];
+        int edges = path.size() - 1;
+        double errorBound = (edges + distance / ComputeMinCostPath.MIN_EDGE_COST) * 0.5 / scale;
+        return new ComputeMinCostPath.PathResult(distance, path, errorBound);
+    }
+}
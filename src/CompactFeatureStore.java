@@ -0,0 +1,271 @@
+package src;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import static src.ComputeMinCostPath.DIRECTIONS;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 面向超大图像的紧凑特征存储，每像素约3.1字节。
+ * <ul>
+ *     <li>梯度值：16位定点数，存 g / maxG（即 1 - fg），{@link #MAGNITUDE_ONE} 表示1，{@link #MAGNITUDE_NAN} 表示fg为NaN；</li>
+ *     <li>梯度方向：{@link ProcessMatrix#calculateGradientDirections} 的角度量化为一个字节（256个区间，每个宽2π/256），
+ *     {@link ProcessMatrix#computeFd} 中的反余弦项按（方向区间, 移动方向）预先算成查找表；</li>
+ *     <li>过零点：{@link ProcessMatrix#computeZeroCrossing} 的结果存成 {@code long[]} 位图，每像素1位。</li>
+ * </ul>
+ * <p>下标与 {@link CostTable} 相同：像素 (row, col) 为 {@code row * cols + col}。
+ * 快照中的fg图是本存储上的只读视图（{@link FeatureMap#view}），不再另存float数组；
+ * 视图的边权表只读2字节的梯度值，不再保存每像素8个float（32字节）的边权，搜索的访存量随之下降；
+ * fg量化误差不超过 1 / (2 × {@link #MAGNITUDE_ONE})，边权的相对误差约1e-4。</p>
+ * <p>方向与过零点按行分块计算，每块由融合内核 {@link ProcessMatrix#featureBlock} 临时展开几行的float数据，
+ * 不会为整幅图像分配 {@link ProcessMatrix.Features}。
+ * 梯度为0的像素方向记为0（原始实现为NaN）。金字塔粗层只由fg构建（{@link #of}），没有方向与过零点。</p>
+ * <p>使用紧凑存储的快照不再保留RGB矩阵与float梯度图，光标吸附等逐像素读取梯度的地方经由
+ * {@link FeatureSnapshot#gradient} 从这里解码，见 {@link FeaturePipeline#compute(int[][], boolean)}。</p>
+ */
+public final class CompactFeatureStore {
+
+    static final int DIRECTION_BINS = 256;
+    static final int MAGNITUDE_ONE = 0xFFFE;
+    static final int MAGNITUDE_NAN = 0xFFFF;
+    // 分块计算方向与过零点时每块的行数，另有上下各两行halo
+    private static final int BLOCK_ROWS = 16;
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final double[] STEP_LENGTHS = new double[DIRECTIONS.length];
+    // [bin * 8 + direction]：acos(D(bin) · L(direction)) / π，D为梯度方向旋转90°后的单位向量，L为移动方向的单位向量
+    private static final float[] FD_TABLE = new float[DIRECTION_BINS * DIRECTIONS.length];
+
+    static {
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            STEP_LENGTHS[d] = Math.hypot(DIRECTIONS[d][0], DIRECTIONS[d][1]);
+        }
+        for (int bin = 0; bin < DIRECTION_BINS; bin++) {
+            double angle = binAngle(bin);
+            // 与computeFd一致：D = (Iy, -Ix) / G = (sinθ, -cosθ)，L = (dRow, dCol)
+            double dRowComponent = Math.sin(angle);
+            double dColComponent = -Math.cos(angle);
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                double dot = (dRowComponent * DIRECTIONS[d][0] + dColComponent * DIRECTIONS[d][1]) / STEP_LENGTHS[d];
+                FD_TABLE[bin * DIRECTIONS.length + d] = (float) (Math.acos(Math.max(-1, Math.min(1, dot))) / Math.PI);
+            }
+        }
+    }
+
+    private final int rows;
+    private final int cols;
+    private final short[] magnitudes;   // 无符号16位定点数
+    private final byte[] directions;    // 方向区间，按无符号读取；只由fg构建时为null
+    private final long[] zeroCrossings; // 第pixel位表示该像素是否为过零点；只由fg构建时为null
+
+    private CompactFeatureStore(int rows, int cols, short[] magnitudes, boolean edgeFeatures) {
+        this.rows = rows;
+        this.cols = cols;
+        this.magnitudes = magnitudes;
+        this.directions = edgeFeatures ? new byte[magnitudes.length] : null;
+        this.zeroCrossings = edgeFeatures ? new long[(magnitudes.length + 63) >>> 6] : null;
+    }
+
+    /**
+     * 把fg图量化为16位定点的梯度值，按行条带并行
+     * @return 按 {@code row * cols + col} 排列的定点数
+     */
+    static short[] quantizeMagnitudes(FeatureMap fgMatrix) {
+        int cols = fgMatrix.getCols();
+        short[] magnitudes = new short[Math.multiplyExact(fgMatrix.getRows(), cols)];
+        FeaturePipeline.forEachStrip(fgMatrix.getRows(), (from, to) -> {
+            for (int row = from; row < to; row++) {
+                int base = row * cols;
+                for (int col = 0; col < cols; col++) {
+                    magnitudes[base + col] = (short) quantizeMagnitude(fgMatrix.get(row, col));
+                }
+            }
+        });
+        return magnitudes;
+    }
+
+    /**
+     * 只由fg图构建紧凑存储（没有方向与过零点），用于没有RGB矩阵的金字塔粗层，按行条带并行
+     * @param fgMatrix fg特征图
+     * @return 只含梯度值的紧凑存储
+     */
+    public static CompactFeatureStore of(FeatureMap fgMatrix) {
+        return new CompactFeatureStore(fgMatrix.getRows(), fgMatrix.getCols(), quantizeMagnitudes(fgMatrix), false);
+    }
+
+    /**
+     * 由RGB矩阵与fg图构建完整的紧凑存储，按行条带并行
+     * @param matrix RGB矩阵，与fgMatrix行列相同
+     * @param fgMatrix fg特征图，梯度值由它量化得到，保证与整幅图像上使用的fg一致；构建完成后不再需要
+     * @return 紧凑存储
+     */
+    public static CompactFeatureStore compute(int[][] matrix, FeatureMap fgMatrix) {
+        int rows = fgMatrix.getRows();
+        int cols = fgMatrix.getCols();
+        if (matrix.length != rows || matrix[0].length != cols) {
+            throw new IllegalArgumentException("Matrix and feature map sizes differ");
+        }
+        CompactFeatureStore store = new CompactFeatureStore(rows, cols, quantizeMagnitudes(fgMatrix), true);
+        FeaturePipeline.forEachStrip(rows, (from, to) -> {
+            for (int block = from; block < to; block += BLOCK_ROWS) {
+                store.fillBlock(matrix, block, Math.min(to, block + BLOCK_ROWS));
+            }
+        });
+        return store;
+    }
+
+    // 计算 [from, to) 行的方向与过零点：由ProcessMatrix.featureBlock连同上下halo一次算出Sobel与拉普拉斯，与整幅图像上的计算相同
+    private void fillBlock(int[][] matrix, int from, int to) {
+        ProcessMatrix.FeatureBlock block = ProcessMatrix.featureBlock(matrix, from, to);
+        boolean[] zeroCrossingRow = new boolean[cols]; // 边框行不写入，保持false
+
+        long word = 0;
+        int wordIndex = (from * cols) >>> 6;
+        for (int row = from; row < to; row++) {
+            int base = block.base(row);
+            boolean interior = row > 0 && row < rows - 1;
+            block.zeroCrossingRow(row, zeroCrossingRow);
+            int pixel = row * cols;
+            for (int col = 0; col < cols; col++, pixel++) {
+                directions[pixel] = (byte) quantizeDirection(Math.atan2(block.iy[base + col], block.ix[base + col]));
+                if ((pixel >>> 6) != wordIndex) {
+                    flush(wordIndex, word);
+                    wordIndex = pixel >>> 6;
+                    word = 0;
+                }
+                if (interior && zeroCrossingRow[col]) word |= 1L << pixel;
+            }
+        }
+        flush(wordIndex, word);
+    }
+
+    // 条带边界上的字可能被两个线程同时写入，按位或原子地合并
+    private void flush(int wordIndex, long word) {
+        if (word != 0) WORDS.getAndBitwiseOr(zeroCrossings, wordIndex, word);
+    }
+
+    static int quantizeMagnitude(float fg) {
+        if (Float.isNaN(fg)) return MAGNITUDE_NAN;
+        double magnitude = Math.max(0, Math.min(1, 1 - (double) fg));
+        return (int) Math.round(magnitude * MAGNITUDE_ONE);
+    }
+
+    static int quantizeDirection(double angle) {
+        if (Double.isNaN(angle)) return 0;
+        return (int) Math.round((angle + Math.PI) * (DIRECTION_BINS / (2 * Math.PI))) & (DIRECTION_BINS - 1);
+    }
+
+    private static double binAngle(int bin) {
+        return bin * (2 * Math.PI / DIRECTION_BINS) - Math.PI;
+    }
+
+    public int index(int row, int col) {
+        return row * cols + col;
+    }
+
+    /**
+     * @return 归一化梯度值 g / maxG，范围[0, 1]；fg为NaN时为NaN
+     */
+    public float magnitude(int pixel) {
+        int code = magnitudes[pixel] & 0xFFFF;
+        return code == MAGNITUDE_NAN ? Float.NaN : code * (1f / MAGNITUDE_ONE);
+    }
+
+    /**
+     * @return 量化后的fg值 1 - magnitude；NaN表示fg为NaN
+     */
+    public float fg(int pixel) {
+        int code = magnitudes[pixel] & 0xFFFF;
+        return code == MAGNITUDE_NAN ? Float.NaN : 1 - code * (1f / MAGNITUDE_ONE);
+    }
+
+    /**
+     * 沿direction走到梯度值为code的像素的静态边权，与 {@link ComputeMinCostPath#calculateDynamicCost}
+     * 在fg取量化值、没有入射方向时相同：(fg + 0.1) × 步长，fg为NaN时为1
+     */
+    static float edgeCost(int code, int direction) {
+        if (code == MAGNITUDE_NAN) return 1;
+        return (float) ((1.1 - code * (1.0 / MAGNITUDE_ONE)) * STEP_LENGTHS[direction]);
+    }
+
+    /**
+     * @return 梯度值数组本身，紧凑边权表与本存储共用，不能修改
+     */
+    short[] getMagnitudes() {
+        return magnitudes;
+    }
+
+    /**
+     * @return 是否含有方向与过零点（由 {@link #compute} 构建）
+     */
+    public boolean hasEdgeFeatures() {
+        return directions != null;
+    }
+
+    /**
+     * @return 方向区间 [0, 256)
+     * @throws IllegalStateException 只由fg构建的存储没有方向
+     */
+    public int directionBin(int pixel) {
+        if (directions == null) throw new IllegalStateException("Store has no gradient directions");
+        return directions[pixel] & 0xFF;
+    }
+
+    /**
+     * @return 方向区间中心的角度（弧度），范围[-π, π)
+     */
+    public double direction(int pixel) {
+        return binAngle(directionBin(pixel));
+    }
+
+    /**
+     * @throws IllegalStateException 只由fg构建的存储没有过零点
+     */
+    public boolean isZeroCrossing(int pixel) {
+        if (zeroCrossings == null) throw new IllegalStateException("Store has no zero crossings");
+        return (zeroCrossings[pixel >>> 6] & (1L << pixel)) != 0;
+    }
+
+    /**
+     * 与 {@link ProcessMatrix#computeFz} 相同：过零点为0，否则为1
+     */
+    public double fz(int pixel) {
+        return isZeroCrossing(pixel) ? 0 : 1;
+    }
+
+    /**
+     * {@link ProcessMatrix#computeFd} 的查表版本：p = pixel，q为沿direction走一步到达的像素，
+     * 两个反余弦项都按方向区间查表，误差不超过区间宽度带来的π/256
+     * @param direction 移动方向下标（DIRECTIONS中的下标），q必须在图像内
+     */
+    public double fd(int pixel, int direction) {
+        int neighbor = pixel + DIRECTIONS[direction][0] * cols + DIRECTIONS[direction][1];
+        return FD_TABLE[directionBin(pixel) * DIRECTIONS.length + direction]
+                + FD_TABLE[directionBin(neighbor) * DIRECTIONS.length + direction];
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return 各特征图占用的字节数（不含对象头）
+     */
+    public long byteSize() {
+        long bytes = (long) magnitudes.length * Short.BYTES;
+        if (directions != null) bytes += directions.length + (long) zeroCrossings.length * Long.BYTES;
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompactFeatureStore[%dx%d, %.2f bytes/pixel]",
+                rows, cols, byteSize() / (double) Math.max(1, (long) rows * cols));
+    }
+}
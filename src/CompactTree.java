@@ -0,0 +1,164 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import static src.ComputeMinCostPath.DIRECTIONS;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 紧凑存储的单源最短路径树，供 {@link TreeCache} 缓存。
+ * <p>只保存已结算区域的包围盒，每个像素5个字节：一个字节的入射方向（父像素由方向反推，不存父下标）
+ * 和一个float距离。树一旦建成就不再改变，可以被多个线程同时查询。</p>
+ */
+public final class CompactTree {
+
+    static final byte NOT_SETTLED = -1;
+    static final byte ROOT = 8;
+
+    private final SeedPoint seed;
+    private final int rowOffset;
+    private final int colOffset;
+    private final int rows;
+    private final int cols;
+    private final byte[] inDirections; // 走到该像素时的方向下标；NOT_SETTLED表示不在树中，ROOT表示种子点
+    private final float[] distances;
+
+    private CompactTree(SeedPoint seed, int rowOffset, int colOffset, int rows, int cols) {
+        this(seed, rowOffset, colOffset, rows, cols, new byte[rows * cols], new float[rows * cols]);
+    }
+
+    private CompactTree(SeedPoint seed, int rowOffset, int colOffset, int rows, int cols,
+                        byte[] inDirections, float[] distances) {
+        this.seed = seed;
+        this.rowOffset = rowOffset;
+        this.colOffset = colOffset;
+        this.rows = rows;
+        this.cols = cols;
+        this.inDirections = inDirections;
+        this.distances = distances;
+    }
+
+    /**
+     * 直接用整幅图像的数组构建，数组此后归树所有，调用方不能再修改
+     * @param inDirections 按 row * cols + col 排列的入射方向，不在树中为 {@link #NOT_SETTLED}，种子点为 {@link #ROOT}
+     * @param distances 按同样顺序排列的距离
+     */
+    static CompactTree wrap(SeedPoint seed, int rows, int cols, byte[] inDirections, float[] distances) {
+        return new CompactTree(seed, 0, 0, rows, cols, inDirections, distances);
+    }
+
+    /**
+     * 从正向搜索中复制已结算的像素
+     * @param search 正向搜索
+     * @return 紧凑树
+     */
+    public static CompactTree of(PixelDijkstra search) {
+        return of(search, search::isSettled);
+    }
+
+    /**
+     * 从正向搜索中复制settled为true的像素，settled必须只包含距离与父指针已经确定的像素
+     * @param search 正向搜索
+     * @param settled 按搜索窗口下标判断像素是否纳入树中
+     * @return 紧凑树
+     */
+    public static CompactTree of(PixelDijkstra search, IntPredicate settled) {
+        int size = search.getRows() * search.getCols();
+        int top = Integer.MAX_VALUE, bottom = -1, left = Integer.MAX_VALUE, right = -1;
+        for (int i = 0; i < size; i++) {
+            if (!settled.test(i)) continue;
+            int row = search.rowOf(i);
+            int col = search.colOf(i);
+            top = Math.min(top, row);
+            bottom = Math.max(bottom, row);
+            left = Math.min(left, col);
+            right = Math.max(right, col);
+        }
+        int sourceRow = search.rowOf(search.getSource());
+        int sourceCol = search.colOf(search.getSource());
+        SeedPoint seed = new SeedPoint(sourceRow, sourceCol);
+        if (bottom < 0) {
+            return new CompactTree(seed, sourceRow, sourceCol, 0, 0);
+        }
+
+        CompactTree tree = new CompactTree(seed, top, left, bottom - top + 1, right - left + 1);
+        Arrays.fill(tree.inDirections, NOT_SETTLED);
+        for (int i = 0; i < size; i++) {
+            if (!settled.test(i)) continue;
+            int index = tree.index(search.rowOf(i), search.colOf(i));
+            int inDirection = search.inDirection(i);
+            tree.inDirections[index] = inDirection < 0 ? ROOT : (byte) inDirection;
+            tree.distances[index] = (float) search.distance(i);
+        }
+        return tree;
+    }
+
+    public boolean contains(int row, int col) {
+        return inWindow(row, col) && inDirections[index(row, col)] != NOT_SETTLED;
+    }
+
+    /**
+     * 沿入射方向回溯出种子点到(row, col)的路径
+     * @return 最短路径；不在树中时返回null
+     */
+    public ComputeMinCostPath.PathResult pathTo(int row, int col) {
+        if (!contains(row, col)) return null;
+        double distance = distances[index(row, col)];
+        List<int[]> path = new ArrayList<>();
+        while (true) {
+            path.add(new int[]{row, col});
+            int inDirection = inDirections[index(row, col)];
+            if (inDirection == ROOT) break;
+            row -= DIRECTIONS[inDirection][0];
+            col -= DIRECTIONS[inDirection][1];
+        }
+        Collections.reverse(path);
+        return new ComputeMinCostPath.PathResult(distance, path);
+    }
+
+    /**
+     * @return 树占用的字节数（数组内容加上对象头的粗略估计）
+     */
+    public long byteSize() {
+        return (long) inDirections.length * (Byte.BYTES + Float.BYTES) + 64;
+    }
+
+    /**
+     * @return other树中结算的每个像素是否也在本树中结算，用于判断同源的另一棵树是否多余
+     */
+    public boolean covers(CompactTree other) {
+        if (other.rows == 0 || other.cols == 0) return true;
+        if (!inWindow(other.rowOffset, other.colOffset)
+                || !inWindow(other.rowOffset + other.rows - 1, other.colOffset + other.cols - 1)) {
+            return false;
+        }
+        for (int row = 0; row < other.rows; row++) {
+            for (int col = 0; col < other.cols; col++) {
+                if (other.inDirections[row * other.cols + col] != NOT_SETTLED
+                        && !contains(other.rowOffset + row, other.colOffset + col)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public SeedPoint getSeed() {
+        return seed;
+    }
+
+    private boolean inWindow(int row, int col) {
+        row -= rowOffset;
+        col -= colOffset;
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    private int index(int row, int col) {
+        return (row - rowOffset) * cols + (col - colOffset);
+    }
+}
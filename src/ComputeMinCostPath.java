@@ -2,6 +2,7 @@ package src;
 
 import java.awt.geom.Point2D;
 import java.util.*;
+import java.util.function.Consumer;
 
 import static src.ProcessMatrix.findIx;
 import static src.ProcessMatrix.findIy;
@@ -46,7 +47,7 @@ public class ComputeMinCostPath {
     }
 
     // 8个可能的移动方向
-    private static final int[][] DIRECTIONS = {
+    static final int[][] DIRECTIONS = {
             {-1, -1}, {-1, 0}, {-1, 1},
             {0, -1},          {0, 1},
             {1, -1},  {1, 0}, {1, 1}
@@ -54,48 +55,67 @@ public class ComputeMinCostPath {
 
      /**
      * 计算(x1,y1)->(x2,y2)的边权，要求两点相邻或对角线
-     * @param gMatrix 梯度值矩阵
+     * @param gMatrix 梯度特征图
      * @param x1 起点纵坐标
      * @param y1 起点横坐标
      * @param x2 终点纵坐标
      * @param y2 终点横坐标
      * @return 边权权值
      */
-    public static double costByG(double[][] gMatrix, int x1, int y1, int x2, int y2) {
+    public static double costByG(FeatureMap gMatrix, int x1, int y1, int x2, int y2) {
         if(Math.abs( x1 - x2 ) + Math.abs( y1 - y2 ) == 1) { // 两点相邻
-            return 1 / ( gMatrix[x2][y2] + 1 );
+            return 1 / ( gMatrix.get(x2, y2) + 1 );
         }
         else if(Math.abs( x1 - x2 ) == 1 && Math.abs( y1 - y2 ) == 1) { //两点对角线
-            return 1 / ( gMatrix[x2][y2] + 1 ) / Math.sqrt(2);
+            return 1 / ( gMatrix.get(x2, y2) + 1 ) / Math.sqrt(2);
         }
         else { //两点不相连
             return Double.POSITIVE_INFINITY;
         }
     }
 
-    public static PathResult findShortestPath(double[][] fgMatrix, SeedPoint start, SeedPoint end) {
+    public static PathResult findShortestPath(FeatureMap fgMatrix, SeedPoint start, SeedPoint end) {
+        return findShortestPath(fgMatrix, start, end, SearchStrategy.DIJKSTRA);
+    }
+
+    public static PathResult findShortestPath(FeatureMap fgMatrix, SeedPoint start, SeedPoint end, SearchStrategy strategy) {
         int startX = start.getY();
         int startY = start.getX();
         int endX = end.getY();
         int endY = end.getX();
-        return findShortestPath(fgMatrix, startX, startY, endX, endY);
+        return findShortestPath(fgMatrix, startX, startY, endX, endY, strategy);
     }
 
     /**
      * 在梯度矩阵上计算最短路
-     * @param fgMatrix fg矩阵
+     * @param fgMatrix fg特征图
+     * @param startX 起点横坐标
+     * @param startY 起点纵坐标
+     * @param endX 终点横坐标
+     * @param endY 终点纵坐标
+     * @return 最短路径，用PathResult类存储，包含路径长度和路径元素
+     */
+    public static PathResult findShortestPath(FeatureMap fgMatrix, int startX, int startY, int endX, int endY) {
+        return findShortestPath(fgMatrix, startX, startY, endX, endY, SearchStrategy.DIJKSTRA);
+    }
+
+    /**
+     * 用指定的搜索策略在梯度矩阵上计算最短路
+     * @param fgMatrix fg特征图
      * @param startX 起点横坐标
      * @param startY 起点纵坐标
      * @param endX 终点横坐标
      * @param endY 终点纵坐标
+     * @param strategy 搜索策略
      * @return 最短路径，用PathResult类存储，包含路径长度和路径元素
      */
-    public static PathResult findShortestPath(double[][] fgMatrix, int startX, int startY, int endX, int endY) {
+    public static PathResult findShortestPath(FeatureMap fgMatrix, int startX, int startY, int endX, int endY,
+                                              SearchStrategy strategy) {
 
 
         //初始化
-//        double[][] gMatrix = ProcessMatrix.findGMatrix(matrix);
-//        double[][] fgMatrix = ProcessMatrix.findFgMatrix(gMatrix);
+//        FeatureMap gMatrix = ProcessMatrix.findGMatrix(matrix);
+//        FeatureMap fgMatrix = ProcessMatrix.findFgMatrix(gMatrix);
 //        double[][] IxMatrix = new double[matrix.length][matrix[0].length];
 //        double[][] IyMatrix = new double[matrix.length][matrix[0].length];
 //        boolean[][] zeroCrossing = ProcessMatrix.computeZeroCrossing(matrix);
@@ -110,12 +130,12 @@ public class ComputeMinCostPath {
 //        }
 
         // 参数校验增强
-        if (fgMatrix.length == 0 || fgMatrix[0].length == 0) {
+        if (fgMatrix.getRows() == 0 || fgMatrix.getCols() == 0) {
             throw new IllegalArgumentException("Invalid gradient matrix");
         }
 
-        int rows = fgMatrix.length;
-        int cols = fgMatrix[0].length;
+        int rows = fgMatrix.getRows();
+        int cols = fgMatrix.getCols();
 
         // 坐标转换（适配图像坐标系）
         int startRow = startY; // X->Col, Y->Row
@@ -130,51 +150,125 @@ public class ComputeMinCostPath {
             return new PathResult(-1, Collections.emptyList());
         }
 
-        // 使用Fibonacci堆优化优先级队列
-        PriorityQueue<Node> queue = new PriorityQueue<>();
-        double[][] distances = new double[rows][cols];
-        boolean[][] visited = new boolean[rows][cols];
+        return switch (strategy) {
+            case DIJKSTRA -> searchDijkstra(fgMatrix, startRow, startCol, endRow, endCol);
+            case BUCKET -> BucketDijkstra.search(fgMatrix, startRow, startCol, endRow, endCol);
+            case ASTAR -> searchAStar(fgMatrix, startRow, startCol, endRow, endCol);
+            case BIDIRECTIONAL -> BidirectionalDijkstra.search(fgMatrix, startRow, startCol, endRow, endCol);
+            case WINDOWED -> searchWindowed(fgMatrix, startRow, startCol, endRow, endCol);
+            case HIERARCHICAL -> FeaturePyramid.of(fgMatrix).findPath(startRow, startCol, endRow, endCol);
+            case EXACT -> DirectionalDijkstra.search(fgMatrix, startRow, startCol, endRow, endCol);
+        };
+    }
 
-        // 初始化
-        for (double[] row : distances) Arrays.fill(row, Double.MAX_VALUE);
-        distances[startRow][startCol] = 0;
-        queue.add(new Node(startRow, startCol, 0, null));
+    /**
+     * 随时可交出结果的窗口搜索：预算用完时先把到离终点最近的已结算像素的部分路径交给partialConsumer，
+     * 然后继续搜索直到得到完整路径，路径与 {@link SearchStrategy#WINDOWED} 相同，见 {@link AnytimeSearch}
+     * @param budget 交出部分路径之前的时间或结算像素数预算
+     * @param partialConsumer 接收部分路径，至多调用一次，在搜索线程上调用
+     * @return 完整的最短路径；越界、不可达或线程被中断时路径为空
+     */
+    public static PathResult findShortestPathAnytime(FeatureMap fgMatrix, SeedPoint start, SeedPoint end,
+                                                     SearchBudget budget, Consumer<PathResult> partialConsumer) {
+        if (fgMatrix.getRows() == 0 || fgMatrix.getCols() == 0) {
+            throw new IllegalArgumentException("Invalid gradient matrix");
+        }
+        int rows = fgMatrix.getRows();
+        int cols = fgMatrix.getCols();
+        if (start.getX() < 0 || start.getX() >= rows || start.getY() < 0 || start.getY() >= cols ||
+                end.getX() < 0 || end.getX() >= rows || end.getY() < 0 || end.getY() >= cols) {
+            return new PathResult(-1, Collections.emptyList());
+        }
+        return AnytimeSearch.search(fgMatrix, start.getX(), start.getY(), end.getX(), end.getY(), budget, partialConsumer);
+    }
 
-        while (!queue.isEmpty()) {
-            System.out.println(queue.size());
-            Node current = queue.poll();
+    private static PathResult searchDijkstra(FeatureMap fgMatrix, int startRow, int startCol, int endRow, int endCol) {
+        // 在一维像素下标上用带下标的堆做Dijkstra，内层循环不分配对象，缓冲区取自当前线程
+        PixelDijkstra search = new PixelDijkstra(fgMatrix, false, SearchWorkspace.current());
+        search.reset(startRow, startCol);
+        int target = search.index(endRow, endCol);
+        if (search.expandUntil(target)) {
+            return search.pathTo(target);
+        }
+        return new PathResult(-1, Collections.emptyList());
+    }
 
-            // 跳过已处理节点
-            if (visited[current.x][current.y]) continue;
-            visited[current.x][current.y] = true;
+    private static PathResult searchAStar(FeatureMap fgMatrix, int startRow, int startCol, int endRow, int endCol) {
+        // 以 MIN_EDGE_COST * 八方向距离 为启发函数，朝终点方向优先扩展
+        PixelDijkstra search = new PixelDijkstra(fgMatrix, false, SearchWorkspace.current());
+        int target = search.index(endRow, endCol);
+        search.reset(startRow, startCol, target);
+        if (search.expandUntil(target)) {
+            return search.pathTo(target);
+        }
+        return new PathResult(-1, Collections.emptyList());
+    }
 
-            // 提前终止
-            if (current.x == endRow && current.y == endCol) {
-                return buildPathResult(current, distances[endRow][endCol]);
+    /**
+     * 只在起点、终点的包围盒外扩margin的窗口内搜索，缓冲区取自当前线程，只在窗口变大时扩容。
+     * 若窗口边框上有像素先于终点结算，说明可能存在绕出窗口的更短路径，此时把margin加倍重试，
+     * 直到窗口覆盖整幅图像，因此结果与在整幅图像上搜索一致
+     */
+    private static PathResult searchWindowed(FeatureMap fgMatrix, int startRow, int startCol, int endRow, int endCol) {
+        return searchWindowed(fgMatrix, startRow, startCol, endRow, endCol, SearchWorkspace.current());
+    }
+
+    /**
+     * 窗口搜索，所有窗口（包括扩大后的窗口）都复用同一组缓冲区
+     * @param workspace 调用线程独占的缓冲区
+     */
+    static PathResult searchWindowed(FeatureMap fgMatrix, int startRow, int startCol, int endRow, int endCol,
+                                     SearchWorkspace workspace) {
+        PixelDijkstra search = windowedSearch(fgMatrix, startRow, startCol, endRow, endCol, workspace);
+        return search != null ? search.pathTo(search.index(endRow, endCol)) : new PathResult(-1, Collections.emptyList());
+    }
+
+    /**
+     * 窗口搜索并返回搜索本身。终点结算之前窗口边框上没有像素结算，
+     * 因此所有已结算像素的距离与父指针都与整幅图像上的搜索一致，可以整体作为以起点为根的最短路径树保存
+     * @param workspace 调用线程独占的缓冲区，返回的搜索在其上，使用完之前不能复用
+     * @return 终点已结算的搜索；不可达或线程被中断时返回null
+     */
+    static PixelDijkstra windowedSearch(FeatureMap fgMatrix, int startRow, int startCol, int endRow, int endCol,
+                                        SearchWorkspace workspace) {
+        int rows = fgMatrix.getRows();
+        int cols = fgMatrix.getCols();
+        int span = Math.max(Math.abs(startRow - endRow), Math.abs(startCol - endCol));
+        int margin = Math.max(WINDOW_MIN_MARGIN, span / 2);
+
+        while (true) {
+            int top = Math.max(0, Math.min(startRow, endRow) - margin);
+            int left = Math.max(0, Math.min(startCol, endCol) - margin);
+            int bottom = Math.min(rows, Math.max(startRow, endRow) + margin + 1);
+            int right = Math.min(cols, Math.max(startCol, endCol) + margin + 1);
+
+            PixelDijkstra search = new PixelDijkstra(fgMatrix, top, left, bottom - top, right - left, false, workspace);
+            int target = search.index(endRow, endCol);
+            search.reset(startRow, startCol, target);
+            boolean reached = search.expandUntil(target);
+            if (!reached && Thread.currentThread().isInterrupted()) {
+                return null;
             }
 
-            // 方向遍历
-            for (int[] dir : DIRECTIONS) {
-                int newRow = current.x + dir[0];
-                int newCol = current.y + dir[1];
-
-                if (newRow >= 0 && newRow < rows && newCol >= 0 && newCol < cols) {
-                    // 动态调整代价计算
-//                    double moveCost = calculateDynamicCost(fgMatrix, gradDirections, current, newRow, newCol);
-                    double moveCost = calculateDynamicCost(fgMatrix, current, newRow, newCol);
-//                    double moveCost = computeCost(gMatrix, fgMatrix, IxMatrix, IyMatrix, zeroCrossing, current, newRow, newCol);
-                    System.out.println("Cost: " + moveCost);
-
-                    double newDistance = current.distance + moveCost;
-
-                    if (newDistance < distances[newRow][newCol]) {
-                        distances[newRow][newCol] = newDistance;
-                        queue.add(new Node(newRow, newCol, newDistance, current));
-                    }
-                }
+            boolean wholeImage = top == 0 && left == 0 && bottom == rows && right == cols;
+            if (wholeImage || (reached && !search.hasSettledOnWindowBorder())) {
+                return reached ? search : null;
             }
+            margin *= 2;
         }
-        return new PathResult(-1, Collections.emptyList());
+    }
+
+    /**
+     * A*启发函数：两点间八方向（octile）距离乘以单位步长的最小边权。
+     * 每一步八方向距离至多减少该步的长度，而边权至少是 MIN_EDGE_COST 乘以步长，故启发函数可采纳且一致
+     * @return 从(row, col)到(goalRow, goalCol)的代价下界
+     */
+    static double octileHeuristic(int row, int col, int goalRow, int goalCol) {
+        int dRow = Math.abs(row - goalRow);
+        int dCol = Math.abs(col - goalCol);
+        int diagonal = Math.min(dRow, dCol);
+        int straight = Math.max(dRow, dCol) - diagonal;
+        return MIN_EDGE_COST * (straight + Math.sqrt(2) * diagonal);
     }
 
     private static double computeCost(double[][] gMatrix, double[][] fgMatrix, double[][] IxMatrix, double[][] IyMatrix, boolean[][] zeroCrossing,
@@ -193,28 +287,33 @@ public class ComputeMinCostPath {
         return res ;
     }
 
-    private static double calculateDynamicCost(double[][] fgMatrix, Node current, int newRow, int newCol) {
+    // 窗口搜索时包围盒向外扩展的最小像素数
+    static final int WINDOW_MIN_MARGIN = 16;
+
+    // calculateDynamicCost 单位步长的最小边权（fg = 0，无转向惩罚），用于A*启发函数与误差估计
+    static final double MIN_EDGE_COST = 0.1;
+
+    /**
+     * 计算从相邻像素沿direction方向走到(newRow,newCol)的边权
+     * @param fgMatrix fg特征图
+     * @param newRow 终点行
+     * @param newCol 终点列
+     * @param inDirection 走到起点时的方向下标（DIRECTIONS中的下标），起点为种子点时为-1
+     * @param direction 本次移动的方向下标
+     * @return 边权
+     */
+    static double calculateDynamicCost(FeatureMap fgMatrix, int newRow, int newCol, int inDirection, int direction) {
         // 基础边缘代价
-        double baseCost = fgMatrix[newRow][newCol] + 0.1;
+        double baseCost = fgMatrix.get(newRow, newCol) + 0.1;
+
+        int currDirX = DIRECTIONS[direction][0];
+        int currDirY = DIRECTIONS[direction][1];
 
         // 方向连续性惩罚
-        double directionPenalty = 1.0;
-        if (current.parent != null) {
-            int prevDirX = current.x - current.parent.x;
-            int prevDirY = current.y - current.parent.y;
-            int currDirX = newRow - current.x;
-            int currDirY = newCol - current.y;
-
-            // 计算方向变化角度惩罚
-            double dotProduct = prevDirX * currDirX + prevDirY * currDirY;
-            double prevMagnitude = Math.hypot(prevDirX, prevDirY);
-            double currMagnitude = Math.hypot(currDirX, currDirY);
-            double cosTheta = dotProduct / (prevMagnitude * currMagnitude);
-            directionPenalty = 1.0 + (1.0 - cosTheta) * 0.5;
-        }
+        double directionPenalty = turnPenalty(inDirection, direction);
 
         // 距离因子
-        double distanceFactor = Math.hypot(newRow - current.x, newCol - current.y);
+        double distanceFactor = Math.hypot(currDirX, currDirY);
 
 
         double cost = baseCost * directionPenalty * distanceFactor;
@@ -222,6 +321,27 @@ public class ComputeMinCostPath {
         return cost;
     }
 
+    /**
+     * 从inDirection转到direction的方向变化惩罚：1 + (1 - cosθ) * 0.5，直行为1，掉头为2
+     * @param inDirection 之前的方向下标，-1表示没有之前的方向
+     * @param direction 当前方向下标
+     * @return 惩罚系数
+     */
+    static double turnPenalty(int inDirection, int direction) {
+        if (inDirection < 0) return 1.0;
+        int prevDirX = DIRECTIONS[inDirection][0];
+        int prevDirY = DIRECTIONS[inDirection][1];
+        int currDirX = DIRECTIONS[direction][0];
+        int currDirY = DIRECTIONS[direction][1];
+
+        // 计算方向变化角度惩罚
+        double dotProduct = prevDirX * currDirX + prevDirY * currDirY;
+        double prevMagnitude = Math.hypot(prevDirX, prevDirY);
+        double currMagnitude = Math.hypot(currDirX, currDirY);
+        double cosTheta = dotProduct / (prevMagnitude * currMagnitude);
+        return 1.0 + (1.0 - cosTheta) * 0.5;
+    }
+
 
 
 
@@ -241,41 +361,48 @@ public class ComputeMinCostPath {
         return new PathResult(distance, path);
     }
 
-    // 在 ComputeMinCostPath 类中添加增量计算
-    public static PathResult findShortestPathIncremental(
-            double[][] matrix,
-            SeedPoint start,
-            SeedPoint end,
-            List<int[]> previousPath
-    ) {
-        // 如果有前次路径，从终点继续计算
-        if (previousPath != null && !previousPath.isEmpty()) {
-            int[] lastPoint = previousPath.getLast();
-            SeedPoint newStart = new SeedPoint(lastPoint[0], lastPoint[1]);
-            return findShortestPath(matrix, newStart, end);
-        }
-        return findShortestPath(matrix, start, end);
-    }
-
     // 用于返回结果
     public static class PathResult {
         double distance;
         List<int[]> path;
+        double errorBound; // 近似搜索（如量化边权）时，distance与真实最短路长度之差的上界；精确搜索为0
+        boolean partial;   // 预算用完时交出的部分路径，终点是离目标最近的已结算像素，见AnytimeSearch
 
 
         public PathResult(double distance, List<int[]> path) {
+            this(distance, path, 0);
+        }
+
+        public PathResult(double distance, List<int[]> path, double errorBound) {
+            this(distance, path, errorBound, false);
+        }
+
+        public PathResult(double distance, List<int[]> path, double errorBound, boolean partial) {
             this.distance = distance;
             this.path = path;
+            this.errorBound = errorBound;
+            this.partial = partial;
         }
 
         public double getDistance() {
             return distance;
         }
 
+        public double getErrorBound() {
+            return errorBound;
+        }
+
         public List<int[]> getPath() {
             return path;
         }
 
+        /**
+         * @return 是否为未到达目标的部分路径
+         */
+        public boolean isPartial() {
+            return partial;
+        }
+
         public void print() {
             System.out.println("Distance: " + distance);
             for(int i = 0; i < path.size(); i++) {
@@ -292,9 +419,9 @@ public class ComputeMinCostPath {
 //                {0, 0, 0, 0, 3},
 //                {0, 3, 3, 3, 3}
 //        };
-//        double[][] gMatrix = ProcessMatrix.findGMatrix(matrix);
-//        for (int i = 0; i < gMatrix.length; i++) {
-//            for (int j = 0; j < gMatrix[0].length; j++) {
+//        FeatureMap gMatrix = ProcessMatrix.findGMatrix(matrix);
+//        for (int i = 0; i < gMatrix.getRows(); i++) {
+//            for (int j = 0; j < gMatrix.getCols(); j++) {
 //                System.out.print(gMatrix[i][j] + " ");
 //            }
 //            System.out.println();
@@ -0,0 +1,229 @@
+package src;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+
+import static src.ComputeMinCostPath.DIRECTIONS;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 预先计算好的八方向边权表。
+ * <p>{@link ComputeMinCostPath#calculateDynamicCost} 的边权可以拆成两部分：
+ * 只取决于边本身的静态代价 (fg + 0.1) × 步长，和只取决于前后两个方向的转向惩罚。
+ * 每幅图像只计算一次：静态代价按 {@code 像素 * 8 + 方向} 存成float数组，
+ * 转向惩罚是一张 9 × 8 的查找表（第0行对应没有入射方向的种子点）。
+ * 搜索内循环里的一次松弛于是只剩两次数组读取和一次乘法，不再调用 Math.hypot 和做点积。</p>
+ * <p>越出图像的边存为正无穷，float精度带来的相对误差约为1e-7。
+ * fg为NaN的像素（例如梯度全为0的图像）静态代价取1，与calculateDynamicCost把NaN边权替换为1的做法一致，
+ * 只是表中仍会乘上转向惩罚。</p>
+ * <p>普通表每像素32字节，只用于像素数不超过 {@link #DENSE_PIXELS} 的图像，构建时按行条带并行
+ * （{@link FeaturePipeline#forEachStrip}）。更大的图像默认使用紧凑表：静态代价不再预先展开，
+ * 而是在查询时由邻居像素的16位梯度值（与 {@link CompactFeatureStore} 共用）与步长算出，越出图像的边同样为正无穷。
+ * 两种表的接口相同，搜索代码不必区分。fg图是紧凑存储上的视图（{@link FeatureMap#view}）时 {@link #of} 直接共用存储中的梯度值；
+ * 其余的fg图量化出一份每像素2字节的梯度值。</p>
+ * <p>缓存中存放的是构建中或已建好的表的future：表在锁外构建，同一张fg图的并发请求等待同一次构建，
+ * 其他图像的查询不受影响。</p>
+ */
+public final class CostTable {
+
+    public static final int DIRECTION_COUNT = 8;
+    // 像素数不超过该值时展开为普通表（至多128MB），更大的图像使用紧凑表
+    static final long DENSE_PIXELS = 1L << 22;
+
+    // 按fg特征图的引用缓存，图像关闭后随特征图一起回收
+    private static final Map<FeatureMap, CompletableFuture<CostTable>> CACHE = new WeakHashMap<>();
+
+    private final int rows;
+    private final int cols;
+    private final float[] costs;             // [pixel * 8 + direction]：从pixel沿direction走一步的静态代价；紧凑表为null
+    private final short[] magnitudes;        // 紧凑表：16位定点梯度值，见CompactFeatureStore；普通表为null
+    private final int[] offsets;             // 各方向的像素下标增量
+    private final int[] columnSteps;         // 各方向的列增量
+    private final double[] turnPenalties;    // [(inDirection + 1) * 8 + direction]
+    private volatile double maxEdgeCost = Double.NaN; // 第一次查询时计算，NaN表示尚未计算
+
+    private CostTable(FeatureMap fgMatrix) {
+        this(fgMatrix.getRows(), fgMatrix.getCols(), new float[fgMatrix.getRows() * fgMatrix.getCols() * DIRECTION_COUNT], null);
+
+        FeaturePipeline.forEachStrip(rows, (from, to) -> {
+            for (int row = from; row < to; row++) {
+                for (int col = 0; col < cols; col++) {
+                    int base = (row * cols + col) * DIRECTION_COUNT;
+                    for (int d = 0; d < DIRECTION_COUNT; d++) {
+                        int newRow = row + DIRECTIONS[d][0];
+                        int newCol = col + DIRECTIONS[d][1];
+                        if (newRow < 0 || newRow >= rows || newCol < 0 || newCol >= cols) {
+                            costs[base + d] = Float.POSITIVE_INFINITY;
+                        } else {
+                            costs[base + d] = (float) ComputeMinCostPath.calculateDynamicCost(fgMatrix, newRow, newCol, -1, d);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private CostTable(int rows, int cols, float[] costs, short[] magnitudes) {
+        this.rows = rows;
+        this.cols = cols;
+        this.costs = costs;
+        this.magnitudes = magnitudes;
+        this.offsets = new int[DIRECTION_COUNT];
+        this.columnSteps = new int[DIRECTION_COUNT];
+        this.turnPenalties = new double[(DIRECTION_COUNT + 1) * DIRECTION_COUNT];
+
+        for (int d = 0; d < DIRECTION_COUNT; d++) {
+            offsets[d] = DIRECTIONS[d][0] * cols + DIRECTIONS[d][1];
+            columnSteps[d] = DIRECTIONS[d][1];
+        }
+        for (int in = -1; in < DIRECTION_COUNT; in++) {
+            for (int d = 0; d < DIRECTION_COUNT; d++) {
+                turnPenalties[(in + 1) * DIRECTION_COUNT + d] = ComputeMinCostPath.turnPenalty(in, d);
+            }
+        }
+    }
+
+    /**
+     * 取fgMatrix对应的边权表，没有时构建并缓存；fg图是紧凑存储上的视图或像素数超过 {@link #DENSE_PIXELS} 时构建紧凑表。
+     * 表在锁外构建，另一个线程正在构建同一张表时等待它完成
+     * @param fgMatrix fg特征图
+     * @return 边权表
+     */
+    public static CostTable of(FeatureMap fgMatrix) {
+        CompletableFuture<CostTable> future;
+        boolean builder = false;
+        synchronized (CACHE) {
+            future = CACHE.get(fgMatrix);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                CACHE.put(fgMatrix, future);
+                builder = true;
+            }
+        }
+        if (builder) {
+            try {
+                future.complete(build(fgMatrix));
+            } catch (RuntimeException | Error e) {
+                synchronized (CACHE) {
+                    CACHE.remove(fgMatrix, future);
+                }
+                future.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return future.join();
+    }
+
+    private static CostTable build(FeatureMap fgMatrix) {
+        CompactFeatureStore store = fgMatrix.getCompactStore();
+        if (store != null) {
+            return new CostTable(store.getRows(), store.getCols(), null, store.getMagnitudes());
+        }
+        if ((long) fgMatrix.getRows() * fgMatrix.getCols() > DENSE_PIXELS) {
+            return new CostTable(fgMatrix.getRows(), fgMatrix.getCols(), null,
+                    CompactFeatureStore.quantizeMagnitudes(fgMatrix));
+        }
+        return new CostTable(fgMatrix);
+    }
+
+    /**
+     * 从pixel沿direction走一步的边权
+     * @param pixel 起点像素下标 row * cols + col
+     * @param inDirection 走到pixel时的方向下标，种子点为-1
+     * @param direction 本次移动的方向下标
+     */
+    public double cost(int pixel, int inDirection, int direction) {
+        return staticCost(pixel, direction) * turnPenalties[(inDirection + 1) * DIRECTION_COUNT + direction];
+    }
+
+    /**
+     * 从pixel沿direction走一步、不计转向惩罚的静态代价
+     */
+    public float staticCost(int pixel, int direction) {
+        if (costs != null) return costs[pixel * DIRECTION_COUNT + direction];
+        return compactCost(pixel, direction);
+    }
+
+    // 紧凑表：越出上下边的邻居下标越界；左右边只有首末列需要取列号判断
+    private float compactCost(int pixel, int direction) {
+        int neighbor = pixel + offsets[direction];
+        if (neighbor < 0 || neighbor >= rows * cols) return Float.POSITIVE_INFINITY;
+        int columnStep = columnSteps[direction];
+        if (columnStep != 0) {
+            int col = pixel % cols;
+            if (col + columnStep < 0 || col + columnStep >= cols) return Float.POSITIVE_INFINITY;
+        }
+        return CompactFeatureStore.edgeCost(magnitudes[neighbor] & 0xFFFF, direction);
+    }
+
+    /**
+     * 表中任意一条边（含转向惩罚）的边权上界：有限静态代价的最大值乘以最大转向惩罚。
+     * 第一次调用时扫描一遍表并缓存，桶队列搜索据此确定桶的个数，不必每次查询都扫描fg图
+     */
+    public double maxEdgeCost() {
+        double cached = maxEdgeCost;
+        if (Double.isNaN(cached)) {
+            double maxPenalty = 0;
+            for (double penalty : turnPenalties) maxPenalty = Math.max(maxPenalty, penalty);
+            cached = maxStaticCost() * maxPenalty;
+            maxEdgeCost = cached;
+        }
+        return cached;
+    }
+
+    private double maxStaticCost() {
+        if (costs != null) {
+            float max = 0;
+            for (float cost : costs) {
+                if (cost > max && cost != Float.POSITIVE_INFINITY) max = cost;
+            }
+            return max;
+        }
+        // 紧凑表的静态代价随梯度值增大而减小，只需找出最小的梯度值以及是否存在NaN像素
+        int minCode = CompactFeatureStore.MAGNITUDE_ONE;
+        boolean hasNaN = false;
+        for (short magnitude : magnitudes) {
+            int code = magnitude & 0xFFFF;
+            if (code == CompactFeatureStore.MAGNITUDE_NAN) hasNaN = true;
+            else if (code < minCode) minCode = code;
+        }
+        double max = 0;
+        for (int d = 0; d < DIRECTION_COUNT; d++) {
+            max = Math.max(max, CompactFeatureStore.edgeCost(minCode, d));
+            if (hasNaN) max = Math.max(max, CompactFeatureStore.edgeCost(CompactFeatureStore.MAGNITUDE_NAN, d));
+        }
+        return max;
+    }
+
+    public double turnPenalty(int inDirection, int direction) {
+        return turnPenalties[(inDirection + 1) * DIRECTION_COUNT + direction];
+    }
+
+    public int index(int row, int col) {
+        return row * cols + col;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return 是否为以16位梯度值为后备的紧凑表
+     */
+    public boolean isCompact() {
+        return costs == null;
+    }
+
+    /**
+     * @return 边权表读取的数组占用的字节数：普通表为展开的边权，紧凑表为梯度值
+     */
+    public long byteSize() {
+        return costs != null ? (long) costs.length * Float.BYTES : (long) magnitudes.length * Short.BYTES;
+    }
+}
@@ -10,21 +10,21 @@ public class CursorSnap {
     /**
      * 实时计算吸附位置（屏幕坐标 -> 图像坐标 -> 吸附坐标 -> 屏幕坐标）
      * @param screenPoint 当前鼠标屏幕坐标
-     * @param gMatrix     预计算的梯度矩阵
+     * @param features    特征快照，梯度值经由 {@link FeatureSnapshot#gradient} 读取
      * @param scaleX      水平缩放比例
      * @param scaleY      垂直缩放比例
      * @return 吸附后的屏幕坐标
      */
-    public static Point2D realtimeSnap(Point2D screenPoint, double[][] gMatrix, double scaleX, double scaleY, int snapRadius) {
+    public static Point2D realtimeSnap(Point2D screenPoint, FeatureSnapshot features, double scaleX, double scaleY, int snapRadius) {
         // 屏幕坐标转图像坐标
         int imgX = (int) (screenPoint.getX() / scaleX);
         int imgY = (int) (screenPoint.getY() / scaleY);
 
         // 动态计算吸附半径（基于局部梯度强度）
-        int dynamicRadius = calculateDynamicRadius(gMatrix, imgX, imgY, snapRadius);
+        int dynamicRadius = calculateDynamicRadius(features, imgX, imgY, snapRadius);
 
         // 查找最大梯度点
-        int[] snapped = findMaxGradient(gMatrix, imgX, imgY, dynamicRadius);
+        int[] snapped = findMaxGradient(features, imgX, imgY, dynamicRadius);
 
         // 图像坐标转回屏幕坐标
         return new Point2D(
@@ -34,8 +34,8 @@ public class CursorSnap {
     }
 
     // 动态调整吸附半径（根据局部梯度变化率）
-    private static int calculateDynamicRadius(double[][] gMatrix, int x, int y, int snapRadius) {
-        double currentGradient = gMatrix[y][x];
+    private static int calculateDynamicRadius(FeatureSnapshot features, int x, int y, int snapRadius) {
+        double currentGradient = features.gradient(y, x);
         if (currentGradient > EDGE_THRESHOLD) {
             return snapRadius / 2; // 强边缘区域使用小半径
         }
@@ -43,19 +43,19 @@ public class CursorSnap {
     }
 
     // 查找局部最大梯度点
-    private static int[] findMaxGradient(double[][] gMatrix, int centerX, int centerY, int radius) {
+    private static int[] findMaxGradient(FeatureSnapshot features, int centerX, int centerY, int radius) {
         int maxX = centerX;
         int maxY = centerY;
-        double maxVal = gMatrix[centerY][centerX];
+        double maxVal = features.gradient(centerY, centerX);
 
         for (int y = Math.max(0, centerY - radius);
-             y < Math.min(gMatrix.length, centerY + radius);
+             y < Math.min(features.getRows(), centerY + radius);
              y++) {
             for (int x = Math.max(0, centerX - radius);
-                 x < Math.min(gMatrix[0].length, centerX + radius);
+                 x < Math.min(features.getCols(), centerX + radius);
                  x++) {
-                if (gMatrix[y][x] > maxVal) {
-                    maxVal = gMatrix[y][x];
+                if (features.gradient(y, x) > maxVal) {
+                    maxVal = features.gradient(y, x);
                     maxX = x;
                     maxY = y;
                 }
@@ -0,0 +1,244 @@
+package src;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static src.ComputeMinCostPath.DIRECTIONS;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 并行的delta-stepping整图最短路径树，用于需要从种子点覆盖整幅图像的批处理。
+ * <p>按距离把像素分进宽度为δ的桶，从小到大逐桶处理，同一个桶里的像素由多个线程同时松弛。
+ * δ取边权的下界 {@link ComputeMinCostPath#MIN_EDGE_COST}（略微缩小以吸收舍入误差）：
+ * 桶内任一像素松弛出的距离至少落在下一个桶，所以处理到一个桶时桶内的距离都已确定。
+ * 这与串行Dijkstra一样是标号设定的，转向惩罚按像素最终的入射方向计算，得到的是同一棵树。</p>
+ * <p>每个像素的距离与入射方向打包成一个long：距离的double位模式去掉最低3位，换成方向下标，
+ * 并发松弛用CAS取最小值。取最小值与执行顺序无关，所以不论线程数与调度如何，结果都逐位相同；
+ * 只有距离完全相等时取方向下标较小的父像素，这是与串行搜索（先到者保留）唯一可能不同的地方。</p>
+ */
+public class DeltaStepping {
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long UNREACHED = Long.MAX_VALUE;
+    private static final long DIRECTION_MASK = 7;
+    // 桶宽：边权下界留出1e-6的余量，保证舍入后松弛出的距离仍然落在后面的桶
+    private static final double DELTA = ComputeMinCostPath.MIN_EDGE_COST * (1 - 1e-6);
+    // 桶内像素少于该数时在当前线程处理，分发任务的开销不值得
+    private static final int PARALLEL_THRESHOLD = 2048;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final CostTable costTable;
+    private final int rows;
+    private final int cols;
+    private final ForkJoinPool pool;    // null表示在当前线程串行处理
+    private final int chunks;           // 一个桶最多分成的块数，每块各自记录新落入的像素
+    private final int ringSize;         // 循环桶的个数
+    private final int[] offsets;        // 各方向邻居的下标偏移
+
+    private final long[] keys;          // 距离位模式 | 入射方向，UNREACHED表示尚未到达
+    private final IntList[][] pending;  // [块][桶环下标]：松弛时新落入该桶的像素
+    private int source = -1;
+
+    /**
+     * @param fgMatrix fg特征图
+     * @param pool 执行松弛的线程池，null表示串行
+     */
+    public DeltaStepping(FeatureMap fgMatrix, ForkJoinPool pool) {
+        this.costTable = CostTable.of(fgMatrix);
+        this.rows = fgMatrix.getRows();
+        this.cols = fgMatrix.getCols();
+        this.pool = pool;
+        this.chunks = pool == null ? 1 : pool.getParallelism() * CHUNKS_PER_THREAD;
+        // 一条边最多把距离推后 maxEdgeCost（随边权表缓存，含NaN像素与转向惩罚）
+        double maxEdgeCost = costTable.maxEdgeCost();
+        this.ringSize = (int) (maxEdgeCost / DELTA) + 3;
+        this.offsets = new int[DIRECTIONS.length];
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            offsets[d] = DIRECTIONS[d][0] * cols + DIRECTIONS[d][1];
+        }
+        this.keys = new long[rows * cols];
+        this.pending = new IntList[chunks][ringSize];
+        for (IntList[] lists : pending) {
+            for (int i = 0; i < ringSize; i++) lists[i] = new IntList();
+        }
+    }
+
+    /**
+     * 在并行车道（{@link TaskLanes.Lane#PARALLEL}）上用所有核心建立以seed为根、覆盖整幅图像的最短路径树
+     * @param fgMatrix fg特征图
+     * @param seed 种子点
+     * @return 最短路径树；线程被中断时返回null
+     */
+    public static CompactTree buildTree(FeatureMap fgMatrix, SeedPoint seed) {
+        return new DeltaStepping(fgMatrix, TaskLanes.shared().parallelPool()).build(seed.getX(), seed.getY());
+    }
+
+    /**
+     * 建立以(seedRow, seedCol)为根的整图最短路径树，每处理完一个桶检查一次线程中断
+     * @return 最短路径树；线程被中断时返回null
+     */
+    public CompactTree build(int seedRow, int seedCol) {
+        if (seedRow < 0 || seedRow >= rows || seedCol < 0 || seedCol >= cols) {
+            throw new IllegalArgumentException("Seed out of bounds");
+        }
+        Arrays.fill(keys, UNREACHED);
+        for (IntList[] lists : pending) {
+            for (IntList list : lists) list.clear();
+        }
+        source = seedRow * cols + seedCol;
+        keys[source] = 0;
+        pending[0][0].add(source);
+        long outstanding = 1; // 所有桶中尚未处理的条目数（含过期条目）
+
+        for (long bucket = 0; outstanding > 0; bucket++) {
+            int slot = (int) (bucket % ringSize);
+            int total = 0;
+            for (IntList[] lists : pending) total += lists[slot].size;
+            if (total == 0) continue;
+
+            if (pool == null || total < PARALLEL_THRESHOLD) {
+                relaxRange(bucket, slot, 0, total, 0);
+            } else {
+                relaxParallel(bucket, slot, total);
+            }
+            for (IntList[] lists : pending) lists[slot].clear();
+
+            outstanding = 0;
+            for (IntList[] lists : pending) {
+                for (IntList list : lists) outstanding += list.size;
+            }
+            if (Thread.currentThread().isInterrupted()) return null;
+        }
+        return toTree(seedRow, seedCol);
+    }
+
+    // 把本桶的条目均分成chunks块，第c块松弛出的新条目记在pending[c]中
+    private void relaxParallel(long bucket, int slot, int total) {
+        List<Callable<Void>> tasks = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            int from = (int) ((long) total * c / chunks);
+            int to = (int) ((long) total * (c + 1) / chunks);
+            int chunk = c;
+            tasks.add(() -> {
+                TaskLanes.checkpoint();
+                relaxRange(bucket, slot, from, to, chunk);
+                return null;
+            });
+        }
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("并行松弛失败", e.getCause());
+            }
+        }
+    }
+
+    // 松弛本桶各块条目依次拼接后的第 [from, to) 个
+    private void relaxRange(long bucket, int slot, int from, int to, int chunk) {
+        if (from >= to) return;
+        int list = 0;
+        int start = 0; // 第list块在拼接序列中的起始位置
+        while (start + pending[list][slot].size <= from) {
+            start += pending[list][slot].size;
+            list++;
+        }
+        for (int i = from; i < to; i++) {
+            while (i - start >= pending[list][slot].size) {
+                start += pending[list][slot].size;
+                list++;
+            }
+            relax(pending[list][slot].values[i - start], bucket, chunk);
+        }
+    }
+
+    private void relax(int pixel, long bucket, int chunk) {
+        // 本桶的像素不会再被改进，直接读取是安全的
+        long key = keys[pixel];
+        double distance = distanceOf(key);
+        if (bucketOf(distance) != bucket) return; // 条目已过期：像素之后被改进到了更早的桶
+        int inDirection = pixel == source ? -1 : (int) (key & DIRECTION_MASK);
+
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            double cost = costTable.cost(pixel, inDirection, d);
+            if (cost == Double.POSITIVE_INFINITY) continue; // 越出图像
+            int next = pixel + offsets[d];
+            double newDistance = distance + cost;
+            long newKey = (Double.doubleToRawLongBits(newDistance) & ~DIRECTION_MASK) | d;
+            long old = (long) KEYS.getVolatile(keys, next);
+            while (newKey < old) {
+                long witness = (long) KEYS.compareAndExchange(keys, next, old, newKey);
+                if (witness == old) {
+                    // 距离只减不增，像素落入每个桶至多一次；仍在同一个桶时不必重复登记
+                    long newBucket = bucketOf(distanceOf(newKey));
+                    if (old == UNREACHED || bucketOf(distanceOf(old)) != newBucket) {
+                        pending[chunk][(int) (newBucket % ringSize)].add(next);
+                    }
+                    break;
+                }
+                old = witness;
+            }
+        }
+    }
+
+    private CompactTree toTree(int seedRow, int seedCol) {
+        int size = rows * cols;
+        byte[] inDirections = new byte[size];
+        float[] distances = new float[size];
+        for (int i = 0; i < size; i++) {
+            long key = keys[i];
+            if (key == UNREACHED) {
+                inDirections[i] = CompactTree.NOT_SETTLED;
+            } else {
+                inDirections[i] = i == source ? CompactTree.ROOT : (byte) (key & DIRECTION_MASK);
+                distances[i] = (float) distanceOf(key);
+            }
+        }
+        return CompactTree.wrap(new SeedPoint(seedRow, seedCol), rows, cols, inDirections, distances);
+    }
+
+    private static double distanceOf(long key) {
+        return Double.longBitsToDouble(key & ~DIRECTION_MASK);
+    }
+
+    private static long bucketOf(double distance) {
+        return (long) (distance / DELTA);
+    }
+
+    /**
+     * @return 最近一次build的结果指纹，用于验证不同线程数下结果逐位相同
+     */
+    long checksum() {
+        return Arrays.hashCode(keys);
+    }
+
+    double distance(int pixel) {
+        return keys[pixel] == UNREACHED ? Double.MAX_VALUE : distanceOf(keys[pixel]);
+    }
+
+    // 只追加的int数组，每块各自一份，不需要同步
+    private static final class IntList {
+        int[] values = new int[16];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
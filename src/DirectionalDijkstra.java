@@ -0,0 +1,286 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static src.ComputeMinCostPath.DIRECTIONS;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 按（像素，入射方向）展开状态的精确最短路。
+ * <p>{@link ComputeMinCostPath#calculateDynamicCost} 的转向惩罚取决于走到当前像素时的方向，
+ * 边权因此依赖于路径，逐像素的Dijkstra只保留每个像素的一个最优前驱，结果只是近似。
+ * 把状态展开为 (像素, 入射方向) 的 8 × N 个状态后，每条边的代价只取决于两端状态，
+ * 普通Dijkstra在这张图上给出的就是真正的最优路径。</p>
+ * <p>状态下标为 {@code pixel * 8 + inDirection}。每个状态只占5个字节：float距离，
+ * 以及一个字节同时存放父状态的入射方向（低4位，{@link #FROM_SEED} 表示父像素就是种子点）和结算标记，
+ * 父像素本身由当前像素减去入射方向的偏移得到，不需要存储。
+ * 优先队列是按 (float键值, 状态) 打包成long的二叉堆，采用惰性删除，只在边界上占用内存。
+ * 以八方向距离为启发函数按A*扩展，越出图像的边在 {@link CostTable} 中为正无穷，内循环没有边界判断。</p>
+ * <p>转向惩罚只影响下一步，而且至多让下一步多出一倍静态代价，所以同一像素上距离明显更大的状态
+ * 必然被先结算的状态支配，这样的状态既不入堆也不扩展（见 {@link #isDominated}），
+ * 实际结算的状态数约为逐像素搜索的4倍而不是8倍。</p>
+ * <p>状态缓冲区来自 {@link SearchWorkspace}（每像素约44字节，逐像素搜索约30字节），同一线程的多次搜索复用同一组数组。
+ * 每个像素的8个状态在本次搜索第一次到达该像素时才初始化（按代号戳判断），开始搜索不必清空整个数组。
+ * 耗时约为逐像素A*的5倍，见 {@code bench/src} 中的 {@link DirectionalDijkstraBench}。</p>
+ */
+public class DirectionalDijkstra {
+
+    private static final int DIRECTION_COUNT = CostTable.DIRECTION_COUNT;
+    // 父状态的入射方向为该值时，父像素是种子点
+    private static final int FROM_SEED = 8;
+    private static final int PARENT_MASK = 0x0F;
+    private static final byte SETTLED = 0x10;
+
+    private final FeatureMap fgMatrix;
+    private final CostTable costTable;
+    private final int rows;
+    private final int cols;
+    private final int[] pixelOffsets = new int[DIRECTION_COUNT]; // 沿各方向走一步时像素下标的增量
+
+    // 以下缓冲区来自SearchWorkspace，长度可能大于本图像所需
+    private final SearchWorkspace workspace;
+    private final float[] distances; // [pixel * 8 + inDirection]
+    private final byte[] states;     // 低4位：父状态的入射方向；第5位：是否已结算
+    private final float[] pixelDistances; // 每个像素第一个结算的状态的距离，即到该像素的最短距离
+    private final int[] stamps;      // 等于epoch表示该像素的状态已在本次搜索中初始化
+    private int epoch;
+    private long[] heap = new long[1024];
+    private int heapSize = 0;
+    private int settledCount = 0;
+
+    /**
+     * 使用当前线程的 {@link SearchWorkspace#current()}
+     */
+    public DirectionalDijkstra(FeatureMap fgMatrix) {
+        this(fgMatrix, SearchWorkspace.current());
+    }
+
+    /**
+     * @param workspace 可复用的缓冲区，同一时刻只能被一个搜索使用
+     */
+    public DirectionalDijkstra(FeatureMap fgMatrix, SearchWorkspace workspace) {
+        this.fgMatrix = fgMatrix;
+        this.costTable = CostTable.of(fgMatrix);
+        this.rows = fgMatrix.getRows();
+        this.cols = fgMatrix.getCols();
+        for (int d = 0; d < DIRECTION_COUNT; d++) {
+            pixelOffsets[d] = DIRECTIONS[d][0] * cols + DIRECTIONS[d][1];
+        }
+        this.workspace = workspace;
+        // 与SearchWorkspace.releaseAll互斥，保证取到的是同一组数组
+        synchronized (workspace) {
+            workspace.ensureStateCapacity(Math.multiplyExact(rows, cols));
+            this.distances = workspace.stateDistances;
+            this.states = workspace.states;
+            this.pixelDistances = workspace.pixelDistances;
+            this.stamps = workspace.stamps;
+        }
+    }
+
+    /**
+     * 在展开状态图上求(startRow, startCol)到(endRow, endCol)的精确最短路
+     * @return 最短路径，坐标为 {row, col}
+     */
+    public static ComputeMinCostPath.PathResult search(FeatureMap fgMatrix, int startRow, int startCol,
+                                                       int endRow, int endCol) {
+        return new DirectionalDijkstra(fgMatrix).findPath(startRow, startCol, endRow, endCol);
+    }
+
+    /**
+     * 求最短路，可重复调用；每次调用取新的代号，上一次搜索留下的状态视为未访问
+     * @return 最短路径，distance为沿路径按边权表以double累加的长度，见 {@link #pathCost}
+     */
+    public ComputeMinCostPath.PathResult findPath(int startRow, int startCol, int endRow, int endCol) {
+        epoch = workspace.nextEpoch(stamps);
+        heapSize = 0;
+        settledCount = 0;
+
+        int source = startRow * cols + startCol;
+        int target = endRow * cols + endCol;
+        if (source == target) {
+            return new ComputeMinCostPath.PathResult(0, Collections.singletonList(new int[]{startRow, startCol}));
+        }
+
+        // 种子点没有入射方向，直接松弛它的八个邻居
+        for (int d = 0; d < DIRECTION_COUNT; d++) {
+            float cost = costTable.staticCost(source, d);
+            if (cost == Float.POSITIVE_INFINITY) continue;
+            int nextPixel = source + pixelOffsets[d];
+            touch(nextPixel);
+            int next = nextPixel * DIRECTION_COUNT + d;
+            if (cost < distances[next]) {
+                distances[next] = cost;
+                states[next] = FROM_SEED;
+                push(cost + heuristic(next, endRow, endCol), next);
+            }
+        }
+
+        while (heapSize > 0) {
+            int state = (int) poll();
+            if ((states[state] & SETTLED) != 0) continue; // 过期的堆元素
+            states[state] |= SETTLED;
+            settledCount++;
+            if ((settledCount & PixelDijkstra.INTERRUPT_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) {
+                break;
+            }
+
+            int pixel = state >>> 3;
+            if (pixel == target) {
+                return buildResult(state);
+            }
+
+            int inDirection = state & 7;
+            double distance = distances[state];
+            if (pixelDistances[pixel] == Float.MAX_VALUE) {
+                pixelDistances[pixel] = (float) distance;
+            } else if (isDominated(pixel, inDirection, distance)) {
+                continue;
+            }
+            for (int d = 0; d < DIRECTION_COUNT; d++) {
+                float cost = costTable.staticCost(pixel, d);
+                if (cost == Float.POSITIVE_INFINITY) continue;
+                int nextPixel = pixel + pixelOffsets[d];
+                touch(nextPixel);
+                int next = nextPixel * DIRECTION_COUNT + d;
+                if ((states[next] & SETTLED) != 0) continue;
+
+                float newDistance = (float) (distance + cost * costTable.turnPenalty(inDirection, d));
+                // 转向惩罚至多使下一步的代价增加一倍静态代价：比该像素已结算的最短距离多出最大出边代价时，
+                // 这个状态必然被支配，不必入堆
+                float settledDistance = pixelDistances[nextPixel];
+                if (newDistance >= settledDistance && newDistance - settledDistance >= maxStaticCost(nextPixel)) continue;
+                if (newDistance < distances[next]) {
+                    distances[next] = newDistance;
+                    states[next] = (byte) inDirection;
+                    push(newDistance + heuristic(next, endRow, endCol), next);
+                }
+            }
+        }
+        return new ComputeMinCostPath.PathResult(-1, Collections.emptyList());
+    }
+
+    // 本次搜索第一次到达pixel时初始化它的8个状态
+    private void touch(int pixel) {
+        if (stamps[pixel] == epoch) return;
+        stamps[pixel] = epoch;
+        int base = pixel * DIRECTION_COUNT;
+        Arrays.fill(distances, base, base + DIRECTION_COUNT, Float.MAX_VALUE);
+        Arrays.fill(states, base, base + DIRECTION_COUNT, (byte) 0);
+        pixelDistances[pixel] = Float.MAX_VALUE;
+    }
+
+    /**
+     * 同一像素上另一个已结算的状态是否支配当前状态：对任意下一步方向e都有
+     * dist' + c(e) * turn(in', e) ≤ dist + c(e) * turn(in, e)，此时从当前状态出发的任何路径
+     * 都可以换成从那个状态出发而不变差，当前状态无需扩展。转向惩罚只作用在下一步上，这一判断是精确的
+     */
+    private boolean isDominated(int pixel, int inDirection, double distance) {
+        int base = pixel * DIRECTION_COUNT;
+        for (int other = 0; other < DIRECTION_COUNT; other++) {
+            if (other == inDirection || (states[base + other] & SETTLED) == 0) continue;
+            double slack = distance - distances[base + other];
+            boolean dominated = true;
+            for (int e = 0; e < DIRECTION_COUNT && dominated; e++) {
+                float cost = costTable.staticCost(pixel, e);
+                if (cost == Float.POSITIVE_INFINITY) continue;
+                dominated = cost * (costTable.turnPenalty(other, e) - costTable.turnPenalty(inDirection, e)) <= slack;
+            }
+            if (dominated) return true;
+        }
+        return false;
+    }
+
+    // 像素各条出边静态代价的最大值（越出图像的边除外）
+    private float maxStaticCost(int pixel) {
+        float max = 0;
+        for (int d = 0; d < DIRECTION_COUNT; d++) {
+            float cost = costTable.staticCost(pixel, d);
+            if (cost != Float.POSITIVE_INFINITY && cost > max) max = cost;
+        }
+        return max;
+    }
+
+    private float heuristic(int state, int goalRow, int goalCol) {
+        int pixel = state >>> 3;
+        int row = pixel / cols;
+        return (float) ComputeMinCostPath.octileHeuristic(row, pixel - row * cols, goalRow, goalCol);
+    }
+
+    // 从终点状态沿父状态回溯，并以double重新累加路径长度
+    private ComputeMinCostPath.PathResult buildResult(int state) {
+        List<int[]> path = new ArrayList<>();
+        while (true) {
+            int pixel = state >>> 3;
+            path.add(new int[]{pixel / cols, pixel % cols});
+            int parentPixel = pixel - pixelOffsets[state & 7];
+            int parentDirection = states[state] & PARENT_MASK;
+            if (parentDirection == FROM_SEED) {
+                path.add(new int[]{parentPixel / cols, parentPixel % cols});
+                break;
+            }
+            state = parentPixel * DIRECTION_COUNT + parentDirection;
+        }
+        Collections.reverse(path);
+        return new ComputeMinCostPath.PathResult(pathCost(fgMatrix, path), path);
+    }
+
+    /**
+     * 按搜索所用的边权表（{@link CostTable}）计算一条八连通路径的长度，即静态代价乘转向惩罚逐步累加。
+     * 与 {@link ComputeMinCostPath#calculateDynamicCost} 只在fg为NaN的像素上不同：表中的静态代价1仍会乘上转向惩罚
+     */
+    static double pathCost(FeatureMap fgMatrix, List<int[]> path) {
+        CostTable costTable = CostTable.of(fgMatrix);
+        double cost = 0;
+        int inDirection = -1;
+        for (int i = 1; i < path.size(); i++) {
+            int dRow = path.get(i)[0] - path.get(i - 1)[0];
+            int dCol = path.get(i)[1] - path.get(i - 1)[1];
+            int direction = (dRow + 1) * 3 + (dCol + 1);
+            direction = direction > 4 ? direction - 1 : direction; // 跳过 {0, 0}，与DIRECTIONS的顺序一致
+            int pixel = costTable.index(path.get(i - 1)[0], path.get(i - 1)[1]);
+            cost += costTable.staticCost(pixel, direction) * costTable.turnPenalty(inDirection, direction);
+            inDirection = direction;
+        }
+        return cost;
+    }
+
+    // 堆元素：高32位为键值的float位模式（非负float的位模式与数值同序），低32位为状态下标
+    private void push(float key, int state) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        long entry = ((long) Float.floatToRawIntBits(key) << 32) | state;
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= entry) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = entry;
+    }
+
+    private long poll() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int i = 0;
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++;
+            if (last <= heap[child]) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top & 0xFFFFFFFFL;
+    }
+
+    public int getSettledCount() {
+        return settledCount;
+    }
+}
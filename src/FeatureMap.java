@@ -0,0 +1,111 @@
+package src;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 一张按行连续存放的float特征图（梯度、fg等）。
+ * <p>所有像素存放在同一个 {@code float[]} 中，(row, col) 位于 {@code row * cols + col}。
+ * 与 {@code double[rows][cols]} 的锯齿数组相比，没有每行一个数组对象的对象头与指针，
+ * 相邻行在内存中首尾相接，每像素只占4字节，一幅1亿像素图像的一张特征图约400MB，只有原来的一半左右，
+ * fg与梯度两张图合计也只有原先一张的大小。</p>
+ * <p>行列的含义与原来的矩阵相同：row对应矩阵的第一维（图像x坐标），col对应第二维（图像y坐标），
+ * 调用方把 {@code matrix[row][col]} 换成 {@link #get(int, int)} 即可。</p>
+ * <p>特征图由计算它的一方填写，作为 {@link FeatureSnapshot} 的一部分发布后不能再修改。</p>
+ * <p>超大图像的fg图是 {@link CompactFeatureStore} 上的只读视图（{@link #view}）：没有float数组，
+ * {@link #get} 从16位梯度值解码出量化后的fg，边权表与金字塔直接读取存储。</p>
+ */
+public final class FeatureMap {
+
+    private final int rows;
+    private final int cols;
+    private final float[] data;              // 视图为null
+    private final CompactFeatureStore store; // 非null时本图是该存储上的只读fg视图
+
+    /**
+     * 新建一张全0的特征图
+     */
+    public FeatureMap(int rows, int cols) {
+        this.data = new float[checkedSize(rows, cols)];
+        this.rows = rows;
+        this.cols = cols;
+        this.store = null;
+    }
+
+    private FeatureMap(CompactFeatureStore store) {
+        this.rows = store.getRows();
+        this.cols = store.getCols();
+        this.data = null;
+        this.store = store;
+    }
+
+    /**
+     * 紧凑存储上的只读fg视图，每像素不再占用float数组的4字节
+     * @param store 紧凑存储
+     * @return fg视图，同一个存储应只建一个视图，边权表与金字塔按视图的引用缓存
+     */
+    static FeatureMap view(CompactFeatureStore store) {
+        return new FeatureMap(store);
+    }
+
+    private static int checkedSize(int rows, int cols) {
+        long size = (long) rows * cols;
+        if (rows < 0 || cols < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Feature map too large: " + rows + "x" + cols);
+        }
+        return (int) size;
+    }
+
+    public float get(int row, int col) {
+        if (data == null) return store.fg(row * cols + col);
+        return data[row * cols + col];
+    }
+
+    /**
+     * @throws UnsupportedOperationException 紧凑存储上的视图是只读的
+     */
+    public void set(int row, int col, float value) {
+        if (data == null) throw new UnsupportedOperationException("Compact feature map is read-only");
+        data[row * cols + col] = value;
+    }
+
+    /**
+     * @return (row, col) 在 {@link #getData()} 中的下标
+     */
+    public int index(int row, int col) {
+        return row * cols + col;
+    }
+
+    /**
+     * @return 底层数组，供需要直接按下标遍历的内层循环使用；紧凑存储上的视图为null
+     */
+    public float[] getData() {
+        return data;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return 视图所在的紧凑存储；普通特征图为null
+     */
+    CompactFeatureStore getCompactStore() {
+        return store;
+    }
+
+    /**
+     * @return 特征图占用的字节数（不含对象头）；视图为0，数据计入紧凑存储
+     */
+    public long byteSize() {
+        return data == null ? 0 : (long) data.length * Float.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return "FeatureMap[" + rows + "x" + cols + "]";
+    }
+}
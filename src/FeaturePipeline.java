@@ -0,0 +1,235 @@
+package src;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 并行的特征计算流水线。
+ * <p>把矩阵按行切成条带，在并行车道（{@link TaskLanes.Lane#PARALLEL}，并行度为CPU核数）上递归二分处理。
+ * 每个条带开始前调用 {@link TaskLanes#checkpoint()}，交互搜索进行时让出CPU。
+ * 3*3卷积需要条带上下各一行的邻域（halo行），它们直接从共享的只读输入矩阵中读取；
+ * 过零点还需要相邻行的拉普拉斯值，每个条带自己多算上下各一行，条带之间没有依赖。</p>
+ * <p>Sobel、梯度值、fg归一化与最大值都由 {@link SimdFeatures} 的float内核计算（有Vector API时向量化），
+ * 梯度与fg直接写入按行连续的float特征图（{@link FeatureMap}），fg所需的全局梯度最大值用并行归约求出。
+ * 条带拼出的结果与在整幅图像上调用 {@link SimdFeatures} 逐位相同；与 {@link ProcessMatrix#findGMatrix} 的int实现相比，
+ * Ix*Ix+Iy*Iy不再溢出。RGB矩阵与 {@link ProcessImage#toRGBMatrix} 的串行实现逐位相同，耗时随核数增长而下降。</p>
+ */
+public class FeaturePipeline {
+
+    // 条带不少于这么多行，避免任务过碎
+    private static final int MIN_STRIP_ROWS = 16;
+    // 每个线程平均分到的条带数，条带多一些便于负载均衡
+    private static final int STRIPS_PER_THREAD = 4;
+    // 像素数不少于该值时使用紧凑存储与紧凑边权表，见 compute(int[][], boolean)
+    static final long COMPACT_PIXELS = 64L << 20;
+
+    /**
+     * 并行计算图像的全部特征，并预先构建搜索用的金字塔与边权表
+     * @param image 原始图像
+     * @return 新快照
+     */
+    public static FeatureSnapshot compute(BufferedImage image) {
+        return compute(toRGBMatrix(image));
+    }
+
+    /**
+     * 并行计算RGB矩阵的全部特征，并预先构建搜索用的金字塔与边权表；
+     * 像素数达到 {@link #COMPACT_PIXELS} 时使用紧凑存储
+     * @param matrix RGB矩阵
+     * @return 新快照
+     */
+    public static FeatureSnapshot compute(int[][] matrix) {
+        return compute(matrix, (long) matrix.length * matrix[0].length >= COMPACT_PIXELS);
+    }
+
+    /**
+     * 并行计算RGB矩阵的全部特征，并预先构建搜索用的金字塔与边权表
+     * @param compact 为true时梯度图原地归一化为fg图，再由它与RGB矩阵构建 {@link CompactFeatureStore}（每像素约3.1字节），
+     *                快照的fg图换成存储上的视图，不保留RGB矩阵、梯度图与float的fg图；
+     *                各层金字塔都是紧凑视图并使用紧凑边权表，而不是每像素32字节的普通边权表
+     * @return 新快照
+     */
+    public static FeatureSnapshot compute(int[][] matrix, boolean compact) {
+        FeatureMap gMatrix = findGMatrix(matrix);
+        double maxGradient = findMaxGradient(gMatrix);
+        if (compact) {
+            normalize(gMatrix, (float) maxGradient, gMatrix); // 原地归一化为fg，量化进存储后即可回收
+            CompactFeatureStore store = CompactFeatureStore.compute(matrix, gMatrix);
+            FeatureMap fgMatrix = FeatureMap.view(store);
+            FeaturePyramid pyramid = FeaturePyramid.build(null, fgMatrix);
+            for (int level = 0; level < pyramid.levels(); level++) {
+                CostTable.of(pyramid.getFgMatrix(level)); // 紧凑边权表直接共用各层存储中的梯度值
+            }
+            return new FeatureSnapshot(fgMatrix, maxGradient, store);
+        }
+        FeatureMap fgMatrix = new FeatureMap(gMatrix.getRows(), gMatrix.getCols());
+        normalize(gMatrix, (float) maxGradient, fgMatrix);
+        FeaturePyramid.build(gMatrix, fgMatrix);
+        CostTable.of(fgMatrix); // 预先构建边权表，避免第一次搜索时等待
+        return new FeatureSnapshot(matrix, gMatrix, fgMatrix, maxGradient);
+    }
+
+    /**
+     * 与 {@link ProcessImage#toRGBMatrix} 相同，格式转换与转置都按条带并行
+     * @return pixelMatrix[x][y]
+     */
+    public static int[][] toRGBMatrix(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[][] pixelMatrix = new int[width][height];
+
+        // 统一转换为 INT_RGB 格式，每个条带画到共享同一块缓冲区的子图上
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            BufferedImage source = image;
+            BufferedImage convertedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            forEachStrip(height, (from, to) -> {
+                Graphics2D graphics = convertedImage.getSubimage(0, from, width, to - from).createGraphics();
+                try {
+                    graphics.drawImage(source, 0, -from, null);
+                } finally {
+                    graphics.dispose();
+                }
+            });
+            image = convertedImage;
+        }
+
+        // 每个条带负责输出矩阵的若干行（即图像的若干列），按图像行读取，读写都连续
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        forEachStrip(width, (from, to) -> {
+            for (int y = 0; y < height; y++) {
+                int offset = y * width;
+                for (int x = from; x < to; x++) {
+                    pixelMatrix[x][y] = pixels[offset + x];
+                }
+            }
+        });
+        return pixelMatrix;
+    }
+
+    /**
+     * 梯度图，按行条带并行，每个条带调用 {@link SimdFeatures#gradientRows} 直接写入特征图
+     */
+    public static FeatureMap findGMatrix(int[][] matrix) {
+        FeatureMap gMatrix = new FeatureMap(matrix.length, matrix[0].length);
+        forEachStrip(matrix.length, (from, to) ->
+                SimdFeatures.gradientRows(matrix, from, to, gMatrix.getData(), gMatrix.index(from, 0)));
+        return gMatrix;
+    }
+
+    /**
+     * fg图 fg = 1 - g / maxG：先并行归约出maxG，再按行调用 {@link SimdFeatures#normalize(float[], float, float[], int, int)}
+     */
+    public static FeatureMap findFgMatrix(FeatureMap gMatrix) {
+        FeatureMap fgMatrix = new FeatureMap(gMatrix.getRows(), gMatrix.getCols());
+        normalize(gMatrix, (float) findMaxGradient(gMatrix), fgMatrix);
+        return fgMatrix;
+    }
+
+    // 按行归一化，fgMatrix可以就是gMatrix（原地归一化）
+    private static void normalize(FeatureMap gMatrix, float maxG, FeatureMap fgMatrix) {
+        int cols = gMatrix.getCols();
+        float[] fg = fgMatrix.getData();
+        forEachStrip(gMatrix.getRows(), (from, to) -> {
+            for (int y = from; y < to; y++) {
+                float[] g = gMatrix.getData();
+                int gBase = gMatrix.index(y, 0);
+                int fgBase = fgMatrix.index(y, 0);
+                if (gBase != fgBase) { // 内核对输入输出使用相同下标，布局不同时先复制再原地归一化
+                    System.arraycopy(g, gBase, fg, fgBase, cols);
+                    g = fg;
+                }
+                SimdFeatures.normalize(g, maxG, fg, fgBase, fgBase + cols);
+            }
+        });
+    }
+
+    /**
+     * 与 {@link ProcessMatrix#findMaxGradient} 相同（NaN会传播），每个条带按行调用
+     * {@link SimdFeatures#max(float[], int, int)} 后并行归约。float内核算出的梯度不含NaN且不小于0，
+     * 因此也与 {@link ProcessMatrix#findFgMatrix} 中从0开始的最大值相同
+     */
+    public static double findMaxGradient(FeatureMap gMatrix) {
+        return TaskLanes.shared().invoke(new MaxTask(gMatrix, 0, gMatrix.getRows(), stripRows(gMatrix.getRows())));
+    }
+
+    private static final class MaxTask extends RecursiveTask<Float> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient FeatureMap matrix;
+        private final int from;
+        private final int to;
+        private final int stripRows;
+
+        MaxTask(FeatureMap matrix, int from, int to, int stripRows) {
+            this.matrix = matrix;
+            this.from = from;
+            this.to = to;
+            this.stripRows = stripRows;
+        }
+
+        @Override
+        protected Float compute() {
+            if (to - from <= stripRows) {
+                float max = Float.NEGATIVE_INFINITY;
+                for (int y = from; y < to; y++) {
+                    int base = matrix.index(y, 0);
+                    max = Math.max(max, SimdFeatures.max(matrix.getData(), base, base + matrix.getCols()));
+                }
+                return max;
+            }
+            int middle = (from + to) >>> 1;
+            MaxTask left = new MaxTask(matrix, from, middle, stripRows);
+            left.fork();
+            float right = new MaxTask(matrix, middle, to, stripRows).compute();
+            return Math.max(left.join(), right);
+        }
+    }
+
+    /**
+     * 处理 [from, to) 行的一个条带
+     */
+    @FunctionalInterface
+    interface StripBody {
+        void run(int from, int to);
+    }
+
+    static void forEachStrip(int rows, StripBody body) {
+        TaskLanes.shared().invoke(new StripTask(0, rows, stripRows(rows), body));
+    }
+
+    private static int stripRows(int rows) {
+        return Math.max(MIN_STRIP_ROWS, rows / (TaskLanes.shared().getParallelism() * STRIPS_PER_THREAD));
+    }
+
+    private static final class StripTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int stripRows;
+        private final transient StripBody body;
+
+        StripTask(int from, int to, int stripRows, StripBody body) {
+            this.from = from;
+            this.to = to;
+            this.stripRows = stripRows;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= stripRows) {
+                TaskLanes.checkpoint();
+                body.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new StripTask(from, middle, stripRows, body), new StripTask(middle, to, stripRows, body));
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 特征图金字塔与由粗到细的分层路径搜索。
+ * <p>第0层就是原始的梯度图与fg图，之后每一层长宽减半：2×2块内取梯度最大值（fg取最小值），
+ * 保证细小的强边缘在粗层中不会被平均掉。第0层fg是紧凑存储上的视图时，各粗层也量化为紧凑视图（每像素2字节）。</p>
+ * <p>分层搜索先在粗层上求完整路径，再把路径上采样到下一层并向外扩展 {@link #CORRIDOR_RADIUS} 个像素作为走廊，
+ * 细层只在走廊内搜索。每层的工作量取决于走廊大小而非图像大小，代价是结果不再保证全局最优。</p>
+ */
+public class FeaturePyramid {
+
+    // 最粗一层的短边不小于该值
+    private static final int MIN_LEVEL_SIZE = 64;
+    // 细化时走廊向粗层路径两侧扩展的像素数
+    static final int CORRIDOR_RADIUS = 4;
+    // 起点在粗层中与终点至少相距这么多像素才值得从该层开始
+    private static final int MIN_LEVEL_SPAN = 16;
+
+    // 最近一次构建的金字塔，按fgMatrix的引用复用
+    private static volatile FeaturePyramid latest = null;
+
+    private final List<FeatureMap> gLevels;   // 可能为空：只按fg构建时不保存梯度层
+    private final List<FeatureMap> fgLevels;
+
+    private FeaturePyramid(List<FeatureMap> gLevels, List<FeatureMap> fgLevels) {
+        this.gLevels = gLevels;
+        this.fgLevels = fgLevels;
+    }
+
+    /**
+     * 由梯度矩阵与fg矩阵构建金字塔，并作为该fg矩阵的缓存
+     * @param gMatrix 梯度矩阵，可为null
+     * @param fgMatrix fg特征图
+     * @return 金字塔
+     */
+    public static FeaturePyramid build(FeatureMap gMatrix, FeatureMap fgMatrix) {
+        List<FeatureMap> gLevels = new ArrayList<>();
+        List<FeatureMap> fgLevels = new ArrayList<>();
+        fgLevels.add(fgMatrix);
+        if (gMatrix != null) gLevels.add(gMatrix);
+
+        FeatureMap fg = fgMatrix;
+        FeatureMap g = gMatrix;
+        boolean compact = fgMatrix.getCompactStore() != null;
+        while (Math.min(fg.getRows(), fg.getCols()) / 2 >= MIN_LEVEL_SIZE) {
+            fg = downsample(fg, false);
+            if (compact) fg = FeatureMap.view(CompactFeatureStore.of(fg));
+            fgLevels.add(fg);
+            if (g != null) {
+                g = downsample(g, true);
+                gLevels.add(g);
+            }
+        }
+
+        FeaturePyramid pyramid = new FeaturePyramid(gLevels, fgLevels);
+        latest = pyramid;
+        return pyramid;
+    }
+
+    /**
+     * 取fgMatrix对应的金字塔，没有缓存时只按fg构建
+     */
+    public static FeaturePyramid of(FeatureMap fgMatrix) {
+        FeaturePyramid pyramid = latest;
+        if (pyramid != null && pyramid.getFgMatrix(0) == fgMatrix) {
+            return pyramid;
+        }
+        return build(null, fgMatrix);
+    }
+
+    // 2×2块降采样：梯度取最大值，fg取最小值，奇数边的最后一行/列并入前一块
+    private static FeatureMap downsample(FeatureMap matrix, boolean takeMax) {
+        int rows = matrix.getRows() / 2;
+        int cols = matrix.getCols() / 2;
+        FeatureMap result = new FeatureMap(rows, cols);
+        for (int r = 0; r < rows; r++) {
+            int r0 = r * 2;
+            int r1 = (r == rows - 1) ? matrix.getRows() - 1 : r0 + 1;
+            for (int c = 0; c < cols; c++) {
+                int c0 = c * 2;
+                int c1 = (c == cols - 1) ? matrix.getCols() - 1 : c0 + 1;
+                float value = matrix.get(r0, c0);
+                for (int y = r0; y <= r1; y++) {
+                    for (int x = c0; x <= c1; x++) {
+                        float v = matrix.get(y, x);
+                        if (takeMax ? v > value : v < value) value = v;
+                    }
+                }
+                result.set(r, c, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 由粗到细的分层路径搜索
+     * @param startRow 起点行（第0层坐标）
+     * @param startCol 起点列
+     * @param endRow 终点行
+     * @param endCol 终点列
+     * @return 第0层上的路径
+     */
+    public ComputeMinCostPath.PathResult findPath(int startRow, int startCol, int endRow, int endCol) {
+        // 选择起始层：两点在该层仍相距至少MIN_LEVEL_SPAN个像素
+        int span = Math.max(Math.abs(startRow - endRow), Math.abs(startCol - endCol));
+        int level = 0;
+        while (level + 1 < fgLevels.size() && (span >> (level + 1)) >= MIN_LEVEL_SPAN) {
+            level++;
+        }
+
+        // 最粗层：完整的A*
+        FeatureMap coarse = fgLevels.get(level);
+        PixelDijkstra search = new PixelDijkstra(coarse, false, SearchWorkspace.current());
+        int target = search.index(clamp(endRow >> level, coarse.getRows()), clamp(endCol >> level, coarse.getCols()));
+        search.reset(clamp(startRow >> level, coarse.getRows()), clamp(startCol >> level, coarse.getCols()), target);
+        if (!search.expandUntil(target)) {
+            return new ComputeMinCostPath.PathResult(-1, Collections.emptyList());
+        }
+        ComputeMinCostPath.PathResult result = search.pathTo(target);
+
+        // 逐层细化：只在上采样路径附近的走廊内搜索
+        while (level > 0) {
+            level--;
+            ComputeMinCostPath.PathResult refined = refine(fgLevels.get(level), result.getPath(),
+                    startRow >> level, startCol >> level, endRow >> level, endCol >> level);
+            if (refined.getPath().isEmpty()) {
+                // 走廊内不可达（理论上不会发生），退回到窗口搜索
+                FeatureMap fg = fgLevels.get(level);
+                refined = ComputeMinCostPath.findShortestPath(fg, startCol >> level, startRow >> level,
+                        endCol >> level, endRow >> level, SearchStrategy.WINDOWED);
+            }
+            result = refined;
+        }
+        return result;
+    }
+
+    // 在coarsePath（上一层坐标）上采样并膨胀得到的走廊内搜索
+    private static ComputeMinCostPath.PathResult refine(FeatureMap fg, List<int[]> coarsePath,
+                                                        int startRow, int startCol, int endRow, int endCol) {
+        int rows = fg.getRows();
+        int cols = fg.getCols();
+        startRow = clamp(startRow, rows);
+        startCol = clamp(startCol, cols);
+        endRow = clamp(endRow, rows);
+        endCol = clamp(endCol, cols);
+
+        // 走廊的包围盒
+        int top = Math.min(startRow, endRow);
+        int bottom = Math.max(startRow, endRow);
+        int left = Math.min(startCol, endCol);
+        int right = Math.max(startCol, endCol);
+        for (int[] p : coarsePath) {
+            top = Math.min(top, p[0] * 2);
+            bottom = Math.max(bottom, p[0] * 2 + 1);
+            left = Math.min(left, p[1] * 2);
+            right = Math.max(right, p[1] * 2 + 1);
+        }
+        top = Math.max(0, top - CORRIDOR_RADIUS);
+        left = Math.max(0, left - CORRIDOR_RADIUS);
+        bottom = Math.min(rows - 1, bottom + CORRIDOR_RADIUS);
+        right = Math.min(cols - 1, right + CORRIDOR_RADIUS);
+        int windowRows = bottom - top + 1;
+        int windowCols = right - left + 1;
+
+        // 每个粗层像素对应细层的2×2块，再向外膨胀CORRIDOR_RADIUS
+        boolean[] mask = new boolean[windowRows * windowCols];
+        for (int[] p : coarsePath) {
+            int r0 = Math.max(top, p[0] * 2 - CORRIDOR_RADIUS);
+            int r1 = Math.min(bottom, p[0] * 2 + 1 + CORRIDOR_RADIUS);
+            int c0 = Math.max(left, p[1] * 2 - CORRIDOR_RADIUS);
+            int c1 = Math.min(right, p[1] * 2 + 1 + CORRIDOR_RADIUS);
+            for (int r = r0; r <= r1; r++) {
+                int rowBase = (r - top) * windowCols;
+                for (int c = c0; c <= c1; c++) {
+                    mask[rowBase + c - left] = true;
+                }
+            }
+        }
+        // 起点终点一定在走廊内
+        mask[(startRow - top) * windowCols + startCol - left] = true;
+        mask[(endRow - top) * windowCols + endCol - left] = true;
+
+        PixelDijkstra search = new PixelDijkstra(fg, top, left, windowRows, windowCols, false,
+                SearchWorkspace.current());
+        search.setMask(mask);
+        int target = search.index(endRow, endCol);
+        search.reset(startRow, startCol, target);
+        if (!search.expandUntil(target)) {
+            return new ComputeMinCostPath.PathResult(-1, Collections.emptyList());
+        }
+        return search.pathTo(target);
+    }
+
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+
+    public int levels() {
+        return fgLevels.size();
+    }
+
+    public FeatureMap getFgMatrix(int level) {
+        return fgLevels.get(level);
+    }
+
+    /**
+     * @return 第level层的梯度矩阵；只按fg构建时返回null
+     */
+    public FeatureMap getGMatrix(int level) {
+        return gLevels.isEmpty() ? null : gLevels.get(level);
+    }
+}
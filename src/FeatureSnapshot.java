@@ -0,0 +1,129 @@
+package src;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 一幅图像全部特征矩阵的不可变快照。
+ * <p>打开新图像时先在本地算好所有矩阵，再整体构造一个新快照，通过一个volatile引用一次性发布。
+ * 后台搜索在开始时取一份快照并一直使用它，不会读到一半是旧图像、一半是新图像的状态，也不需要加锁。</p>
+ * <p>每个快照有一个全局递增的版本号，缓存按版本号区分条目，旧版本的条目不会被新图像的查询命中。
+ * 快照中的数组发布后不能再修改。</p>
+ * <p>梯度与fg都存为按行连续的float特征图（{@link FeatureMap}），每像素各占4字节。
+ * 超大图像只保留一份 {@link CompactFeatureStore}（梯度值、方向与过零点，每像素约3.1字节），
+ * fg图是存储上的只读视图（搜索以它为键查找边权表与金字塔），没有RGB矩阵、梯度图与float的fg数组：
+ * 搜索经由紧凑边权表读取存储，逐像素的梯度值用 {@link #gradient} 解码。</p>
+ */
+public final class FeatureSnapshot {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final long version;
+    private final int[][] matrix;       // RGB矩阵，可为null
+    private final FeatureMap gMatrix;   // 梯度图，使用紧凑存储时为null
+    private final FeatureMap fgMatrix;  // fg图，使用紧凑存储时是存储上的视图
+    private final double maxGradient;
+    private final CompactFeatureStore compactStore; // 可为null
+
+    /**
+     * 用已经算好的矩阵构造快照，分配新的版本号
+     * @param matrix RGB矩阵，可为null
+     * @param gMatrix 梯度图
+     * @param fgMatrix fg图
+     */
+    public FeatureSnapshot(int[][] matrix, FeatureMap gMatrix, FeatureMap fgMatrix) {
+        this(matrix, gMatrix, fgMatrix, gMatrix == null ? 0 : FeaturePipeline.findMaxGradient(gMatrix));
+    }
+
+    /**
+     * 梯度最大值已经算好（例如并行归约得到）时使用
+     * @param maxGradient 与 {@link FeaturePipeline#findMaxGradient} 的结果相同
+     */
+    FeatureSnapshot(int[][] matrix, FeatureMap gMatrix, FeatureMap fgMatrix, double maxGradient) {
+        this(matrix, gMatrix, fgMatrix, maxGradient, null);
+    }
+
+    /**
+     * 超大图像的快照：不保留RGB矩阵与梯度图，梯度值从紧凑存储解码
+     * @param fgMatrix fg图，通常是compactStore上的视图（{@link FeatureMap#view}）
+     * @param maxGradient 梯度最大值，用于把存储中的 g / maxG 还原为梯度值
+     */
+    FeatureSnapshot(FeatureMap fgMatrix, double maxGradient, CompactFeatureStore compactStore) {
+        this(null, null, fgMatrix, maxGradient, compactStore);
+    }
+
+    private FeatureSnapshot(int[][] matrix, FeatureMap gMatrix, FeatureMap fgMatrix, double maxGradient,
+                            CompactFeatureStore compactStore) {
+        if ((gMatrix == null) == (compactStore == null) || fgMatrix == null
+                || fgMatrix.getRows() == 0 || fgMatrix.getCols() == 0) {
+            throw new IllegalArgumentException("Invalid gradient matrix");
+        }
+        this.version = VERSIONS.incrementAndGet();
+        this.matrix = matrix;
+        this.gMatrix = gMatrix;
+        this.fgMatrix = fgMatrix;
+        this.maxGradient = maxGradient;
+        this.compactStore = compactStore;
+    }
+
+    /**
+     * 从RGB矩阵计算全部特征，并预先构建搜索用的金字塔与边权表；各阶段按行条带并行，见 {@link FeaturePipeline}
+     * @param matrix RGB矩阵
+     * @return 新快照
+     */
+    public static FeatureSnapshot compute(int[][] matrix) {
+        return FeaturePipeline.compute(matrix);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int[][] getMatrix() {
+        return matrix;
+    }
+
+    /**
+     * @return 梯度图；使用紧凑存储的快照为null，逐像素读取请用 {@link #gradient}
+     */
+    public FeatureMap getGMatrix() {
+        return gMatrix;
+    }
+
+    /**
+     * @return (row, col) 的梯度值；使用紧凑存储时由16位定点数还原，误差不超过 maxGradient / (2 × {@link CompactFeatureStore#MAGNITUDE_ONE})
+     */
+    public float gradient(int row, int col) {
+        if (gMatrix != null) return gMatrix.get(row, col);
+        return (float) (compactStore.magnitude(compactStore.index(row, col)) * maxGradient);
+    }
+
+    public FeatureMap getFgMatrix() {
+        return fgMatrix;
+    }
+
+    public double getMaxGradient() {
+        return maxGradient;
+    }
+
+    public int getRows() {
+        return fgMatrix.getRows();
+    }
+
+    public int getCols() {
+        return fgMatrix.getCols();
+    }
+
+    /**
+     * @return 图像像素数
+     */
+    public long pixelCount() {
+        return (long) fgMatrix.getRows() * fgMatrix.getCols();
+    }
+
+    @Override
+    public String toString() {
+        return "FeatureSnapshot[v" + version + ", " + fgMatrix.getRows() + "x" + fgMatrix.getCols() + "]";
+    }
+}
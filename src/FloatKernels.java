@@ -0,0 +1,43 @@
+package src;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 在行优先的一维float缓冲区上计算特征的内核。
+ * <p>缓冲区大小为 rows * cols，下标为 row * cols + col。卷积按零填充处理边界：
+ * Sobel在边框一圈把图像外的像素当作0，拉普拉斯值在边框一圈为0，与 {@link ProcessMatrix} 的约定一致。</p>
+ * <p>实现有标量版 {@link ScalarFloatKernels} 与向量版（jdk.incubator.vector），
+ * 两者对每个元素执行相同顺序的浮点运算，结果逐位相同；由 {@link SimdFeatures} 在运行时选择。</p>
+ */
+interface FloatKernels {
+
+    /**
+     * Sobel算子：ix为列方向（Sx）、iy为行方向（Sy）的梯度
+     */
+    void sobel(float[] src, int rows, int cols, float[] ix, float[] iy);
+
+    /**
+     * 四邻域拉普拉斯算子
+     */
+    void laplacian(float[] src, int rows, int cols, float[] out);
+
+    /**
+     * 梯度值 sqrt(ix * ix + iy * iy)
+     */
+    void magnitude(float[] ix, float[] iy, float[] out);
+
+    /**
+     * @return values[from, to) 的最大值，与依次调用 {@link Math#max(float, float)} 相同；区间为空时为负无穷
+     */
+    float max(float[] values, int from, int to);
+
+    /**
+     * 对 [from, to) 做fg归一化 1 - g / maxG；out可以就是g
+     */
+    void normalize(float[] g, float maxG, float[] out, int from, int to);
+
+    /**
+     * @return 实现的名称，例如向量宽度
+     */
+    String name();
+}
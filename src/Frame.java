@@ -27,7 +27,6 @@ import javafx.scene.shape.StrokeLineCap;
 import javafx.scene.shape.StrokeLineJoin;
 import javafx.stage.*;
 import javafx.util.Duration;
-import javafx.util.Pair;
 
 import java.awt.Image;
 import javax.imageio.ImageIO;
@@ -39,8 +38,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 // =============================import===========================
@@ -66,6 +64,7 @@ public class Frame extends Application {
     private List<Point2D> optimizedPathScreen = new ArrayList<>();
     private ImageType imageType = ImageType.PNG;
     private SeedPoint currentSeed = null;
+    private LiveWireTree liveWireTree = null; // 当前种子点的最短路径树
     private List<SeedPoint> seedPoints = new ArrayList<>();
     private Scene scene;
     private double imageWidth; // 图像的宽度
@@ -74,20 +73,16 @@ public class Frame extends Application {
     private double viewHeight; // 操作界面的高度
     private double scaleX;
     private double scaleY;
-    private double[][] gMatrix;
-    private int[][] matrix;
-    private double[][] fgMatrix;
-    //    private Map<Pair<Node, Node>, List<int[]>> pathCache = new HashMap<>(); // 路径缓存
+    private volatile FeatureSnapshot features = null; // 当前图像的特征快照，换图时整体替换，后台任务各自固定一份
+    private static final long HIERARCHICAL_PIXELS = 16_000_000L; // 超过该像素数的图像交互时从分层搜索一档开始
+    private static final long LATENCY_BUDGET_MS = 30; // 鼠标移动时一次性搜索耗时p95的目标
+    // 按实测的搜索延迟在全分辨率、窗口、降采样三档回退搜索策略之间切换
+    private final LatencyGovernor latencyGovernor = new LatencyGovernor(LATENCY_BUDGET_MS, SearchStrategy.WINDOWED);
+    // 鼠标移动时一次性搜索的每帧预算，超出时先显示到离光标最近的已结算像素的部分路径
+    private static final SearchBudget FRAME_BUDGET = SearchBudget.ofMillis(8);
     private final CursorSnap cursorSnap = new CursorSnap(); // 实例化吸附工具
     private List<List<int[]>> pathSegments = new ArrayList<>(); // 分段存储路径
-    private static final int MAX_CACHE_SIZE = 100;
-    private final LinkedHashMap<Pair<Node, Node>, List<int[]>> pathCache =
-            new LinkedHashMap<>(MAX_CACHE_SIZE, 0.75f, true) { // LRU顺序
-                @Override
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    return size() > MAX_CACHE_SIZE;
-                }
-            };
+    private final TreeCache treeCache = new TreeCache(TreeCache.DEFAULT_BUDGET_BYTES); // 按种子点缓存最短路径树
     private CheckBox snapToggle = new CheckBox("启用吸附");
     private TextField radiusInput = new TextField("8");
     private Button applyRadiusBtn = new Button("<--应用吸附半径");
@@ -96,7 +91,6 @@ public class Frame extends Application {
     private BooleanProperty snapEnabled = new SimpleBooleanProperty(true);
     private double autoAnchorThreshold = 100;
     private boolean enableAutoAnchor = true;
-    private double maxGradient;
     private ObservableList<Point2D> autoAnchors = FXCollections.observableArrayList();
     private double imageComplexity;
     private List<int[]> currentPath;
@@ -110,16 +104,21 @@ public class Frame extends Application {
     private long lastMoveTime = System.currentTimeMillis();
     private Point2D lastMovePosition = null;
     private double currentSpeed = 0;
+    private Point2D velocity = Point2D.ZERO;           // 光标速度（像素/秒）
+    private static final double PREDICTION_SECONDS = 0.15; // 轨迹预测向前看的时间
+    private final SpeculativeExpander speculativeExpander = new SpeculativeExpander(); // 空闲时预扩展
     private WritableImage exportImage; // 导出的最终图像
     private WritableImage selectionMask; // 选区蒙版
     private boolean isSelectionCompleted;
-    private volatile boolean isCalculating = false; // 计算状态锁
     private Point2D lastMousePosition = null;      // 记录最新鼠标位置
-    private long lastCalculateTime = 0;            // 最后计算时间戳
-    private static final long CALCULATE_INTERVAL = 50; // 计算间隔50ms
-    private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // 实时路径在后台计算，只把最新的结果交回界面线程
+    private final LiveWireScheduler<MouseMove> liveWireScheduler =
+            new LiveWireScheduler<>(Platform::runLater, this::applyLiveWirePath);
     private double currentAreaGradient = 0.0;
     private Timeline borderAnimation; // 为了让虚线更好看
+    private final Label statusLabel = new Label(); // 底部状态栏：搜索策略与延迟、后台车道的负载
+    private final Tooltip statusTooltip = new Tooltip(); // 状态栏的详细统计
+    private Timeline statusRefresh;
 //    private boolean isSelectionCompleted = false;
     private List<Point2D> selectionPolygon = new ArrayList<>();
 
@@ -166,11 +165,41 @@ public class Frame extends Application {
         // 添加场景
         scene.getStylesheets().add(getClass().getResource("/style.css").toExternalForm());
         initCanvas();
+        initStatusBar();
         primaryStage.setScene(scene);
 
         primaryStage.show();
     }
 
+    // 状态栏每秒刷新一次，显示当前搜索策略、搜索延迟p95与预算、策略切换次数，以及各执行车道的排队数与运行数
+    private void initStatusBar() {
+        statusLabel.setPadding(new Insets(2, 10, 2, 10));
+        statusLabel.setTooltip(statusTooltip);
+        root.setBottom(statusLabel);
+        statusRefresh = new Timeline(new KeyFrame(Duration.seconds(1), e -> updateStatus()));
+        statusRefresh.setCycleCount(Timeline.INDEFINITE);
+        statusRefresh.play();
+    }
+
+    private void updateStatus() {
+        if (bufferedImage != null && features == null) return; // 保留“正在计算图像特征”的提示
+        TaskLanes lanes = TaskLanes.shared();
+        StringBuilder text = new StringBuilder(String.format("搜索 %s  p95 %.1f/%.0f ms  降档%d 升档%d   |   ",
+                latencyGovernor.getStrategy(), latencyGovernor.getP95Millis(), latencyGovernor.getBudgetMillis(),
+                latencyGovernor.getStepsDown(), latencyGovernor.getStepsUp()));
+        for (TaskLanes.Lane lane : TaskLanes.Lane.values()) {
+            TaskLanes.LaneStats stats = lanes.stats(lane);
+            text.append(String.format("%s 排队%d 运行%d   ", lane, stats.getQueued(), stats.getActive()));
+        }
+        text.append("抢占").append(lanes.getPreemptions()).append("次");
+        statusLabel.setText(text.toString());
+        StringBuilder details = new StringBuilder(lanes.toString());
+        for (LatencyGovernor.Decision decision : latencyGovernor.getDecisions()) {
+            details.append('\n').append(decision);
+        }
+        statusTooltip.setText(details.toString());
+    }
+
     private void initCanvas() {
         // 抗锯齿优化
         System.setProperty("prism.msaa", "8");
@@ -182,7 +211,7 @@ public class Frame extends Application {
     private void initPathState() {
         currentPath = new ArrayList<>();
         seedPoints = new ArrayList<>();
-        currentSeed = null;
+        setCurrentSeed(null);
         lastInsertDistance = 0;
         currentPathDistance = 0;
     }
@@ -295,6 +324,7 @@ public class Frame extends Application {
                 e.getX(), e.getY(),
                 overlayCanvas.getWidth(),
                 overlayCanvas.getHeight());
+        if (features == null) return; // 图像特征尚未算好
         if (isMagneticLassoActive && e.getButton() == MouseButton.PRIMARY && !isSelectionCompleted) {
             if (seedPoints.isEmpty()) {
                 initPathState();
@@ -317,7 +347,7 @@ public class Frame extends Application {
 //            int[] snappedPoint = CursorSnap.realtimeSnap(rawScreenPoint, gMatrix, scaleX, scaleY);
 
             // 将吸附后的图像坐标转换为屏幕坐标
-            Point2D snappedScreenPoint = CursorSnap.realtimeSnap(rawScreenPoint, gMatrix, scaleX, scaleY, snapRadius.intValue());
+            Point2D snappedScreenPoint = CursorSnap.realtimeSnap(rawScreenPoint, features, scaleX, scaleY, snapRadius.intValue());
 
             // 检测是否闭合路径
             if (!seedPoints.isEmpty() && isNearFirstSeed(snappedScreenPoint)) {
@@ -331,7 +361,7 @@ public class Frame extends Application {
             // 添加新种子点
             SeedPoint newSeed = convertToSeedPoint(snappedScreenPoint);
             seedPoints.add(newSeed);
-            currentSeed = newSeed;
+            setCurrentSeed(newSeed);
 
             // 添加新种子点后
             if (seedPoints.size() >= 2) {
@@ -339,7 +369,7 @@ public class Frame extends Application {
                 SeedPoint current = seedPoints.getLast();
 
                 // 替换为异步计算
-                computeAndCachePathAsync(prev, current);
+                computeAndCachePathAsync(features, prev, current);
             }
             drawOverlay(optimizedPathScreen);
             System.out.println("种子点已添加: " + newSeed.getX() + ", " + newSeed.getY());
@@ -355,26 +385,9 @@ public class Frame extends Application {
         drawOverlay(); // 此时会调用其中的 drawSelectionBorder 而非 drawPathMarkers
     }
 
-    private List<int[]> computeAndCachePath(SeedPoint start, SeedPoint end) {
-        // 检查缓存
-        Pair<Node, Node> key = new Pair<>(start.getNode(), end.getNode());
-        synchronized (pathCache) {
-            if (pathCache.containsKey(key)) {
-                return pathCache.get(key);
-            }
-        }
-
-        // 计算新路径
-        List<int[]> path = ComputeMinCostPath.findShortestPath(
-                fgMatrix,
-                start.getY(),
-                start.getX(),
-                end.getY(),
-                end.getX()
-        ).getPath();
-
-        // 更新缓存
-        addToCache(key, path);
+    private List<int[]> computeAndCachePath(FeatureSnapshot features, SeedPoint start, SeedPoint end) {
+        // 先查起点的最短路径树缓存，未命中时做窗口搜索，并把搜索得到的树放入缓存
+        List<int[]> path = SegmentBatch.computeSegment(features, start, end, treeCache);
 
         if (path == null || path.isEmpty()) {
             throw new IllegalStateException("无法计算 " + start + " 到 " + end + " 的路径");
@@ -425,7 +438,8 @@ public class Frame extends Application {
         if (enableAutoAnchor) { // 新增配置开关
             path = computePathWithAutoSeedPoint(NodesToSeed(startPoint), NodesToSeed(endPoint));
         } else {
-            path = ComputeMinCostPath.findShortestPath(fgMatrix,startPoint.y,startPoint.x,endPoint.y,endPoint.x).getPath();
+            path = ComputeMinCostPath.findShortestPath(features.getFgMatrix(),startPoint.y,startPoint.x,endPoint.y,endPoint.x,
+                    SearchStrategy.BIDIRECTIONAL).getPath();
         }
         pathSegments.add(path);
         List<int[]> totalPath = new ArrayList<>();
@@ -759,6 +773,9 @@ public class Frame extends Application {
     private void handleMouseMove(MouseEvent e) {
         if (!isMagneticLassoActive || seedPoints.isEmpty() || isSelectionCompleted) return;
 
+        // 本次移动的吸附与搜索都固定使用同一份特征快照
+        FeatureSnapshot snapshot = features;
+        if (snapshot == null) return; // 图像特征尚未算好
         Point2D rawPoint = new Point2D(e.getX(), e.getY());
         Point2D finalPoint;
 
@@ -766,7 +783,7 @@ public class Frame extends Application {
         if (snapEnabled.get()) {
             finalPoint = cursorSnap.realtimeSnap(
                     rawPoint,
-                    gMatrix,
+                    snapshot,
                     scaleX,
                     scaleY,
                     snapRadius.intValue()
@@ -776,60 +793,125 @@ public class Frame extends Application {
         }
 
         SeedPoint pos = convertToSeedPoint(finalPoint, true);
+        updateMovementState(finalPoint);
+
+        // 提交给后台调度器：旧的搜索会被取消，结果由applyLiveWirePath在界面线程上处理
+        updateCurrentAreaGradient();
+        SeedPoint seed = currentSeed;
+        FeatureMap fg = snapshot.getFgMatrix();
+        LiveWireTree tree = liveWireTree;
+        SearchStrategy strategy = latencyGovernor.getStrategy();
+        liveWireScheduler.submitAnytime(new MouseMove(finalPoint, e), partialConsumer -> {
+            // 优先沿最短路径树回溯，其次查缓存的树与推测性预扩展的结果，都未命中时才回退到一次性搜索
+            ComputeMinCostPath.PathResult path = tree != null ? tree.getPath(pos) : null;
+            if (path == null) path = treeCache.lookup(snapshot, seed, pos);
+            if (path == null) path = speculativeExpander.lookup(snapshot, seed, pos);
+            if (path != null) return path;
+            // 窗口一档用随时可交出结果的窗口A*（路径与窗口搜索相同，缓冲区随窗口大小），在帧预算内先交出部分路径，完整路径算好后替换它；
+            // 全分辨率与降采样两档直接搜索。耗时交给调节器决定下一次用哪一档；
+            // 被新的鼠标移动中断或没有找到路径的搜索耗时不完整，不计入
+            long searchStart = System.nanoTime();
+            path = strategy == SearchStrategy.WINDOWED
+                    ? ComputeMinCostPath.findShortestPathAnytime(fg, seed, pos, FRAME_BUDGET, partialConsumer)
+                    : ComputeMinCostPath.findShortestPath(fg, seed, pos, strategy);
+            if (!Thread.currentThread().isInterrupted() && !path.getPath().isEmpty()) {
+                latencyGovernor.record(strategy, System.nanoTime() - searchStart);
+            }
+            return path;
+        });
+        speculate(snapshot, finalPoint, pos);
 
-        // 节流控制
-        if (!isCalculating &&
-                System.currentTimeMillis() - lastCalculateTime > CALCULATE_INTERVAL) {
+        // 更新光标位置
+        int[] currentPos = {(int)finalPoint.getX(), (int)finalPoint.getY()};
+        if (!currentPath.contains(currentPos)) {
+            currentPath.add(currentPos);
+        }
 
-            isCalculating = true;
-            lastCalculateTime = System.currentTimeMillis();
-            updateCurrentAreaGradient();
+        drawSnapFeedback(finalPoint, e);
+    }
 
-            try {
-                ComputeMinCostPath.PathResult path =
-                        ComputeMinCostPath.findShortestPath(fgMatrix, currentSeed, pos);
+    // 在界面线程上应用后台算好的实时路径
+    private void applyLiveWirePath(LiveWireScheduler.Result<MouseMove> result) {
+        if (!isMagneticLassoActive || seedPoints.isEmpty() || isSelectionCompleted) return;
+        ComputeMinCostPath.PathResult path = result.getPath();
+        MouseMove move = result.getContext();
 
-                // 有效性检查
-                if (path.getPath().isEmpty()) {
-                    System.err.println("路径计算失败");
-                    return;
-                }
-                long costTime = System.currentTimeMillis() - lastCalculateTime;
-                if (costTime > 100) {
-                    Point2D screenPos = new Point2D(e.getScreenX(), e.getScreenY());
-                    TooltipManager.showTooltip(this.primaryStage, "复杂区域建议手动添加种子点",
-                            screenPos.getX(),
-                            screenPos.getY()
-                    );
-                }
+        // 有效性检查
+        if (path.getPath().isEmpty()) {
+            System.err.println("路径计算失败");
+            return;
+        }
+        if (!result.isPartial() && result.getSearchMillis() > 100) {
+            TooltipManager.showTooltip(this.primaryStage, "复杂区域建议手动添加种子点",
+                    move.event.getScreenX(),
+                    move.event.getScreenY()
+            );
+        }
 
-                this.currentPath = path.getPath();
-                this.currentPathDistance = calculateTotalPathDistance();
+        this.currentPath = new ArrayList<>(path.getPath());
+        this.currentPathDistance = calculateTotalPathDistance();
 
-                // 触发自动插入
-                if (shouldAutoInsert(finalPoint)) {
-                    autoAddSeedAlongPath(finalPoint);
-                    lastInsertDistance = currentPathDistance;
-                }
+        // 触发自动插入；部分路径没有到达光标，不据此插入种子点
+        if (!result.isPartial() && shouldAutoInsert(move.point)) {
+            autoAddSeedAlongPath(move.point);
+            lastInsertDistance = currentPathDistance;
+        }
+        drawSnapFeedback(move.point, move.event);
+    }
 
-            } finally {
-                isCalculating = false;
-            }
+    // 一次鼠标移动：吸附后的位置与原始事件
+    private static final class MouseMove {
+        final Point2D point;
+        final MouseEvent event;
+
+        MouseMove(Point2D point, MouseEvent event) {
+            this.point = point;
+            this.event = event;
         }
+    }
 
-        // 更新光标位置
-        int[] currentPos = {(int)finalPoint.getX(), (int)finalPoint.getY()};
-        if (!currentPath.contains(currentPos)) {
-            currentPath.add(currentPos);
+    // 按最新的光标位置安排推测性预扩展：高速移动时朝预测位置预扩展，同时为附近的强边缘预建树
+    private void speculate(FeatureSnapshot snapshot, Point2D screenPoint, SeedPoint pos) {
+        if (currentSeed == null || snapshot == null
+                || snapshot.pixelCount() > HIERARCHICAL_PIXELS) { // 超大图像不做推测，避免额外内存
+            return;
         }
+        SeedPoint predicted = null;
+        if (currentSpeed > 100) {
+            predicted = convertToSeedPoint(screenPoint.add(velocity.multiply(PREDICTION_SECONDS)), true);
+        }
+        speculativeExpander.speculate(snapshot, currentSeed, predicted, pos, snapRadius.intValue());
+    }
 
-        drawSnapFeedback(finalPoint, e);
+    // 切换当前种子点，并为新种子点在后台重建最短路径树（已为它预建过树时直接接管）
+    private void setCurrentSeed(SeedPoint seed) {
+        FeatureSnapshot snapshot = features;
+        currentSeed = seed;
+        liveWireScheduler.cancel();
+        if (liveWireTree != null) {
+            if (liveWireTree.getFeatures() == snapshot) {
+                liveWireTree.retireTo(treeCache); // 已扩展的部分留给以后回到该种子点时使用
+            } else {
+                liveWireTree.cancel(); // 图像已更换，旧树不再有用
+            }
+            liveWireTree = null;
+        }
+        if (seed != null && snapshot != null) {
+            LiveWireTree adopted = speculativeExpander.adoptTree(snapshot, seed);
+            if (adopted != null) {
+                liveWireTree = adopted;
+            } else if (snapshot.pixelCount() <= HIERARCHICAL_PIXELS) { // 超大图像不建整图的树，与推测一样避免额外内存
+                liveWireTree = LiveWireTree.start(snapshot, seed);
+            }
+        } else {
+            speculativeExpander.clear();
+        }
     }
 
     private List<int[]> calculatePath(Point2D mousePos) {
         SeedPoint start = currentSeed;
         SeedPoint end = convertToSeedPoint(mousePos);
-        return ComputeMinCostPath.findShortestPath(fgMatrix, start, end).getPath();
+        return ComputeMinCostPath.findShortestPath(features.getFgMatrix(), start, end).getPath();
     }
 
 
@@ -1072,26 +1154,35 @@ public class Frame extends Application {
                     default      -> throw new IllegalArgumentException("不支持的图像类型: " + typeStr);
                 };
 
-                // 异步构建图结构
-                new Thread(() -> {
-                    Map<Node, List<Edge>> newGraph = ProcessImage.toGraph(bufferedImage);
+                // 异步构建图结构（固定使用本次打开的图像，完成时若已换图则丢弃）
+                BufferedImage image = this.bufferedImage;
+                TaskLanes.shared().execute(TaskLanes.Lane.BACKGROUND, () -> {
+                    Map<Node, List<Edge>> newGraph = ProcessImage.toGraph(image);
                     Platform.runLater(() -> {
-                        this.graph = newGraph; // 直接存储到成员变量
+                        if (this.bufferedImage == image) {
+                            this.graph = newGraph; // 直接存储到成员变量
+                        }
                     });
-                }).start();
+                });
 
-                matrix = ProcessImage.toRGBMatrix(bufferedImage);
-                gMatrix = ProcessMatrix.findGMatrix(matrix);
-                fgMatrix = ProcessMatrix.findFgMatrix(gMatrix);
+                // 旧图像的特征立即作废，特征算好之前套索操作被忽略
+                features = null;
+                speculativeExpander.clear();
+                treeCache.clear(); // 旧图像的树不会再被查到，释放内存
+                setCurrentSeed(currentSeed); // 取消旧图像的最短路径树
+                statusLabel.setText("正在计算图像特征…");
+                // 特征在后台车道上计算（各阶段再按行条带分到并行车道），算好后整体发布，后台任务不会读到新旧混杂的矩阵
+                TaskLanes.shared().execute(TaskLanes.Lane.BACKGROUND, () -> {
+                    SearchWorkspace.releaseAll(); // 旧图像关闭，各线程按旧图像分配的搜索缓冲区先缩回，之后按新图像重新分配
+                    FeatureSnapshot snapshot = FeaturePipeline.compute(image);
+                    Platform.runLater(() -> publishFeatures(image, snapshot));
+                });
                 // 刷新布局
                 Platform.runLater(() -> {
                     overlayCanvas.setWidth(imageView.getLayoutBounds().getWidth());
                     overlayCanvas.setHeight(imageView.getLayoutBounds().getHeight());
                     drawOverlay(optimizedPathScreen);
                 });
-                this.maxGradient = ProcessMatrix.findMaxGradient(this.gMatrix);
-                this.imageComplexity = calculateImageComplexity();
-                this.autoAnchorThreshold = 100 * (1 + imageComplexity / 255.0);
 
                 isSelectionCompleted = false;
                 exportImage = (WritableImage) imageView.getImage();
@@ -1112,6 +1203,18 @@ public class Frame extends Application {
         }
     }
 
+    // 在界面线程上发布后台算好的特征；期间又换了图像时丢弃
+    private void publishFeatures(BufferedImage image, FeatureSnapshot snapshot) {
+        if (this.bufferedImage != image) return;
+        features = snapshot;
+        latencyGovernor.reset(snapshot.pixelCount() > HIERARCHICAL_PIXELS
+                ? SearchStrategy.HIERARCHICAL : SearchStrategy.WINDOWED);
+        setCurrentSeed(currentSeed); // 新图像需要重建最短路径树
+        this.imageComplexity = calculateImageComplexity();
+        this.autoAnchorThreshold = 100 * (1 + imageComplexity / 255.0);
+        updateStatus();
+    }
+
     private BufferedImage readImageWithDecoder(File file) throws IOException {
         try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
             Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
@@ -1158,24 +1261,26 @@ public class Frame extends Application {
         File file = fileChooser.showSaveDialog(primaryStage);
 
         if (file != null) {
-            try {
-                BufferedImage bImage = SwingFXUtils.fromFXImage(exportImage, null);
-
-                // 获取用户选择的格式
-                FileChooser.ExtensionFilter selectedFilter = fileChooser.getSelectedExtensionFilter();
-                String formatName = formatMap.get(selectedFilter);
-
-                // 自动补全文件扩展名
-                String ext = selectedFilter.getExtensions().getFirst().replace("*.", "");
-                if (!file.getName().toLowerCase().endsWith("." + ext)) {
-                    file = new File(file.getAbsolutePath() + "." + ext);
+            BufferedImage bImage = SwingFXUtils.fromFXImage(exportImage, null);
+
+            // 获取用户选择的格式
+            FileChooser.ExtensionFilter selectedFilter = fileChooser.getSelectedExtensionFilter();
+            String formatName = formatMap.get(selectedFilter);
+
+            // 自动补全文件扩展名
+            String ext = selectedFilter.getExtensions().getFirst().replace("*.", "");
+            File target = file.getName().toLowerCase().endsWith("." + ext)
+                    ? file : new File(file.getAbsolutePath() + "." + ext);
+
+            // 编码与写盘在IO车道进行，不阻塞界面线程
+            TaskLanes.shared().execute(TaskLanes.Lane.IO, () -> {
+                try {
+                    ImageIO.write(bImage, formatName, target);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    Platform.runLater(() -> new Alert(Alert.AlertType.ERROR, "保存失败: " + e.getMessage()).show());
                 }
-
-                ImageIO.write(bImage, formatName, file);
-            } catch (IOException e) {
-                e.printStackTrace();
-                new Alert(Alert.AlertType.ERROR, "保存失败: " + e.getMessage()).show();
-            }
+            });
         }
     }
 
@@ -1255,11 +1360,11 @@ public class Frame extends Application {
         isSelectionCompleted = false;
         exportImage = (WritableImage) imageView.getImage();
         seedPoints.clear();
-        currentSeed = null;
+        setCurrentSeed(null);
         optimizedPathScreen.clear();
         isMagneticLassoActive = false; // 显式退出模式
         scene.setCursor(Cursor.DEFAULT);
-        pathCache.clear();
+        treeCache.clear();
         pathSegments.clear();
         drawOverlay(optimizedPathScreen);
     }
@@ -1270,7 +1375,7 @@ public class Frame extends Application {
             isSelectionCompleted = false;
             exportImage = (WritableImage) imageView.getImage();
             seedPoints.removeLast();
-            currentSeed = seedPoints.isEmpty() ? null : seedPoints.getLast();
+            setCurrentSeed(seedPoints.isEmpty() ? null : seedPoints.getLast());
             deleteCurrentPath();
             drawOverlay(optimizedPathScreen);
         }
@@ -1302,13 +1407,16 @@ public class Frame extends Application {
 
     private void recalculateAllPaths() {
         pathSegments.clear();
-        pathCache.clear(); // 清空缓存
 
-        // 重新计算所有段
+        // 重新计算所有段：各段并行计算，按顺序拼回；起点的树已在缓存中的段直接回溯
+        List<List<int[]>> segments = SegmentBatch.computeAll(features, seedPoints, treeCache);
         for (int i=1; i<seedPoints.size(); i++) {
             SeedPoint start = seedPoints.get(i-1);
             SeedPoint end = seedPoints.get(i);
-            List<int[]> segment = computeAndCachePath(start, end);
+            List<int[]> segment = segments.get(i-1);
+            if (segment.isEmpty()) {
+                throw new IllegalStateException("无法计算 " + start + " 到 " + end + " 的路径");
+            }
             pathSegments.add(segment);
         }
 
@@ -1506,30 +1614,23 @@ public class Frame extends Application {
 
 
     //===================================handle huge image=======================================
-    private void addToCache(Pair<Node, Node> key, List<int[]> path) {
-        if (pathCache.size() >= MAX_CACHE_SIZE) {
-            // LRU淘汰策略
-            pathCache.remove(pathCache.keySet().iterator().next());
-        }
-        pathCache.put(key, path);
-    }
-
     public void onImageModified() {
-        pathCache.clear(); // 使缓存失效
+        treeCache.clear(); // 使缓存失效
         optimizedPathScreen = mergeAllSegments(); // 重新生成路径
     }
 
 
-    private void computeAndCachePathAsync(SeedPoint start, SeedPoint end) {
+    private void computeAndCachePathAsync(FeatureSnapshot features, SeedPoint start, SeedPoint end) {
         // 显示加载状态
         ProgressIndicator progress = new ProgressIndicator(-1);
         StackPane overlay = new StackPane(progress);
         overlay.setStyle("-fx-background-color: rgba(0,0,0,0.5)");
         root.getChildren().add(overlay);
 
+        Executor interactive = TaskLanes.shared().executor(TaskLanes.Lane.INTERACTIVE);
         CompletableFuture.supplyAsync(() -> {
-            return computeAndCachePath(start, end);
-        }).thenAcceptBoth(CompletableFuture.runAsync(this::mergeAllSegments), (segment, _) -> {
+            return computeAndCachePath(features, start, end);
+        }, interactive).thenAcceptBoth(CompletableFuture.runAsync(this::mergeAllSegments, interactive), (segment, _) -> {
             Platform.runLater(() -> {
                 pathSegments.add(segment);
                 optimizedPathScreen = mergeAllSegments();
@@ -1594,8 +1695,9 @@ public class Frame extends Application {
     }
 
     private List<SeedPoint> findMidCandidates(SeedPoint start, SeedPoint end) {
+        FeatureSnapshot snapshot = features;
         List<SeedPoint> candidates = new ArrayList<>();
-        double minGrad = 0.2 * maxGradient;
+        double minGrad = 0.2 * snapshot.getMaxGradient();
 
         // 计算路径方向单位向量
         double dx = end.getX() - start.getX();
@@ -1609,7 +1711,7 @@ public class Frame extends Application {
             int x = (int)(start.getX() + t * dx);
             int y = (int)(start.getY() + t * dy);
 
-            if (gMatrix[y][x] < minGrad) continue;
+            if (snapshot.gradient(y, x) < minGrad) continue;
 
             // 检测局部梯度极大值
             if (isLocalGradientMax(x, y, ux, uy)) {
@@ -1621,7 +1723,8 @@ public class Frame extends Application {
 
     // 判断是否为局部梯度极大值
     private boolean isLocalGradientMax(int x, int y, double dirX, double dirY) {
-        double currentGrad = gMatrix[y][x];
+        FeatureSnapshot snapshot = features;
+        double currentGrad = snapshot.gradient(y, x);
 
         // 沿法线方向检查两侧像素
         double orthogonalX = -dirY; // 正交方向向量
@@ -1631,8 +1734,8 @@ public class Frame extends Application {
             if (k == 0) continue;
             int nx = x + (int)(k * orthogonalX);
             int ny = y + (int)(k * orthogonalY);
-            if (ny >=0 && ny < gMatrix.length && nx >=0 && nx < gMatrix[0].length) {
-                if (gMatrix[ny][nx] >= currentGrad) {
+            if (ny >=0 && ny < snapshot.getRows() && nx >=0 && nx < snapshot.getCols()) {
+                if (snapshot.gradient(ny, nx) >= currentGrad) {
                     return false;
                 }
             }
@@ -1642,6 +1745,7 @@ public class Frame extends Application {
 
     private List<int[]> computePathWithAutoSeedPoint(SeedPoint start, SeedPoint end) {
         List<int[]> fullPath = new ArrayList<>();
+        FeatureSnapshot snapshot = features;
 
         if (!needAutoAnchor(start, end)) {
             return currentPath;
@@ -1657,7 +1761,7 @@ public class Frame extends Application {
         SeedPoint mid = candidates.stream()
                 .max(Comparator.comparingDouble(p ->
                         // 权重公式：梯度 + 方向一致性 - 曲率惩罚
-                        gMatrix[p.getY()][p.getX()] * 0.7 +
+                        snapshot.gradient(p.getY(), p.getX()) * 0.7 +
                                 directionConsistency(p) * 0.3 -
                                 Math.abs(curvature(p)) * 0.2
                 ))
@@ -1683,10 +1787,11 @@ public class Frame extends Application {
 
 
     private List<SeedPoint> selectTopCandidates(List<SeedPoint> candidates, int maxCount) {
+        FeatureSnapshot snapshot = features;
         // 按梯度值降序排序
         candidates.sort((a, b) -> Double.compare(
-                gMatrix[b.getY()][b.getX()],
-                gMatrix[a.getY()][a.getX()]
+                snapshot.gradient(b.getY(), b.getX()),
+                snapshot.gradient(a.getY(), a.getX())
         ));
 
         // 选择梯度最大的前N个点
@@ -1711,13 +1816,14 @@ public class Frame extends Application {
 
     private double calculateImageComplexity() {
         // 计算梯度平均值作为复杂度指标
+        FeatureSnapshot snapshot = features;
         double total = 0;
-        for (double[] row : gMatrix) {
-            for (double val : row) {
-                total += val;
+        for (int row = 0; row < snapshot.getRows(); row++) {
+            for (int col = 0; col < snapshot.getCols(); col++) {
+                total += snapshot.gradient(row, col);
             }
         }
-        return total / (gMatrix.length * gMatrix[0].length);
+        return total / (snapshot.getRows() * snapshot.getCols());
     }
 
     private double calculateDynamicThreshold() {
@@ -1726,6 +1832,7 @@ public class Frame extends Application {
     }
 
     private List<CandidateScore> analyzePath(List<int[]> path) {
+        FeatureSnapshot snapshot = features;
         List<CandidateScore> scores = new ArrayList<>();
 
         for (int i = 1; i < path.size() - 1; i++) {
@@ -1734,7 +1841,7 @@ public class Frame extends Application {
             int[] next = path.get(i+1);
 
             // 计算梯度强度
-            double grad = gMatrix[curr[1]][curr[0]];
+            double grad = snapshot.gradient(curr[1], curr[0]);
 
             // 计算曲率变化
             double curvature = calculateCurvature(prev, curr, next);
@@ -1888,7 +1995,7 @@ public class Frame extends Application {
         int[] bestPoint = existingPart.getLast();
         SeedPoint newSeed = new SeedPoint(bestPoint[0], bestPoint[1], true);
         seedPoints.add(newSeed);
-        currentSeed = newSeed;
+        setCurrentSeed(newSeed);
 
         // 更新插入距离跟踪
         lastInsertDistance = calculateTotalPathDistance();
@@ -1967,6 +2074,7 @@ public class Frame extends Application {
             return;
         }
 
+        FeatureSnapshot snapshot = features;
         // 定义采样区域半径
         int radius = 5; // 可根据需求调整
         double totalGradient = 0.0;
@@ -1984,9 +2092,9 @@ public class Frame extends Application {
                 for (int dy = -radius; dy <= radius; dy++) {
                     int px = x + dx;
                     int py = y + dy;
-                    if (px >= 0 && px < gMatrix[0].length &&
-                            py >= 0 && py < gMatrix.length) {
-                        totalGradient += gMatrix[py][px];
+                    if (px >= 0 && px < snapshot.getCols() &&
+                            py >= 0 && py < snapshot.getRows()) {
+                        totalGradient += snapshot.gradient(py, px);
                         count++;
                     }
                 }
@@ -2003,6 +2111,7 @@ public class Frame extends Application {
             double distance = newPosition.distance(lastMovePosition);
             long timeDelta = currentTime - lastMoveTime;
             currentSpeed = (timeDelta > 0) ? (distance / timeDelta * 1000) : 0;
+            velocity = (timeDelta > 0) ? newPosition.subtract(lastMovePosition).multiply(1000.0 / timeDelta) : Point2D.ZERO;
         }
         lastMovePosition = newPosition;
         lastMoveTime = currentTime;
@@ -72,14 +72,16 @@ public class ImageGraph {
 
         // 初始化所有节点
         for (int x = 0; x < width; x++) {
+            TaskLanes.checkpoint();
             for (int y = 0; y < height; y++) {
                 nodes[x][y] = new Node(x, y);
                 graph.put(nodes[x][y], new ArrayList<>());
             }
         }
 
-        // 添加边
+        // 添加边；每处理完一列检查一次，在后台车道上运行时给交互搜索让出CPU
         for (int x = 0; x < width; x++) {
+            TaskLanes.checkpoint();
             for (int y = 0; y < height; y++) {
                 Node current = nodes[x][y];
                 for (int[] dir : DIRS) {
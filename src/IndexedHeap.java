@@ -0,0 +1,140 @@
+package src;
+
+import java.util.Arrays;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 带下标的d叉最小堆（d = 4），元素为 [0, capacity) 内的整数id，键为double。
+ * <p>支持decrease-key，同一个id在堆中最多出现一次，入队出队都不分配对象。</p>
+ */
+public class IndexedHeap {
+
+    private static final int ARITY = 4;
+
+    private final int[] heap;       // 堆槽位 -> 元素id
+    private final double[] keys;    // 堆槽位 -> 键值
+    private final int[] positions;  // 元素id -> 堆槽位，-1表示不在堆中
+    private int size = 0;
+
+    public IndexedHeap(int capacity) {
+        heap = new int[capacity];
+        keys = new double[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int id) {
+        return positions[id] >= 0;
+    }
+
+    public int capacity() {
+        return positions.length;
+    }
+
+    /**
+     * 插入元素；若元素已在堆中且新键更小，则执行decrease-key
+     * @param id 元素id
+     * @param key 键值
+     */
+    public void push(int id, double key) {
+        int slot = positions[id];
+        if (slot >= 0) {
+            if (key < keys[slot]) {
+                keys[slot] = key;
+                siftUp(slot);
+            }
+            return;
+        }
+        slot = size++;
+        heap[slot] = id;
+        keys[slot] = key;
+        positions[id] = slot;
+        siftUp(slot);
+    }
+
+    public int peek() {
+        return heap[0];
+    }
+
+    public double peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * 弹出键值最小的元素
+     * @return 元素id
+     */
+    public int poll() {
+        int top = heap[0];
+        positions[top] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            keys[0] = keys[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * 清空堆，只重置仍在堆中的元素，代价为O(size)
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int slot) {
+        int id = heap[slot];
+        double key = keys[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) / ARITY;
+            if (keys[parent] <= key) break;
+            heap[slot] = heap[parent];
+            keys[slot] = keys[parent];
+            positions[heap[slot]] = slot;
+            slot = parent;
+        }
+        heap[slot] = id;
+        keys[slot] = key;
+        positions[id] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int id = heap[slot];
+        double key = keys[slot];
+        while (true) {
+            int first = slot * ARITY + 1;
+            if (first >= size) break;
+            int last = Math.min(first + ARITY, size);
+            int best = first;
+            double bestKey = keys[first];
+            for (int child = first + 1; child < last; child++) {
+                if (keys[child] < bestKey) {
+                    best = child;
+                    bestKey = keys[child];
+                }
+            }
+            if (bestKey >= key) break;
+            heap[slot] = heap[best];
+            keys[slot] = bestKey;
+            positions[heap[slot]] = slot;
+            slot = best;
+        }
+        heap[slot] = id;
+        keys[slot] = key;
+        positions[id] = slot;
+    }
+}
@@ -0,0 +1,219 @@
+package src;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 实时路径搜索的延迟调节器。
+ * <p>持续记录最近 {@link #WINDOW} 次搜索的耗时，按其p95与目标预算比较，在三档搜索策略之间逐级切换：</p>
+ * <ol>
+ *     <li>{@link SearchStrategy#DIJKSTRA}：整幅图像上的全分辨率搜索；</li>
+ *     <li>{@link SearchStrategy#WINDOWED}：限制在起点终点附近窗口内的搜索，缓冲区与结算数随窗口大小而非图像大小增长；</li>
+ *     <li>{@link SearchStrategy#HIERARCHICAL}：在降采样的代价图上由粗到细搜索，结果近似。</li>
+ * </ol>
+ * <p>p95超过预算时降一档（更便宜），低于预算的 {@link #STEP_UP_FRACTION} 倍时升一档（更精细），
+ * 中间留出的区间避免来回振荡。每次切换后清空样本，新的一档至少积累 {@link #MIN_SAMPLES} 个样本后才会再做决定。
+ * 每次决定都通过 {@link System.Logger} 记录（INFO级别）并保留最近 {@link #MAX_DECISIONS} 条，
+ * 连同当前p95与各档切换次数一起由访问方法提供，界面的状态栏会显示它们。</p>
+ * <p>可被多个线程同时调用：搜索线程记录样本，界面线程读取当前策略。</p>
+ */
+public class LatencyGovernor {
+
+    private static final System.Logger LOGGER = System.getLogger(LatencyGovernor.class.getName());
+
+    static final SearchStrategy[] LADDER = {
+            SearchStrategy.DIJKSTRA, SearchStrategy.WINDOWED, SearchStrategy.HIERARCHICAL
+    };
+    static final int WINDOW = 64;
+    static final int MIN_SAMPLES = 16;
+    static final double STEP_UP_FRACTION = 0.5;
+    static final int MAX_DECISIONS = 32;
+
+    private long budgetNanos;
+    private final long[] samples = new long[WINDOW]; // 环形缓冲区，只保存当前一档的样本
+    private int sampleCount = 0;
+    private int nextSample = 0;
+    private int level;
+    private long totalSamples = 0;
+    private long stepsDown = 0;
+    private long stepsUp = 0;
+    private final Deque<Decision> decisions = new ArrayDeque<>();
+
+    /**
+     * @param budgetMillis 搜索延迟p95的目标（毫秒）
+     * @param initial 初始策略，必须是 {@link #LADDER} 中的一档
+     */
+    public LatencyGovernor(long budgetMillis, SearchStrategy initial) {
+        setBudgetMillis(budgetMillis);
+        this.level = levelOf(initial);
+    }
+
+    /**
+     * 从指定的一档重新开始，例如打开新图像时；样本清空，统计保留
+     */
+    public synchronized void reset(SearchStrategy initial) {
+        level = levelOf(initial);
+        clearSamples();
+    }
+
+    /**
+     * 调整目标预算，例如按工作站的性能档次
+     */
+    public synchronized void setBudgetMillis(long budgetMillis) {
+        if (budgetMillis <= 0) {
+            throw new IllegalArgumentException("Invalid latency budget");
+        }
+        this.budgetNanos = budgetMillis * 1_000_000L;
+    }
+
+    /**
+     * @return 当前应使用的搜索策略
+     */
+    public synchronized SearchStrategy getStrategy() {
+        return LADDER[level];
+    }
+
+    /**
+     * 记录一次搜索的耗时，必要时切换策略。用旧策略完成的搜索（切换前已开始）不计入
+     * @param strategy 这次搜索所用的策略
+     * @param nanos 搜索耗时（纳秒）
+     */
+    public synchronized void record(SearchStrategy strategy, long nanos) {
+        if (strategy != LADDER[level]) return;
+        samples[nextSample] = nanos;
+        nextSample = (nextSample + 1) % WINDOW;
+        sampleCount = Math.min(WINDOW, sampleCount + 1);
+        totalSamples++;
+        if (sampleCount < MIN_SAMPLES) return;
+
+        long p95 = p95Nanos();
+        if (p95 > budgetNanos && level < LADDER.length - 1) {
+            stepsDown++;
+            switchTo(level + 1, p95, "p95超出预算");
+        } else if (p95 < budgetNanos * STEP_UP_FRACTION && level > 0) {
+            stepsUp++;
+            switchTo(level - 1, p95, "p95远低于预算");
+        }
+    }
+
+    private void switchTo(int newLevel, long p95, String reason) {
+        Decision decision = new Decision(System.currentTimeMillis(), LADDER[level], LADDER[newLevel],
+                p95 / 1e6, budgetNanos / 1e6, reason);
+        LOGGER.log(System.Logger.Level.INFO, "延迟调节: {0}", decision);
+        if (decisions.size() == MAX_DECISIONS) decisions.removeFirst();
+        decisions.addLast(decision);
+        level = newLevel;
+        clearSamples();
+    }
+
+    private void clearSamples() {
+        sampleCount = 0;
+        nextSample = 0;
+    }
+
+    private long p95Nanos() {
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(0.95 * sampleCount) - 1];
+    }
+
+    private static int levelOf(SearchStrategy strategy) {
+        for (int i = 0; i < LADDER.length; i++) {
+            if (LADDER[i] == strategy) return i;
+        }
+        throw new IllegalArgumentException("Unsupported strategy: " + strategy);
+    }
+
+    /**
+     * @return 当前一档的p95搜索耗时（毫秒），样本不足时为NaN
+     */
+    public synchronized double getP95Millis() {
+        return sampleCount == 0 ? Double.NaN : p95Nanos() / 1e6;
+    }
+
+    public synchronized double getBudgetMillis() {
+        return budgetNanos / 1e6;
+    }
+
+    public synchronized long getTotalSamples() {
+        return totalSamples;
+    }
+
+    public synchronized long getStepsDown() {
+        return stepsDown;
+    }
+
+    public synchronized long getStepsUp() {
+        return stepsUp;
+    }
+
+    /**
+     * @return 最近的切换决定，按时间先后排列
+     */
+    public synchronized List<Decision> getDecisions() {
+        return new ArrayList<>(decisions);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("LatencyGovernor[%s, p95=%.2f/%.2f ms, samples=%d, down=%d, up=%d]",
+                LADDER[level], sampleCount == 0 ? Double.NaN : p95Nanos() / 1e6, budgetNanos / 1e6,
+                totalSamples, stepsDown, stepsUp);
+    }
+
+    /**
+     * 一次策略切换
+     */
+    public static final class Decision {
+        private final long timeMillis;
+        private final SearchStrategy from;
+        private final SearchStrategy to;
+        private final double p95Millis;
+        private final double budgetMillis;
+        private final String reason;
+
+        Decision(long timeMillis, SearchStrategy from, SearchStrategy to, double p95Millis,
+                 double budgetMillis, String reason) {
+            this.timeMillis = timeMillis;
+            this.from = from;
+            this.to = to;
+            this.p95Millis = p95Millis;
+            this.budgetMillis = budgetMillis;
+            this.reason = reason;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public SearchStrategy getFrom() {
+            return from;
+        }
+
+        public SearchStrategy getTo() {
+            return to;
+        }
+
+        public double getP95Millis() {
+            return p95Millis;
+        }
+
+        public double getBudgetMillis() {
+            return budgetMillis;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s -> %s (%s, p95=%.2f ms, budget=%.2f ms)", from, to, reason, p95Millis, budgetMillis);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package src;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 实时路径的"最新请求优先"调度器。
+ * <p>鼠标移动产生的搜索请求在交互车道（{@link TaskLanes.Lane#INTERACTIVE}）上执行，
+ * 界面线程只负责提交请求和显示结果；同一时刻至多有一次搜索在执行：</p>
+ * <ul>
+ *     <li>合并：尚未开始的请求只保留最新的一个；</li>
+ *     <li>取消：新请求到来时中断正在执行的旧搜索，搜索循环定期检查线程的中断标记并提前返回
+ *     （见 {@link PixelDijkstra#expandUntil}）。连续取消 {@link #MAX_CONSECUTIVE_CANCELS} 次后
+ *     让当前搜索跑完，避免光标一直移动时永远得不到结果；</li>
+ *     <li>发布：结果通过uiExecutor（即Platform.runLater）交给界面线程，同一时刻至多排队一次，
+ *     界面线程取到的总是最新的结果；</li>
+ *     <li>部分结果：随时可交出结果的搜索（见 {@link AnytimeSearch}）在预算用完时先发布一条部分路径，
+ *     搜索继续进行，完整路径随后发布并替换它；请求已被取代时部分路径不再发布；</li>
+ *     <li>节流：两次搜索开始的间隔随实测搜索耗时（先发布部分路径时为部分路径的耗时）的滑动平均自适应，限制在
+ *     [{@link #MIN_INTERVAL_MS}, {@link #MAX_INTERVAL_MS}] 毫秒之间。</li>
+ * </ul>
+ * @param <C> 随请求携带、发布时原样交回的上下文（例如吸附后的光标位置）
+ */
+public class LiveWireScheduler<C> {
+
+    static final long MIN_INTERVAL_MS = 8;
+    static final long MAX_INTERVAL_MS = 100;
+    static final int MAX_CONSECUTIVE_CANCELS = 3;
+    // 搜索耗时滑动平均的权重
+    private static final double AVERAGE_WEIGHT = 0.2;
+
+    private final TaskLanes lanes = TaskLanes.shared();
+    private final Executor uiExecutor;
+    private final Consumer<Result<C>> consumer;
+
+    private final Object lock = new Object();
+    private Request<C> latest = null;        // 尚未开始的最新请求
+    private boolean scheduled = false;       // 是否已经安排了一次执行
+    private Thread worker = null;            // 正在执行搜索的线程，空闲时为null
+    private int consecutiveCancels = 0;
+    private long lastStartTime = 0;
+    private double averageMillis = MIN_INTERVAL_MS;
+    private volatile int generation = 0;     // 每次cancel加一，之前提交的请求的结果一律丢弃
+    private boolean shutdown = false;
+
+    private final AtomicReference<Result<C>> unpublished = new AtomicReference<>();
+
+    /**
+     * @param uiExecutor 把任务交给界面线程的执行器，JavaFX中为 Platform::runLater
+     * @param consumer 在界面线程上处理结果
+     */
+    public LiveWireScheduler(Executor uiExecutor, Consumer<Result<C>> consumer) {
+        this.uiExecutor = uiExecutor;
+        this.consumer = consumer;
+    }
+
+    /**
+     * 提交一次搜索，取代所有尚未开始的请求，并取消正在执行的旧搜索
+     * @param context 上下文，发布时原样交回
+     * @param search 搜索本身，在后台线程执行
+     */
+    public void submit(C context, Supplier<ComputeMinCostPath.PathResult> search) {
+        submitAnytime(context, partialConsumer -> search.get());
+    }
+
+    /**
+     * 提交一次可以先发布部分结果的搜索，其余同 {@link #submit}
+     * @param search 搜索本身，在后台线程执行，可以通过传入的回调先发布部分路径
+     */
+    public void submitAnytime(C context, Search search) {
+        synchronized (lock) {
+            latest = new Request<>(context, search, generation);
+            if (worker != null && consecutiveCancels < MAX_CONSECUTIVE_CANCELS) {
+                worker.interrupt();
+            }
+            scheduleLocked();
+        }
+    }
+
+    /**
+     * 丢弃尚未开始的请求并取消正在执行的搜索，例如种子点变化或套索结束时
+     */
+    public void cancel() {
+        synchronized (lock) {
+            generation++;
+            latest = null;
+            if (worker != null) worker.interrupt();
+        }
+        unpublished.set(null);
+    }
+
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+        }
+        cancel();
+    }
+
+    /**
+     * @return 当前两次搜索开始之间的最小间隔（毫秒）
+     */
+    public long getInterval() {
+        synchronized (lock) {
+            return Math.max(MIN_INTERVAL_MS, Math.min(MAX_INTERVAL_MS, Math.round(averageMillis)));
+        }
+    }
+
+    private void scheduleLocked() {
+        if (scheduled || latest == null || shutdown) return;
+        scheduled = true;
+        long interval = Math.max(MIN_INTERVAL_MS, Math.min(MAX_INTERVAL_MS, Math.round(averageMillis)));
+        long delay = Math.max(0, lastStartTime + interval - System.currentTimeMillis());
+        lanes.schedule(TaskLanes.Lane.INTERACTIVE, this::runLatest, delay);
+    }
+
+    private void runLatest() {
+        Request<C> request;
+        long startTime;
+        synchronized (lock) {
+            scheduled = false;
+            request = latest;
+            latest = null;
+            if (request == null) return;
+            worker = Thread.currentThread();
+            lastStartTime = System.currentTimeMillis();
+            startTime = lastStartTime;
+        }
+
+        ComputeMinCostPath.PathResult path = null;
+        long[] partialMillis = {-1};
+        try {
+            path = request.search.run(partial -> {
+                // 已被新请求取代（线程被中断）时不再发布
+                if (!Thread.currentThread().isInterrupted()) {
+                    partialMillis[0] = System.currentTimeMillis() - startTime;
+                    publish(new Result<>(request.context, partial, partialMillis[0], request.generation));
+                }
+            });
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        // 节流按界面第一次拿到结果的耗时计算，先发布了部分路径时就是部分路径的耗时
+        long latency = partialMillis[0] >= 0 ? partialMillis[0] : elapsed;
+
+        boolean cancelled;
+        synchronized (lock) {
+            worker = null;
+            // 清除中断标记，不影响下一次搜索
+            cancelled = Thread.interrupted();
+            if (cancelled) {
+                consecutiveCancels++;
+            } else {
+                consecutiveCancels = 0;
+                averageMillis += AVERAGE_WEIGHT * (latency - averageMillis);
+            }
+            scheduleLocked();
+        }
+        if (!cancelled && path != null) {
+            publish(new Result<>(request.context, path, elapsed, request.generation));
+        }
+    }
+
+    // 同一时刻至多有一个发布任务在界面线程排队，它总是取走最新的结果
+    private void publish(Result<C> result) {
+        if (unpublished.getAndSet(result) == null) {
+            uiExecutor.execute(() -> {
+                Result<C> newest = unpublished.getAndSet(null);
+                if (newest != null && newest.generation == generation) consumer.accept(newest);
+            });
+        }
+    }
+
+    /**
+     * 可以先发布部分结果的搜索
+     */
+    @FunctionalInterface
+    public interface Search {
+        /**
+         * @param partialConsumer 接收部分路径，在搜索线程上调用
+         * @return 完整路径
+         */
+        ComputeMinCostPath.PathResult run(Consumer<ComputeMinCostPath.PathResult> partialConsumer);
+    }
+
+    private static final class Request<C> {
+        final C context;
+        final Search search;
+        final int generation;
+
+        Request(C context, Search search, int generation) {
+            this.context = context;
+            this.search = search;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * 一次完成的搜索
+     */
+    public static final class Result<C> {
+        private final C context;
+        private final ComputeMinCostPath.PathResult path;
+        private final long searchMillis;
+        private final int generation;
+
+        Result(C context, ComputeMinCostPath.PathResult path, long searchMillis, int generation) {
+            this.context = context;
+            this.path = path;
+            this.searchMillis = searchMillis;
+            this.generation = generation;
+        }
+
+        public C getContext() {
+            return context;
+        }
+
+        public ComputeMinCostPath.PathResult getPath() {
+            return path;
+        }
+
+        public long getSearchMillis() {
+            return searchMillis;
+        }
+
+        /**
+         * @return 是否为预算用完时先发布的部分路径，之后会有完整路径替换它
+         */
+        public boolean isPartial() {
+            return path.isPartial();
+        }
+    }
+}
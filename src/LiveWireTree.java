@@ -0,0 +1,308 @@
+package src;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 以种子点为根的最短路径树（live-wire）。
+ * <p>种子点确定后，在后台车道中一次性扩展出整棵最短路径树并保留下来，
+ * 之后每次鼠标移动只需沿父指针从光标像素回溯到种子点，不必重新跑一遍Dijkstra。
+ * 扩展定期调用 {@link TaskLanes#checkpoint()}，交互搜索进行时让出CPU。</p>
+ * <p>坐标约定与 {@link ComputeMinCostPath#findShortestPath(FeatureMap, SeedPoint, SeedPoint)} 一致：
+ * 行 = {@code seed.getX()}，列 = {@code seed.getY()}。</p>
+ * <p>距离、父指针与结算序号都在一组 {@link SearchWorkspace} 中，取自最多保留 {@link #POOL_SIZE} 组的缓冲池。
+ * 树被取消或退役、扩展结束并且没有读线程正在回溯时，缓冲区归还缓冲池，下一棵树直接复用，不再每个种子点分配一次整图数组。
+ * 读线程用 {@link #enter()} 登记，缓冲区归还后的查询一律视为未命中。</p>
+ */
+public class LiveWireTree {
+
+    // 每结算这么多个像素，向读线程发布一次进度
+    private static final int PUBLISH_MASK = (1 << 10) - 1;
+    // 缓冲池最多保留的缓冲区组数：当前种子点的树加上推测的候选树
+    static final int POOL_SIZE = SpeculativeExpander.MAX_CANDIDATE_TREES + 1;
+    private static final Deque<SearchWorkspace> POOL = new ArrayDeque<>();
+    private static final int RECYCLED = -1;
+
+    private final FeatureSnapshot features; // 建树所用的特征快照，整个扩展过程中固定不变
+    private final FeatureMap fgMatrix;
+    private final SeedPoint seed;
+    private final int rows;
+    private final int cols;
+    private final int seedRow;
+    private final int seedCol;
+
+    private final SearchWorkspace workspace;
+    private final PixelDijkstra search; // 距离与父指针都保存在搜索核心中
+    private final int[] settleOrder;    // 像素被结算的序号，取自workspace
+    private final int settleBase;       // 本树的起始序号，大于它的序号才属于本树
+
+    private volatile int published = 0;    // 已发布的结算序号，序号不超过它的像素可以安全读取
+    private volatile boolean done = false;
+    private volatile boolean cancelled = false;
+    private volatile boolean dropped = false; // 已被取消或退役，不会再有新的持有者
+    private final AtomicInteger readers = new AtomicInteger(); // 正在读取的线程数，RECYCLED表示缓冲区已归还
+    private volatile int priority;
+    private volatile Thread worker;       // 正在扩展的线程，未开始或已结束时为null
+    private TreeCache retireCache = null; // 扩展结束后要把树放入的缓存，受this保护
+
+    private LiveWireTree(FeatureSnapshot features, SeedPoint seed) {
+        this.features = features;
+        this.fgMatrix = features.getFgMatrix();
+        this.seed = seed;
+        this.rows = fgMatrix.getRows();
+        this.cols = fgMatrix.getCols();
+        this.seedRow = seed.getX();
+        this.seedCol = seed.getY();
+        this.workspace = acquireWorkspace();
+        int pixels = Math.multiplyExact(rows, cols);
+        // 与SearchWorkspace.releaseAll互斥，保证取到的是同一组数组
+        synchronized (workspace) {
+            workspace.ensureSettleCapacity(pixels);
+            this.settleOrder = workspace.settleOrder;
+        }
+        this.search = new PixelDijkstra(fgMatrix, false, workspace);
+        this.settleBase = workspace.nextSettleBase(pixels, settleOrder);
+    }
+
+    private static SearchWorkspace acquireWorkspace() {
+        synchronized (POOL) {
+            SearchWorkspace workspace = POOL.poll();
+            if (workspace != null) return workspace;
+        }
+        return new SearchWorkspace(0);
+    }
+
+    /**
+     * 为种子点创建最短路径树，并立即在后台车道（{@link TaskLanes.Lane#BACKGROUND}）中开始扩展
+     * @param features 特征快照
+     * @param seed 种子点
+     * @return 正在扩展中的最短路径树
+     */
+    public static LiveWireTree start(FeatureSnapshot features, SeedPoint seed) {
+        return start(features, seed, TaskLanes.Lane.BACKGROUND);
+    }
+
+    /**
+     * 在指定车道上创建并扩展最短路径树，推测性的树使用 {@link TaskLanes.Lane#SPECULATIVE}
+     * @param lane 执行扩展的车道
+     */
+    public static LiveWireTree start(FeatureSnapshot features, SeedPoint seed, TaskLanes.Lane lane) {
+        if (features == null) {
+            throw new IllegalArgumentException("Invalid gradient matrix");
+        }
+        LiveWireTree tree = new LiveWireTree(features, seed);
+        tree.priority = lane.priority;
+        TaskLanes.shared().execute(lane, tree::expand);
+        return tree;
+    }
+
+    /**
+     * 调整扩展线程的优先级，例如推测性的树被采用为当前种子点的树时；扩展结束后线程恢复车道原有的优先级
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+        Thread thread = worker;
+        if (thread != null) thread.setPriority(priority);
+    }
+
+    private void expand() {
+        if (!inBounds(seedRow, seedCol)) {
+            done = true;
+            recycleIfIdle();
+            return;
+        }
+
+        Thread thread = Thread.currentThread();
+        int lanePriority = thread.getPriority();
+        thread.setPriority(priority);
+        worker = thread;
+        int settled = 0;
+        try {
+            search.reset(seedRow, seedCol);
+            while (!cancelled) {
+                int current = search.step();
+                if (current < 0) break;
+                settleOrder[current] = settleBase + ++settled;
+                if ((settled & PUBLISH_MASK) == 0) {
+                    published = settled;
+                    TaskLanes.checkpoint();
+                }
+            }
+        } finally {
+            worker = null;
+            thread.setPriority(lanePriority);
+        }
+        published = settled;
+        TreeCache cache;
+        synchronized (this) {
+            cache = retireCache;
+            if (cache != null) enter(); // 扩展结束前登记，复制结束之前缓冲区不会归还
+            done = true;
+        }
+        if (cache != null) {
+            try {
+                cache.put(features, CompactTree.of(search, i -> isPublished(i, published)));
+            } finally {
+                exit();
+            }
+        } else {
+            recycleIfIdle();
+        }
+    }
+
+    /**
+     * 目标像素是否已经在树中结算（结算后其最短路径不会再改变）
+     * @param target 目标点
+     * @return 已结算返回true
+     */
+    public boolean isSettled(SeedPoint target) {
+        int row = target.getX();
+        int col = target.getY();
+        if (!inBounds(row, col) || !enter()) return false;
+        try {
+            return isPublished(index(row, col), published);
+        } finally {
+            exit();
+        }
+    }
+
+    /**
+     * 沿父指针回溯得到种子点到目标点的最短路径
+     * @param target 目标点
+     * @return 最短路径；目标尚未结算时返回null，调用方应自行回退到一次性搜索
+     */
+    public ComputeMinCostPath.PathResult getPath(SeedPoint target) {
+        int row = target.getX();
+        int col = target.getY();
+        if (!inBounds(row, col)) {
+            return new ComputeMinCostPath.PathResult(-1, Collections.emptyList());
+        }
+        if (!enter()) return null;
+        try {
+            // 先读volatile的发布序号，保证之后读到的父指针都已完整写入
+            int limit = published;
+            int targetIndex = index(row, col);
+            if (!isPublished(targetIndex, limit)) return null;
+
+            List<int[]> path = new ArrayList<>();
+            for (int current = targetIndex; current != -1; current = search.parent(current)) {
+                path.add(new int[]{search.rowOf(current), search.colOf(current)});
+            }
+            Collections.reverse(path);
+            return new ComputeMinCostPath.PathResult(search.distance(targetIndex), path);
+        } finally {
+            exit();
+        }
+    }
+
+    /**
+     * 把已发布的结算区域复制为紧凑树，扩展进行中也可以调用
+     * @return 紧凑树；缓冲区已归还缓冲池时返回null
+     */
+    public CompactTree toCompactTree() {
+        if (!enter()) return null;
+        try {
+            int limit = published; // 先读volatile的发布序号，见getPath
+            return CompactTree.of(search, i -> isPublished(i, limit));
+        } finally {
+            exit();
+        }
+    }
+
+    // 结算序号属于本树且已发布
+    private boolean isPublished(int index, int limit) {
+        int order = settleOrder[index] - settleBase;
+        return order > 0 && order <= limit;
+    }
+
+    /**
+     * 停止扩展并把已结算的部分放入缓存，供以后回到该种子点时复用。
+     * 复制在后台进行：扩展仍在运行时由它在退出前完成，否则交给后台车道。
+     * @param cache 最短路径树缓存
+     */
+    public void retireTo(TreeCache cache) {
+        synchronized (this) {
+            if (!done) {
+                retireCache = cache;
+                cancelled = true;
+                drop();
+                return;
+            }
+        }
+        // 复制任务开始前先登记为读线程，缓冲区在复制结束之前不会归还
+        if (!enter()) return;
+        drop();
+        TaskLanes.shared().execute(TaskLanes.Lane.BACKGROUND, () -> {
+            try {
+                cache.put(features, CompactTree.of(search, i -> isPublished(i, published)));
+            } finally {
+                exit();
+            }
+        });
+    }
+
+    /**
+     * 停止后台扩展，不再使用这棵树；正在进行的查询可以正常结束，之后缓冲区归还缓冲池
+     */
+    public void cancel() {
+        cancelled = true;
+        drop();
+    }
+
+    private void drop() {
+        dropped = true;
+        recycleIfIdle();
+    }
+
+    // 登记一个读线程；缓冲区已归还时返回false
+    private boolean enter() {
+        while (true) {
+            int count = readers.get();
+            if (count == RECYCLED) return false;
+            if (readers.compareAndSet(count, count + 1)) return true;
+        }
+    }
+
+    private void exit() {
+        readers.decrementAndGet();
+        recycleIfIdle();
+    }
+
+    // 树已被放弃、扩展已结束并且没有读线程时把缓冲区归还缓冲池，只会成功一次
+    private void recycleIfIdle() {
+        if (!dropped || !done || !readers.compareAndSet(0, RECYCLED)) return;
+        synchronized (POOL) {
+            if (POOL.size() < POOL_SIZE) POOL.push(workspace);
+        }
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public SeedPoint getSeed() {
+        return seed;
+    }
+
+    public FeatureMap getFgMatrix() {
+        return fgMatrix;
+    }
+
+    public FeatureSnapshot getFeatures() {
+        return features;
+    }
+
+    private boolean inBounds(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    private int index(int row, int col) {
+        return row * cols + col;
+    }
+}
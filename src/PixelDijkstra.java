@@ -0,0 +1,370 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static src.ComputeMinCostPath.DIRECTIONS;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 基于一维像素下标的Dijkstra核心。
+ * <p>搜索可以限制在fg矩阵的一个矩形窗口内，所有缓冲区都按窗口大小分配。窗口内像素 (row, col)
+ * 的下标为 {@code (row - rowOffset) * cols + (col - colOffset)}，对外的行列坐标始终是整幅图像的坐标。
+ * 距离、父节点、入射方向都存放在基本类型数组中，
+ * 优先队列使用 {@link IndexedHeap}（支持decrease-key），扩展过程中不分配任何对象。
+ * 缓冲区来自 {@link SearchWorkspace}，按代号戳区分本次与以前的搜索，reset不必清空数组。
+ * 边权从整幅图像共享的 {@link CostTable} 中查表得到。</p>
+ * <p>搜索状态可以保留：{@link #expandUntil(int)} 在目标结算后立即返回，之后可以继续扩展。</p>
+ * <p>反向模式（reverse）从终点出发沿边的反方向扩展，距离表示从该像素走到源点（即终点）的代价，
+ * 用于双向搜索，见 {@link BidirectionalDijkstra}。</p>
+ */
+public class PixelDijkstra {
+
+    // 每结算这么多个像素（减一后作掩码）检查一次线程中断
+    static final int INTERRUPT_CHECK_MASK = 1023;
+
+    private final FeatureMap fgMatrix;
+    private final CostTable costTable;  // 整幅图像的八方向边权表
+    private final int imageCols;        // 图像列数，用于换算边权表下标
+    private final int rowOffset;        // 窗口左上角在图像中的行
+    private final int colOffset;        // 窗口左上角在图像中的列
+    private final int rows;             // 窗口行数
+    private final int cols;             // 窗口列数
+    private final boolean reverse;      // 是否沿边的反方向扩展
+
+    // 以下缓冲区来自SearchWorkspace，长度可能大于窗口，只使用前 rows * cols 个元素
+    private final SearchWorkspace workspace;
+    private final double[] distances;   // 到源点的距离，戳不小于epoch时有效
+    private final int[] parents;        // 父像素下标，源点为-1
+    private final byte[] inDirections;  // 走到该像素时的方向下标，源点为-1；反向模式下为该像素走向父像素的正向方向
+    private final int[] stamps;         // 等于epoch表示已到达，等于epoch + 1表示已结算，更小表示未访问
+    private final IndexedHeap heap;
+    private int epoch = 0;
+    private boolean[] mask = null;      // 窗口内允许经过的像素，null表示不限制
+
+    private int source = -1;
+    private int goalRow = -1;           // A*目标行，-1表示不使用启发函数
+    private int goalCol = -1;
+    private int settledCount = 0;
+
+    public PixelDijkstra(FeatureMap fgMatrix) {
+        this(fgMatrix, false);
+    }
+
+    public PixelDijkstra(FeatureMap fgMatrix, boolean reverse) {
+        this(fgMatrix, 0, 0, fgMatrix.getRows(), fgMatrix.getCols(), reverse);
+    }
+
+    /**
+     * 在给定的缓冲区上搜索整幅图像，一次性的搜索通常传入 {@link SearchWorkspace#current()}
+     */
+    public PixelDijkstra(FeatureMap fgMatrix, boolean reverse, SearchWorkspace workspace) {
+        this(fgMatrix, 0, 0, fgMatrix.getRows(), fgMatrix.getCols(), reverse, workspace);
+    }
+
+    /**
+     * 只在窗口 [rowOffset, rowOffset + rows) × [colOffset, colOffset + cols) 内搜索
+     * @param fgMatrix fg特征图
+     * @param rowOffset 窗口起始行
+     * @param colOffset 窗口起始列
+     * @param rows 窗口行数
+     * @param cols 窗口列数
+     * @param reverse 是否沿边的反方向扩展
+     */
+    public PixelDijkstra(FeatureMap fgMatrix, int rowOffset, int colOffset, int rows, int cols, boolean reverse) {
+        this(fgMatrix, rowOffset, colOffset, rows, cols, reverse, new SearchWorkspace(rows * cols));
+    }
+
+    /**
+     * 在给定的缓冲区上搜索窗口，缓冲区容量不足时先扩容。缓冲区在本搜索使用期间不能再交给其他搜索
+     * @param workspace 可复用的缓冲区
+     */
+    public PixelDijkstra(FeatureMap fgMatrix, int rowOffset, int colOffset, int rows, int cols, boolean reverse,
+                         SearchWorkspace workspace) {
+        this.fgMatrix = fgMatrix;
+        this.costTable = CostTable.of(fgMatrix);
+        this.imageCols = fgMatrix.getCols();
+        this.reverse = reverse;
+        this.rowOffset = rowOffset;
+        this.colOffset = colOffset;
+        this.rows = rows;
+        this.cols = cols;
+        this.workspace = workspace;
+        // 与SearchWorkspace.releaseAll互斥，保证取到的是同一组数组
+        synchronized (workspace) {
+            workspace.ensureCapacity(rows * cols);
+            this.distances = workspace.distances;
+            this.parents = workspace.parents;
+            this.inDirections = workspace.inDirections;
+            this.stamps = workspace.stamps;
+            this.heap = workspace.heap;
+        }
+    }
+
+    /**
+     * 丢弃当前搜索状态，以(sourceRow, sourceCol)为源点重新开始
+     * @param sourceRow 源点行
+     * @param sourceCol 源点列
+     */
+    public void reset(int sourceRow, int sourceCol) {
+        reset(sourceRow, sourceCol, -1);
+    }
+
+    /**
+     * 丢弃当前搜索状态，以(sourceRow, sourceCol)为源点重新开始；goal非负时按A*扩展，
+     * 堆键为 距离 + {@link ComputeMinCostPath#octileHeuristic}。启发函数一致，结算时的距离仍是最短距离，
+     * 但结算顺序偏向goal，此时状态只适合回答到goal的查询
+     * @param sourceRow 源点行
+     * @param sourceCol 源点列
+     * @param goal A*目标像素下标，-1表示普通Dijkstra
+     */
+    public void reset(int sourceRow, int sourceCol, int goal) {
+        goalRow = goal < 0 ? -1 : rowOf(goal);
+        goalCol = goal < 0 ? -1 : colOf(goal);
+        epoch = workspace.nextEpoch(stamps);
+        heap.clear();
+        settledCount = 0;
+
+        source = index(sourceRow, sourceCol);
+        stamps[source] = epoch;
+        distances[source] = 0;
+        parents[source] = -1;
+        inDirections[source] = -1;
+        heap.push(source, heuristic(sourceRow, sourceCol));
+    }
+
+    /**
+     * 结算一个像素并松弛其8邻域
+     * @return 被结算的像素下标，堆为空时返回-1
+     */
+    public int step() {
+        if (heap.isEmpty()) return -1;
+
+        int current = heap.poll();
+        stamps[current] = epoch + 1;
+        settledCount++;
+
+        int localRow = current / cols;
+        int localCol = current - localRow * cols;
+        int row = localRow + rowOffset;
+        int col = localCol + colOffset;
+        int pixel = row * imageCols + col;
+        double currentDistance = distances[current];
+        int inDirection = inDirections[current];
+
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            int newLocalRow = localRow + DIRECTIONS[d][0];
+            int newLocalCol = localCol + DIRECTIONS[d][1];
+            if (newLocalRow < 0 || newLocalRow >= rows || newLocalCol < 0 || newLocalCol >= cols) continue;
+
+            int next = newLocalRow * cols + newLocalCol;
+            int stamp = stamps[next];
+            if (stamp == epoch + 1) continue;
+            if (mask != null && !mask[next]) continue;
+            int newRow = newLocalRow + rowOffset;
+            int newCol = newLocalCol + colOffset;
+
+            double newDistance;
+            int direction;
+            if (reverse) {
+                // 正向边为 next -> current，方向与d相反
+                direction = DIRECTIONS.length - 1 - d;
+                newDistance = currentDistance + reverseCost(pixel, newRow * imageCols + newCol, inDirection, direction);
+            } else {
+                direction = d;
+                newDistance = currentDistance + costTable.cost(pixel, inDirection, d);
+            }
+            if (stamp != epoch || newDistance < distances[next]) {
+                stamps[next] = epoch;
+                distances[next] = newDistance;
+                parents[next] = current;
+                inDirections[next] = (byte) direction;
+                heap.push(next, newDistance + heuristic(newRow, newCol));
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 限制搜索只经过mask为true的像素（例如粗层路径附近的走廊），需在reset之前设置
+     * @param mask 按窗口下标排列的布尔数组，长度为 rows * cols；null表示不限制
+     */
+    public void setMask(boolean[] mask) {
+        if (mask != null && mask.length != rows * cols) {
+            throw new IllegalArgumentException("Mask size does not match search window");
+        }
+        this.mask = mask;
+    }
+
+    /**
+     * 反向模式下正向边 neighbor -> current 的代价。
+     * 正向模型把转向惩罚记在转向之后的那条边上：current处从direction转到outDirection的惩罚
+     * 属于边 current -> parent(current)，此时才知道，所以作为增量一并计入
+     * @param pixel current在图像中的下标
+     * @param neighborPixel neighbor在图像中的下标
+     */
+    private double reverseCost(int pixel, int neighborPixel, int outDirection, int direction) {
+        double cost = costTable.staticCost(neighborPixel, direction);
+        if (outDirection >= 0) {
+            cost += costTable.staticCost(pixel, outDirection) * (costTable.turnPenalty(direction, outDirection) - 1);
+        }
+        return cost;
+    }
+
+    /**
+     * 持续扩展直到目标像素被结算。每结算 {@link #INTERRUPT_CHECK_MASK} + 1 个像素检查一次当前线程的中断标记，
+     * 被中断时提前返回false，搜索状态保持完整，之后仍可继续扩展
+     * @param target 目标像素下标，传入-1表示扩展整幅图像
+     * @return 目标已结算返回true；目标不可达（或target为-1）或线程被中断返回false
+     */
+    public boolean expandUntil(int target) {
+        if (target >= 0 && isSettled(target)) return true;
+        while (true) {
+            int current = step();
+            if (current < 0) return false;
+            if (current == target) return true;
+            if ((settledCount & INTERRUPT_CHECK_MASK) == 0) {
+                if (Thread.currentThread().isInterrupted()) return false;
+                TaskLanes.checkpoint(); // 在可抢占车道上运行时给交互搜索让出CPU
+            }
+        }
+    }
+
+    /**
+     * 沿父指针回溯出源点到目标的路径，目标必须已经结算
+     * @param target 目标像素下标
+     * @return 路径，坐标为 {row, col}
+     */
+    public ComputeMinCostPath.PathResult pathTo(int target) {
+        if (!isSettled(target)) {
+            return new ComputeMinCostPath.PathResult(-1, Collections.emptyList());
+        }
+        List<int[]> path = new ArrayList<>();
+        for (int current = target; current != -1; current = parents[current]) {
+            path.add(new int[]{rowOf(current), colOf(current)});
+        }
+        Collections.reverse(path);
+        return new ComputeMinCostPath.PathResult(distances[target], path);
+    }
+
+    private double heuristic(int row, int col) {
+        if (goalRow < 0) return 0;
+        return ComputeMinCostPath.octileHeuristic(row, col, goalRow, goalCol);
+    }
+
+    public boolean isSettled(int index) {
+        return stamps[index] == epoch + 1;
+    }
+
+    /**
+     * @return 到源点的距离，尚未到达时为 {@link Double#MAX_VALUE}
+     */
+    public double distance(int index) {
+        return stamps[index] >= epoch ? distances[index] : Double.MAX_VALUE;
+    }
+
+    public int parent(int index) {
+        return parents[index];
+    }
+
+    public int inDirection(int index) {
+        return inDirections[index];
+    }
+
+    /**
+     * @return 堆顶键值，堆为空时为正无穷
+     */
+    public double peekKey() {
+        return heap.isEmpty() ? Double.POSITIVE_INFINITY : heap.peekKey();
+    }
+
+    public int getSource() {
+        return source;
+    }
+
+    public int getSettledCount() {
+        return settledCount;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public FeatureMap getFgMatrix() {
+        return fgMatrix;
+    }
+
+    public CostTable getCostTable() {
+        return costTable;
+    }
+
+    public int getRowOffset() {
+        return rowOffset;
+    }
+
+    public int getColOffset() {
+        return colOffset;
+    }
+
+    /**
+     * 窗口中已结算的像素是否出现在窗口边框上（图像本身的边缘不算窗口边框）。
+     * 若边框上没有像素先于目标结算，则任何离开窗口再回来的路径都不会比窗口内的结果更短
+     * @return 边框上存在已结算像素返回true
+     */
+    public boolean hasSettledOnWindowBorder() {
+        int imageRows = fgMatrix.getRows();
+        boolean top = rowOffset > 0;
+        boolean bottom = rowOffset + rows < imageRows;
+        boolean left = colOffset > 0;
+        boolean right = colOffset + cols < imageCols;
+        for (int c = 0; c < cols; c++) {
+            if (top && isSettled(c)) return true;
+            if (bottom && isSettled((rows - 1) * cols + c)) return true;
+        }
+        for (int r = 0; r < rows; r++) {
+            if (left && isSettled(r * cols)) return true;
+            if (right && isSettled(r * cols + cols - 1)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param index 窗口内的像素下标
+     * @return 像素是否在窗口边框上（图像本身的边缘不算），见 {@link #hasSettledOnWindowBorder()}
+     */
+    public boolean isOnWindowBorder(int index) {
+        int row = index / cols;
+        int col = index - row * cols;
+        return (row == 0 && rowOffset > 0) || (row == rows - 1 && rowOffset + rows < fgMatrix.getRows())
+                || (col == 0 && colOffset > 0) || (col == cols - 1 && colOffset + cols < imageCols);
+    }
+
+    public boolean inBounds(int row, int col) {
+        row -= rowOffset;
+        col -= colOffset;
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    /**
+     * @param row 图像行
+     * @param col 图像列
+     * @return 窗口内的一维下标
+     */
+    public int index(int row, int col) {
+        return (row - rowOffset) * cols + (col - colOffset);
+    }
+
+    public int rowOf(int index) {
+        return index / cols + rowOffset;
+    }
+
+    public int colOf(int index) {
+        return index % cols + colOffset;
+    }
+}
@@ -19,31 +19,20 @@ public class ProcessMatrix {
             {0, 1, 0}
     };
 
+    /**
+     * 拉普拉斯值，边框一圈为0；只计算拉普拉斯，不经过 {@link #computeFeatures}
+     */
     public static double[][] findLaplacian(int[][] matrix) {
-        int height = matrix.length;
-        int width = matrix[0].length;
-        double[][] laplacian = new double[height][width];
-        for (int y = 1; y < height - 1; y++) {
-            for (int x = 1; x < width - 1; x++) {
-                double sum = 0;
-                //3*3领域与核的点积
-                for (int i = -1; i <= 1; i++) {
-                    for (int j = -1; j <= 1; j++) {
-                        sum += matrix[y + j][x + i] * LAPLACIAN_KERNEL[j + 1][i + 1];
-                    }
-                }
-                laplacian[y][x] = sum;
+        int rows = matrix.length;
+        int cols = matrix[0].length;
+        float[] laplacian = SimdFeatures.laplacian(SimdFeatures.flatten(matrix), rows, cols);
+        double[][] result = new double[rows][cols];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                result[y][x] = laplacian[y * cols + x];
             }
         }
-        for (int x = 0; x < width; x++) {
-            laplacian[0][x] = 0;
-            laplacian[height - 1][x] = 0;
-        }
-        for (int y = 0; y < height; y++) {
-            laplacian[y][0] = 0;
-            laplacian[y][width - 1] = 0;
-        }
-        return laplacian;
+        return result;
     }
 
     /**
@@ -52,35 +41,34 @@ public class ProcessMatrix {
      * @return zeroCrossing矩阵
      */
     public static boolean[][] computeZeroCrossing(int[][] matrix) {
-        int height = matrix.length;
-        int width = matrix[0].length;
-        boolean[][] zeroCrossing = new boolean[height][width];//是否为过零点
-
-        double[][] laplacian = findLaplacian(matrix);
-
-        // 检测零交叉点（简化逻辑）
-        for (int y = 1; y < height - 1; y++) {
-            for (int x = 1; x < width - 1; x++) {
-                boolean isZeroCross = false;
-                // 检查周围像素符号变化
-                int[][] offsets = {{0, 1}, {0, -1}, {1, 0}, {-1, 0}};
-                for (int[] offset: offsets) {
-                    int newY = y + offset[0];
-                    int newX = x + offset[1];
-                    if(laplacian[y][x] * laplacian[newY][newX] < 0) {
-                        if(Math.abs(laplacian[y][x]) < Math.abs(laplacian[newY][newX])) {
-                            isZeroCross = true;
-                            break;
-                        }
-                    }
-                }
-                zeroCrossing[y][x] = isZeroCross;
-            }
+        int rows = matrix.length;
+        int cols = matrix[0].length;
+        float[] laplacian = SimdFeatures.laplacian(SimdFeatures.flatten(matrix), rows, cols);
+        boolean[][] zeroCrossing = new boolean[rows][cols];
+        for (int y = 1; y < rows - 1; y++) { // 边框一圈不是过零点
+            zeroCrossingRow(laplacian, cols, y * cols, zeroCrossing[y]);
         }
-
         return zeroCrossing;
     }
 
+    // 第y行的过零点：拉普拉斯值与某个四邻域像素异号且绝对值更小（左右两端不是过零点）。
+    // laplacian为行优先的缓冲区，base为该行首元素的下标
+    static void zeroCrossingRow(float[] laplacian, int cols, int base, boolean[] zeroCrossingRow) {
+        for (int x = 1; x < cols - 1; x++) {
+            int i = base + x;
+            float center = laplacian[i];
+            float magnitude = Math.abs(center);
+            zeroCrossingRow[x] = crosses(center, magnitude, laplacian[i + 1])
+                    || crosses(center, magnitude, laplacian[i - 1])
+                    || crosses(center, magnitude, laplacian[i + cols])
+                    || crosses(center, magnitude, laplacian[i - cols]);
+        }
+    }
+
+    private static boolean crosses(float center, float magnitude, float neighbor) {
+        return center * neighbor < 0 && magnitude < Math.abs(neighbor);
+    }
+
     public static double computeFz(boolean[][] zeroCrossing, int qx, int qy) {
         if(zeroCrossing[qx][qy]) {
             return 0;
@@ -150,15 +138,204 @@ public class ProcessMatrix {
         double[][] gMatrix = new double[imageHeight][imageWidth];
 
         for (int y = 0; y < imageHeight; y++) {      // 图像y坐标
-            for (int x = 0; x < imageWidth; x++) {   // 图像x坐标
-                int Ix = findIx(matrix, x, y);      // 传入正确的x,y顺序
-                int Iy = findIy(matrix, x, y);
-                gMatrix[y][x] = Math.sqrt(Ix * Ix + Iy * Iy); // y行x列
-            }
+            gradientRow(matrix, y, gMatrix[y]);
         }
         return gMatrix;
     }
 
+    /**
+     * 计算第y行的梯度值。内部像素直接读3*3邻域，不做边界检查；只有边框一圈走 {@link #findIx} 的零填充
+     * @param gRow 输出，长度为图像宽度
+     */
+    static void gradientRow(int[][] matrix, int y, double[] gRow) {
+        int height = matrix.length;
+        int width = matrix[0].length;
+        if (y == 0 || y == height - 1 || width < 3) {
+            for (int x = 0; x < width; x++) {
+                gRow[x] = borderMagnitude(matrix, x, y);
+            }
+            return;
+        }
+        int[] up = matrix[y - 1];
+        int[] mid = matrix[y];
+        int[] down = matrix[y + 1];
+        gRow[0] = borderMagnitude(matrix, 0, y);
+        int u0 = up[0], u1 = up[1], m0 = mid[0], m1 = mid[1], d0 = down[0], d1 = down[1];
+        for (int x = 1; x < width - 1; x++) {
+            int u2 = up[x + 1], m2 = mid[x + 1], d2 = down[x + 1];
+            int Ix = (u2 - u0) + 2 * (m2 - m0) + (d2 - d0);
+            int Iy = (d0 + 2 * d1 + d2) - (u0 + 2 * u1 + u2);
+            gRow[x] = Math.sqrt(Ix * Ix + Iy * Iy); // 与逐像素计算相同，平方和按int计算
+            u0 = u1; u1 = u2;
+            m0 = m1; m1 = m2;
+            d0 = d1; d1 = d2;
+        }
+        gRow[width - 1] = borderMagnitude(matrix, width - 1, y);
+    }
+
+    private static double borderMagnitude(int[][] matrix, int x, int y) {
+        int Ix = findIx(matrix, x, y);
+        int Iy = findIy(matrix, x, y);
+        return Math.sqrt(Ix * Ix + Iy * Iy);
+    }
+
+    //=======================一次遍历计算全部特征================================
+
+    /**
+     * 一次遍历同时得到的全部逐像素特征，矩阵都是 [y][x]（与输入矩阵的下标顺序相同）
+     */
+    public static final class Features {
+        private final float[][] ix;
+        private final float[][] iy;
+        private final double[][] magnitude;
+        private final double[][] direction;
+        private final double[][] laplacian;
+        private final boolean[][] zeroCrossing;
+
+        Features(int height, int width) {
+            this.ix = new float[height][width];
+            this.iy = new float[height][width];
+            this.magnitude = new double[height][width];
+            this.direction = new double[height][width];
+            this.laplacian = new double[height][width];
+            this.zeroCrossing = new boolean[height][width];
+        }
+
+        public float[][] getIx() {
+            return ix;
+        }
+
+        public float[][] getIy() {
+            return iy;
+        }
+
+        /**
+         * @return 梯度值，与 {@link SimdFeatures#gradient} 相同
+         */
+        public double[][] getMagnitude() {
+            return magnitude;
+        }
+
+        /**
+         * @return 梯度方向（弧度），与 {@link #calculateGradientDirections} 相同
+         */
+        public double[][] getDirection() {
+            return direction;
+        }
+
+        /**
+         * @return 拉普拉斯值，边框一圈为0，与 {@link #findLaplacian} 相同
+         */
+        public double[][] getLaplacian() {
+            return laplacian;
+        }
+
+        /**
+         * @return 过零点，与 {@link #computeZeroCrossing} 相同
+         */
+        public boolean[][] getZeroCrossing() {
+            return zeroCrossing;
+        }
+    }
+
+    /**
+     * 一次遍历计算Ix、Iy、梯度值、梯度方向、拉普拉斯值与过零点，按行条带并行（{@link FeaturePipeline#forEachStrip}）。
+     * Sobel、梯度值与拉普拉斯由 {@link SimdFeatures} 的float内核计算（有Vector API时向量化），边界按零填充；
+     * 与 {@link #findIx}、{@link #findGMatrix} 的int实现相比，Ix*Ix+Iy*Iy不会溢出。
+     * 只需要其中一项时用 {@link #findLaplacian}、{@link #computeZeroCrossing} 或 {@link #calculateGradientDirections}，
+     * 它们不分配整套特征
+     * @param matrix 像素矩阵
+     * @return 全部特征
+     */
+    public static Features computeFeatures(int[][] matrix) {
+        Features features = new Features(matrix.length, matrix[0].length);
+        FeaturePipeline.forEachStrip(matrix.length, (from, to) -> featureStrip(matrix, from, to, features));
+        return features;
+    }
+
+    /**
+     * 计算 [from, to) 行的全部特征：由 {@link #featureBlock} 一次展开算出Sobel与拉普拉斯，
+     * 再逐行写出梯度值、方向与过零点，各条带可以并行处理
+     */
+    static void featureStrip(int[][] matrix, int from, int to, Features out) {
+        if (to <= from) return;
+        FeatureBlock block = featureBlock(matrix, from, to);
+        float[] magnitude = new float[block.ix.length];
+        SimdFeatures.magnitude(block.ix, block.iy, magnitude);
+
+        for (int y = from; y < to; y++) {
+            int base = block.base(y);
+            float[] ixRow = out.ix[y];
+            float[] iyRow = out.iy[y];
+            double[] magnitudeRow = out.magnitude[y];
+            double[] directionRow = out.direction[y];
+            double[] laplacianRow = out.laplacian[y];
+            for (int x = 0; x < block.cols; x++) {
+                int i = base + x;
+                ixRow[x] = block.ix[i];
+                iyRow[x] = block.iy[i];
+                magnitudeRow[x] = magnitude[i];
+                directionRow[x] = Math.atan2(block.iy[i], block.ix[i]);
+                laplacianRow[x] = block.laplacian[i];
+            }
+            block.zeroCrossingRow(y, out.zeroCrossing[y]);
+        }
+    }
+
+    /**
+     * 展开 [from, to) 行连同上下各两行halo，在同一份缓冲区上算出Sobel与拉普拉斯：
+     * Sobel需要上下各一行邻域，过零点还需要上下相邻行的拉普拉斯值，halo行的结果只作为邻域使用。
+     * 完整特征（{@link #featureStrip}）与紧凑存储的方向和过零点（{@link CompactFeatureStore#compute}）都由它计算
+     */
+    static FeatureBlock featureBlock(int[][] matrix, int from, int to) {
+        int top = Math.max(0, from - 2);
+        int bottom = Math.min(matrix.length, to + 2);
+        int rows = bottom - top;
+        int cols = matrix[0].length;
+        float[] src = SimdFeatures.flatten(matrix, top, bottom);
+        float[] ix = new float[src.length];
+        float[] iy = new float[src.length];
+        SimdFeatures.sobel(src, rows, cols, ix, iy);
+        return new FeatureBlock(matrix.length, top, cols, ix, iy, SimdFeatures.laplacian(src, rows, cols));
+    }
+
+    /**
+     * {@link #featureBlock} 的结果：行优先的缓冲区，第0行是图像的第top行
+     */
+    static final class FeatureBlock {
+        final int height;   // 整幅图像的行数
+        final int top;
+        final int cols;
+        final float[] ix;
+        final float[] iy;
+        final float[] laplacian;
+
+        FeatureBlock(int height, int top, int cols, float[] ix, float[] iy, float[] laplacian) {
+            this.height = height;
+            this.top = top;
+            this.cols = cols;
+            this.ix = ix;
+            this.iy = iy;
+            this.laplacian = laplacian;
+        }
+
+        /**
+         * @return 图像第y行首元素在缓冲区中的下标
+         */
+        int base(int y) {
+            return (y - top) * cols;
+        }
+
+        /**
+         * 把图像第y行的过零点写入out；边框一圈不是过零点，out中这些位置保持不变
+         */
+        void zeroCrossingRow(int y, boolean[] out) {
+            if (y > 0 && y < height - 1) {
+                ProcessMatrix.zeroCrossingRow(laplacian, cols, base(y), out);
+            }
+        }
+    }
+
     /**
      * 把G矩阵进行归一化，得出归一化处理后的f_G值矩阵，公式为f_G = (G_max - G) / G_max
      * @param gMatrix G矩阵
@@ -232,17 +409,20 @@ public class ProcessMatrix {
         return gradientCache.get(key);
     }
 
+    /**
+     * 梯度方向 atan2(Iy, Ix)（弧度）；只做Sobel，不经过 {@link #computeFeatures}
+     */
     public static double[][] calculateGradientDirections(int[][] matrix) {
-        int height = matrix.length;
-        int width = matrix[0].length;
-        double[][] directions = new double[height][width];
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int Ix = findIx(matrix, x, y);
-                int Iy = findIy(matrix, x, y);
-                // 计算梯度方向角度（弧度），范围[-π, π]
-                directions[y][x] = Math.atan2(Iy, Ix);
+        int rows = matrix.length;
+        int cols = matrix[0].length;
+        float[] src = SimdFeatures.flatten(matrix);
+        float[] ix = new float[src.length];
+        float[] iy = new float[src.length];
+        SimdFeatures.sobel(src, rows, cols, ix, iy);
+        double[][] directions = new double[rows][cols];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                directions[y][x] = Math.atan2(iy[y * cols + x], ix[y * cols + x]);
             }
         }
         return directions;
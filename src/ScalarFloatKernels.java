@@ -0,0 +1,140 @@
+package src;
+
+import java.util.Arrays;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote {@link FloatKernels} 的标量实现，Vector API不可用时使用。
+ * 逐像素的公式也供向量实现处理边框与行尾剩余的像素，保证两种实现的结果逐位相同。
+ */
+final class ScalarFloatKernels implements FloatKernels {
+
+    @Override
+    public void sobel(float[] src, int rows, int cols, float[] ix, float[] iy) {
+        sobelBorder(src, rows, cols, ix, iy);
+        for (int y = 1; y < rows - 1; y++) {
+            for (int x = 1; x < cols - 1; x++) {
+                sobelInterior(src, cols, y, x, ix, iy);
+            }
+        }
+    }
+
+    @Override
+    public void laplacian(float[] src, int rows, int cols, float[] out) {
+        laplacianBorder(rows, cols, out);
+        for (int y = 1; y < rows - 1; y++) {
+            for (int x = 1; x < cols - 1; x++) {
+                laplacianInterior(src, cols, y, x, out);
+            }
+        }
+    }
+
+    @Override
+    public void magnitude(float[] ix, float[] iy, float[] out) {
+        magnitudeRange(ix, iy, out, 0, out.length);
+    }
+
+    @Override
+    public float max(float[] values, int from, int to) {
+        return maxRange(values, from, to, Float.NEGATIVE_INFINITY);
+    }
+
+    @Override
+    public void normalize(float[] g, float maxG, float[] out, int from, int to) {
+        normalizeRange(g, maxG, out, from, to);
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    //=======================逐像素公式，向量实现的每个通道执行相同的运算顺序===============
+
+    // 内部像素的Sobel，不做边界检查。u/m/d为上/中/下行，0/1/2为左/中/右列
+    static void sobelInterior(float[] src, int cols, int y, int x, float[] ix, float[] iy) {
+        int mid = y * cols + x;
+        int up = mid - cols;
+        int down = mid + cols;
+        float u0 = src[up - 1], u1 = src[up], u2 = src[up + 1];
+        float m0 = src[mid - 1], m2 = src[mid + 1];
+        float d0 = src[down - 1], d1 = src[down], d2 = src[down + 1];
+        ix[mid] = sobelX(u0, u2, m0, m2, d0, d2);
+        iy[mid] = sobelY(u0, u1, u2, d0, d1, d2);
+    }
+
+    static float sobelX(float u0, float u2, float m0, float m2, float d0, float d2) {
+        return (u2 - u0) + (m2 - m0) * 2f + (d2 - d0);
+    }
+
+    static float sobelY(float u0, float u1, float u2, float d0, float d1, float d2) {
+        return (d0 + d1 * 2f + d2) - (u0 + u1 * 2f + u2);
+    }
+
+    // 边框一圈的Sobel，图像外的像素按0处理
+    static void sobelBorder(float[] src, int rows, int cols, float[] ix, float[] iy) {
+        for (int y = 0; y < rows; y++) {
+            if (y == 0 || y == rows - 1) {
+                for (int x = 0; x < cols; x++) sobelPadded(src, rows, cols, y, x, ix, iy);
+            } else {
+                sobelPadded(src, rows, cols, y, 0, ix, iy);
+                if (cols > 1) sobelPadded(src, rows, cols, y, cols - 1, ix, iy);
+            }
+        }
+    }
+
+    private static void sobelPadded(float[] src, int rows, int cols, int y, int x, float[] ix, float[] iy) {
+        float u0 = at(src, rows, cols, y - 1, x - 1), u1 = at(src, rows, cols, y - 1, x), u2 = at(src, rows, cols, y - 1, x + 1);
+        float m0 = at(src, rows, cols, y, x - 1), m2 = at(src, rows, cols, y, x + 1);
+        float d0 = at(src, rows, cols, y + 1, x - 1), d1 = at(src, rows, cols, y + 1, x), d2 = at(src, rows, cols, y + 1, x + 1);
+        ix[y * cols + x] = sobelX(u0, u2, m0, m2, d0, d2);
+        iy[y * cols + x] = sobelY(u0, u1, u2, d0, d1, d2);
+    }
+
+    private static float at(float[] src, int rows, int cols, int y, int x) {
+        return y >= 0 && y < rows && x >= 0 && x < cols ? src[y * cols + x] : 0f;
+    }
+
+    static void laplacianInterior(float[] src, int cols, int y, int x, float[] out) {
+        int mid = y * cols + x;
+        out[mid] = laplacian(src[mid - cols], src[mid + cols], src[mid - 1], src[mid + 1], src[mid]);
+    }
+
+    static float laplacian(float up, float down, float left, float right, float center) {
+        return up + down + left + right - center * 4f;
+    }
+
+    // 边框一圈的拉普拉斯值为0
+    static void laplacianBorder(int rows, int cols, float[] out) {
+        for (int y = 0; y < rows; y++) {
+            if (y == 0 || y == rows - 1) {
+                Arrays.fill(out, y * cols, y * cols + cols, 0f);
+            } else {
+                out[y * cols] = 0f;
+                out[y * cols + cols - 1] = 0f;
+            }
+        }
+    }
+
+    static void magnitudeRange(float[] ix, float[] iy, float[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float gx = ix[i];
+            float gy = iy[i];
+            out[i] = (float) Math.sqrt(gx * gx + gy * gy); // float平方和，开方结果舍入到float，与逐通道的float开方相同
+        }
+    }
+
+    static float maxRange(float[] values, int from, int to, float max) {
+        for (int i = from; i < to; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    static void normalizeRange(float[] g, float maxG, float[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = 1f - g[i] / maxG;
+        }
+    }
+}
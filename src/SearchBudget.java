@@ -0,0 +1,61 @@
+package src;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 一次搜索允许花费的预算：墙钟时间或结算像素数，二者任一用完即视为超出预算。
+ * 供 {@link AnytimeSearch} 决定何时先交出部分路径。
+ */
+public final class SearchBudget {
+
+    public static final SearchBudget UNLIMITED = new SearchBudget(Long.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final long nanos;
+    private final int nodes;
+
+    private SearchBudget(long nanos, int nodes) {
+        if (nanos <= 0 || nodes <= 0) {
+            throw new IllegalArgumentException("Invalid search budget");
+        }
+        this.nanos = nanos;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @param millis 时间预算（毫秒），例如一帧8毫秒
+     */
+    public static SearchBudget ofMillis(long millis) {
+        return new SearchBudget(millis * 1_000_000L, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param nodes 结算像素数预算，与机器快慢无关，结果可复现
+     */
+    public static SearchBudget ofNodes(int nodes) {
+        return new SearchBudget(Long.MAX_VALUE, nodes);
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @param startNanos 搜索开始时的 {@link System#nanoTime()}
+     * @param settled 已结算的像素数
+     * @return 是否已超出预算
+     */
+    public boolean isExceeded(long startNanos, int settled) {
+        return settled >= nodes || (nanos != Long.MAX_VALUE && System.nanoTime() - startNanos >= nanos);
+    }
+
+    @Override
+    public String toString() {
+        if (this == UNLIMITED) return "SearchBudget[unlimited]";
+        return nodes != Integer.MAX_VALUE ? "SearchBudget[" + nodes + " nodes]"
+                : "SearchBudget[" + nanos / 1_000_000.0 + " ms]";
+    }
+}
@@ -0,0 +1,92 @@
+package src;
+
+import java.util.Collections;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 可续算的单源最短路会话。
+ * <p>同一个种子点的多次查询共享距离数组、父节点数组和未结算的边界（堆）：
+ * 目标已经结算时直接回溯父指针返回；否则从上次停下的地方继续扩展，直到目标结算为止。
+ * 光标在种子点附近来回移动时，后续查询几乎不再产生新的扩展。</p>
+ * <p>会话持有整图大小的数组与所属的fg矩阵，由调用者按图像、按种子点持有，换图或换种子点后即丢弃，不做全局缓存。
+ * 会话不是线程安全的，同一时刻只能由一个线程使用。
+ * 坐标约定与 {@link ComputeMinCostPath#findShortestPath(FeatureMap, SeedPoint, SeedPoint)} 一致。</p>
+ */
+public class SearchSession {
+
+    private final FeatureMap fgMatrix;
+    private final SeedPoint seed;
+    private final PixelDijkstra search;
+    private final boolean validSeed;
+
+    private int queries = 0;      // 查询次数
+    private int immediateHits = 0; // 无需扩展即可回答的查询次数
+
+    public SearchSession(FeatureMap fgMatrix, SeedPoint seed) {
+        if (fgMatrix == null || fgMatrix.getRows() == 0 || fgMatrix.getCols() == 0) {
+            throw new IllegalArgumentException("Invalid gradient matrix");
+        }
+        this.fgMatrix = fgMatrix;
+        this.seed = seed;
+        this.search = new PixelDijkstra(fgMatrix);
+        this.validSeed = search.inBounds(seed.getX(), seed.getY());
+        if (validSeed) {
+            search.reset(seed.getX(), seed.getY());
+        }
+    }
+
+    /**
+     * 会话是否属于给定的fg矩阵与种子点
+     */
+    public boolean isFor(FeatureMap fgMatrix, SeedPoint seed) {
+        return this.fgMatrix == fgMatrix && this.seed.getX() == seed.getX() && this.seed.getY() == seed.getY();
+    }
+
+    /**
+     * 目标是否已经结算（可以立即回答）
+     */
+    public boolean isSettled(SeedPoint target) {
+        return validSeed && search.inBounds(target.getX(), target.getY())
+                && search.isSettled(search.index(target.getX(), target.getY()));
+    }
+
+    /**
+     * 查询种子点到目标的最短路径，必要时从上次的边界继续扩展
+     * @param target 目标点
+     * @return 最短路径
+     */
+    public ComputeMinCostPath.PathResult pathTo(SeedPoint target) {
+        queries++;
+        if (!validSeed || !search.inBounds(target.getX(), target.getY())) {
+            return new ComputeMinCostPath.PathResult(-1, Collections.emptyList());
+        }
+        int index = search.index(target.getX(), target.getY());
+        if (search.isSettled(index)) {
+            immediateHits++;
+        } else if (!search.expandUntil(index)) {
+            return new ComputeMinCostPath.PathResult(-1, Collections.emptyList());
+        }
+        return search.pathTo(index);
+    }
+
+    public SeedPoint getSeed() {
+        return seed;
+    }
+
+    public FeatureMap getFgMatrix() {
+        return fgMatrix;
+    }
+
+    public int getSettledCount() {
+        return search.getSettledCount();
+    }
+
+    public int getQueries() {
+        return queries;
+    }
+
+    public int getImmediateHits() {
+        return immediateHits;
+    }
+}
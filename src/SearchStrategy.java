@@ -0,0 +1,14 @@
+package src;
+
+/**
+ * 最短路搜索策略，供 {@link ComputeMinCostPath#findShortestPath} 选择
+ */
+public enum SearchStrategy {
+    DIJKSTRA, // 带下标堆的Dijkstra，精确
+    BUCKET,   // 边权量化为整数后用Dial桶队列，O(1)均摊入队出队，结果带量化误差上界
+    ASTAR,    // 以八方向距离为启发函数的A*，只朝终点方向扩展，终点靠近起点时结算的像素少得多
+    BIDIRECTIONAL, // 起点终点同时扩展的双向Dijkstra，两侧各用一个线程，适合种子点之间的长路径段
+    WINDOWED, // 限制在起点终点包围盒加边距的窗口内做A*，必要时自动扩大窗口，内存与耗时随窗口而非图像大小增长
+    HIERARCHICAL, // 在降采样金字塔上由粗到细搜索，细层只搜索粗层路径附近的走廊，结果近似，适合超大图像的交互
+    EXACT     // 在（像素，入射方向）展开的状态图上做A*，计入转向惩罚后仍是真正的最优路径
+}
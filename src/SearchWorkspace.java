@@ -0,0 +1,228 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote {@link PixelDijkstra}、{@link DirectionalDijkstra}、{@link BucketDijkstra} 与 {@link LiveWireTree} 使用的一组可复用缓冲区。
+ * <p>缓冲区的容量可以大于当前搜索窗口，同一个线程依次搜索多个窗口时只在窗口变大时重新分配。
+ * 同一时刻只能被一个搜索使用，因此每个线程通过 {@link #current()} 取得自己的一组。</p>
+ * <p>每个像素带一个代号（epoch）戳：戳等于本次搜索的代号表示已到达，代号加一表示已结算，
+ * 更小的值都是以前搜索留下的，视为未访问。开始新的搜索只需把代号加二，不必清空整个数组。</p>
+ * <p>{@link DirectionalDijkstra} 的（像素，入射方向）状态缓冲区与 {@link BucketDijkstra} 的桶链表第一次用到时才分配，
+ * 与逐像素缓冲区共用戳数组。最短路径树的结算序号数组同样按需分配，序号按树依次递增（见 {@link #nextSettleBase}），
+ * 换一棵树也不必清空。</p>
+ * <p>关闭图像时调用 {@link #releaseAll()}，所有线程的缓冲区都缩回空数组，下一次搜索按新图像重新分配。</p>
+ */
+public class SearchWorkspace {
+
+    // 每个线程的槽位数：0号供普通搜索，1号供双向搜索的反向一侧
+    static final int SLOTS = 2;
+
+    private static final ThreadLocal<SearchWorkspace[]> POOL = ThreadLocal.withInitial(() -> {
+        SearchWorkspace[] workspaces = new SearchWorkspace[SLOTS];
+        for (int i = 0; i < SLOTS; i++) workspaces[i] = new SearchWorkspace(0);
+        return workspaces;
+    });
+
+    // 所有存活的缓冲区，线程结束后随之回收
+    private static final Set<SearchWorkspace> ALL = Collections.newSetFromMap(new WeakHashMap<>());
+
+    double[] distances;
+    int[] parents;
+    byte[] inDirections;
+    int[] stamps;
+    IndexedHeap heap;
+    // 展开状态搜索的缓冲区：每像素8个状态的float距离与状态字节，以及每像素的最短距离
+    float[] stateDistances = new float[0];
+    byte[] states = new byte[0];
+    float[] pixelDistances = new float[0];
+    // 桶队列搜索的缓冲区：桶内双向链表与量化距离
+    int[] bucketNext = new int[0];
+    int[] bucketPrev = new int[0];
+    int[] bucketDistances = new int[0];
+    // 最短路径树的结算序号，不超过本树起始序号的值都是以前的树留下的
+    int[] settleOrder = new int[0];
+    private int settleBase = 0;
+    private int epoch = 0;
+
+    public SearchWorkspace(int capacity) {
+        allocate(capacity);
+        synchronized (ALL) {
+            ALL.add(this);
+        }
+    }
+
+    /**
+     * @return 当前线程的0号缓冲区
+     */
+    public static SearchWorkspace current() {
+        return current(0);
+    }
+
+    /**
+     * @param slot 槽位，同时使用的两个搜索（如双向搜索的两侧）必须取不同的槽位
+     * @return 当前线程指定槽位的缓冲区
+     */
+    public static SearchWorkspace current(int slot) {
+        return POOL.get()[slot];
+    }
+
+    /**
+     * 把所有线程的缓冲区缩回空数组。正在进行的搜索仍持有旧数组，可以正常结束
+     */
+    public static void releaseAll() {
+        List<SearchWorkspace> workspaces;
+        synchronized (ALL) {
+            workspaces = new ArrayList<>(ALL);
+        }
+        for (SearchWorkspace workspace : workspaces) {
+            workspace.release();
+        }
+    }
+
+    /**
+     * @return 所有线程的缓冲区当前占用的字节数
+     */
+    public static long totalBytes() {
+        List<SearchWorkspace> workspaces;
+        synchronized (ALL) {
+            workspaces = new ArrayList<>(ALL);
+        }
+        long bytes = 0;
+        for (SearchWorkspace workspace : workspaces) {
+            bytes += workspace.byteSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * 保证容量不小于size，不足时按1.5倍扩容，原有内容不保留
+     * @param size 需要的像素数
+     * @return this
+     */
+    public synchronized SearchWorkspace ensureCapacity(int size) {
+        if (size > capacity()) {
+            allocate(Math.max(size, capacity() + (capacity() >> 1)));
+        }
+        return this;
+    }
+
+    /**
+     * 保证逐像素缓冲区与展开状态缓冲区都能容纳pixels个像素，状态缓冲区按需要的大小分配
+     * @throws IllegalArgumentException 状态数超出int范围
+     */
+    public synchronized SearchWorkspace ensureStateCapacity(int pixels) {
+        ensureCapacity(pixels);
+        if (pixels > pixelDistances.length) {
+            int stateCount;
+            try {
+                stateCount = Math.multiplyExact(pixels, CostTable.DIRECTION_COUNT);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Image too large for the direction-state search: " + pixels + " pixels", e);
+            }
+            stateDistances = new float[stateCount];
+            states = new byte[stateCount];
+            pixelDistances = new float[pixels];
+        }
+        return this;
+    }
+
+    /**
+     * 保证逐像素缓冲区与桶队列缓冲区都能容纳pixels个像素，桶队列缓冲区按需要的大小分配
+     */
+    public synchronized SearchWorkspace ensureBucketCapacity(int pixels) {
+        ensureCapacity(pixels);
+        if (pixels > bucketDistances.length) {
+            bucketNext = new int[pixels];
+            bucketPrev = new int[pixels];
+            bucketDistances = new int[pixels];
+        }
+        return this;
+    }
+
+    /**
+     * 保证逐像素缓冲区与结算序号数组都能容纳pixels个像素，结算序号数组按需要的大小分配
+     */
+    public synchronized SearchWorkspace ensureSettleCapacity(int pixels) {
+        ensureCapacity(pixels);
+        if (pixels > settleOrder.length) {
+            settleOrder = new int[pixels];
+        }
+        return this;
+    }
+
+    /**
+     * 开始一棵新的最短路径树，为它预留pixels个结算序号。
+     * 序号用尽时把结算序号数组清零后从头开始，树已经绑定的数组（可能是release之前的旧数组）也一并清零
+     * @param pixels 树最多结算的像素数
+     * @param boundOrder 树正在使用的结算序号数组
+     * @return 本树的起始序号，第k个结算的像素序号为该值加k
+     */
+    synchronized int nextSettleBase(int pixels, int[] boundOrder) {
+        if (settleBase > Integer.MAX_VALUE - pixels) {
+            Arrays.fill(settleOrder, 0);
+            if (boundOrder != settleOrder) Arrays.fill(boundOrder, 0);
+            settleBase = 0;
+        }
+        int base = settleBase;
+        settleBase += pixels;
+        return base;
+    }
+
+    /**
+     * 开始一次新的搜索，此前所有像素的戳都小于返回的代号。
+     * 代号用尽时把戳清零后从头开始，搜索已经绑定的戳数组（可能是release之前的旧数组）也一并清零
+     * @param boundStamps 搜索正在使用的戳数组
+     * @return 本次搜索的代号，已到达为该值，已结算为该值加一
+     */
+    synchronized int nextEpoch(int[] boundStamps) {
+        if (epoch >= Integer.MAX_VALUE - 2) {
+            Arrays.fill(stamps, 0);
+            if (boundStamps != stamps) Arrays.fill(boundStamps, 0);
+            epoch = 0;
+        }
+        epoch += 2;
+        return epoch;
+    }
+
+    public synchronized int capacity() {
+        return distances.length;
+    }
+
+    /**
+     * @return 缓冲区占用的字节数
+     */
+    public synchronized long byteSize() {
+        // 距离8字节、父节点4字节、方向1字节、戳4字节，堆中的槽位、键值、位置共16字节；
+        // 展开状态每个5字节（float距离与状态字节），另有每像素4字节的最短距离；桶队列每像素12字节；结算序号每像素4字节
+        return (long) capacity() * (Double.BYTES + Integer.BYTES + Byte.BYTES + Integer.BYTES + 16)
+                + (long) states.length * (Float.BYTES + Byte.BYTES) + (long) pixelDistances.length * Float.BYTES
+                + (long) bucketDistances.length * 3 * Integer.BYTES + (long) settleOrder.length * Integer.BYTES;
+    }
+
+    private synchronized void release() {
+        allocate(0);
+        stateDistances = new float[0];
+        states = new byte[0];
+        pixelDistances = new float[0];
+        bucketNext = new int[0];
+        bucketPrev = new int[0];
+        bucketDistances = new int[0];
+        settleOrder = new int[0];
+    }
+
+    private void allocate(int capacity) {
+        distances = new double[capacity];
+        parents = new int[capacity];
+        inDirections = new byte[capacity];
+        stamps = new int[capacity];
+        heap = new IndexedHeap(capacity);
+    }
+}
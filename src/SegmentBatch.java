@@ -0,0 +1,60 @@
+package src;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 并行计算套索上所有种子点之间的路径段。
+ * <p>各段互不依赖，按段下标分发到并行车道（{@link TaskLanes.Lane#PARALLEL}，并行度为CPU核数）上，
+ * 每个工作线程使用自己的 {@link SearchWorkspace}，依次处理多段时不再重复分配；
+ * 结果按段的顺序拼回，与逐段串行计算的顺序一致。</p>
+ * <p>每段使用窗口搜索（{@link SearchStrategy#WINDOWED}），结果与在整幅图像上做A*一致，
+ * 而缓冲区只随窗口大小增长。</p>
+ */
+public class SegmentBatch {
+
+    /**
+     * 计算 seeds[i-1] 到 seeds[i] 的所有路径段，先查缓存，未命中时计算并把起点的最短路径树放入缓存
+     * @param features 特征快照，所有段都在这一份快照上计算
+     * @param seeds 按顺序排列的种子点
+     * @param cache 最短路径树缓存，可为null
+     * @return 第i个元素为第i段（seeds[i] 到 seeds[i+1]）的路径，坐标为 {row, col}；不可达时为空列表
+     */
+    public static List<List<int[]>> computeAll(FeatureSnapshot features, List<SeedPoint> seeds, TreeCache cache) {
+        int segmentCount = Math.max(0, seeds.size() - 1);
+        if (segmentCount == 0) return Collections.emptyList();
+        // 并行流在执行它的ForkJoin池中分发，即并行车道
+        return TaskLanes.shared().invoke(ForkJoinTask.adapt(() -> IntStream.range(0, segmentCount)
+                .parallel()
+                .mapToObj(i -> computeSegment(features, seeds.get(i), seeds.get(i + 1), cache))
+                .toList()));
+    }
+
+    /**
+     * 计算一段路径：先查缓存，未命中时做窗口搜索，并把起点的最短路径树放入缓存
+     * @param cache 最短路径树缓存，可为null
+     * @return 路径，坐标为 {row, col}；不可达时为空列表
+     */
+    static List<int[]> computeSegment(FeatureSnapshot features, SeedPoint start, SeedPoint end, TreeCache cache) {
+        FeatureMap fgMatrix = features.getFgMatrix();
+        int rows = fgMatrix.getRows();
+        int cols = fgMatrix.getCols();
+        if (start.getX() < 0 || start.getX() >= rows || start.getY() < 0 || start.getY() >= cols ||
+                end.getX() < 0 || end.getX() >= rows || end.getY() < 0 || end.getY() >= cols) {
+            return Collections.emptyList();
+        }
+        if (cache != null) {
+            ComputeMinCostPath.PathResult cached = cache.lookup(features, start, end);
+            if (cached != null) return cached.getPath();
+        }
+        PixelDijkstra search = ComputeMinCostPath.windowedSearch(fgMatrix, start.getX(), start.getY(),
+                end.getX(), end.getY(), SearchWorkspace.current());
+        if (search == null) return Collections.emptyList();
+        if (cache != null) cache.put(features, CompactTree.of(search));
+        return search.pathTo(search.index(end.getX(), end.getY())).getPath();
+    }
+}
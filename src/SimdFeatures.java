@@ -0,0 +1,140 @@
+package src;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 在行优先的一维float缓冲区上计算Sobel、拉普拉斯、梯度值与fg归一化，运行时选择向量或标量实现。
+ * <p>启动参数带 {@code --add-modules jdk.incubator.vector} 时使用向量实现（取平台首选宽度），
+ * 否则使用标量实现；两者结果逐位相同，调用方不必关心用的是哪一个。</p>
+ * <p>特征流水线（{@link FeaturePipeline#findGMatrix}、{@link FeaturePipeline#findFgMatrix}）
+ * 与 {@link ProcessMatrix#computeFeatures} 都经由这里计算。它们按行条带调用内核：
+ * 条带连同上下的halo行一起展开（{@link #flatten(int[][], int, int)}），halo行只作为邻域、结果丢弃，
+ * 因此条带拼出的结果与在整幅图像上调用内核逐位相同。</p>
+ * <p>与 {@link ProcessMatrix#findGMatrix} 等逐像素的int实现的区别：这里按float计算，Ix*Ix+Iy*Iy不会像int那样溢出，
+ * 结果与double版本在舍入上也可能略有差别。</p>
+ */
+public class SimdFeatures {
+
+    private static final FloatKernels KERNELS = load();
+
+    // Vector API可用时加载向量实现，否则退回标量实现；VectorFloatKernels只通过反射引用，缺少模块时不会被链接
+    private static FloatKernels load() {
+        try {
+            Class.forName("jdk.incubator.vector.FloatVector");
+            return (FloatKernels) Class.forName("src.VectorFloatKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarFloatKernels();
+        }
+    }
+
+    /**
+     * @return 当前使用的实现名称，例如 "vector-512" 或 "scalar"
+     */
+    public static String implementation() {
+        return KERNELS.name();
+    }
+
+    // 当前使用的内核，供基准测试与标量实现比较
+    static FloatKernels kernels() {
+        return KERNELS;
+    }
+
+    public static boolean isVectorized() {
+        return !(KERNELS instanceof ScalarFloatKernels);
+    }
+
+    /**
+     * 把矩阵按行展开为一维float缓冲区，行数为 matrix.length，列数为 matrix[0].length。
+     * RGB矩阵的值小于2^24，转为float没有误差
+     */
+    public static float[] flatten(int[][] matrix) {
+        return flatten(matrix, 0, matrix.length);
+    }
+
+    /**
+     * 只展开第 [from, to) 行，缓冲区的第0行是矩阵的第from行
+     */
+    public static float[] flatten(int[][] matrix, int from, int to) {
+        int cols = matrix[0].length;
+        float[] flat = new float[Math.multiplyExact(to - from, cols)];
+        for (int y = from; y < to; y++) {
+            int[] row = matrix[y];
+            int base = (y - from) * cols;
+            for (int x = 0; x < cols; x++) {
+                flat[base + x] = row[x];
+            }
+        }
+        return flat;
+    }
+
+    /**
+     * Sobel梯度
+     * @param ix 输出，列方向梯度
+     * @param iy 输出，行方向梯度
+     */
+    public static void sobel(float[] src, int rows, int cols, float[] ix, float[] iy) {
+        KERNELS.sobel(src, rows, cols, ix, iy);
+    }
+
+    /**
+     * 梯度值 sqrt(ix * ix + iy * iy)，out可以就是ix或iy
+     */
+    public static void magnitude(float[] ix, float[] iy, float[] out) {
+        KERNELS.magnitude(ix, iy, out);
+    }
+
+    /**
+     * 四邻域拉普拉斯，边框一圈为0
+     */
+    public static float[] laplacian(float[] src, int rows, int cols) {
+        float[] out = new float[rows * cols];
+        KERNELS.laplacian(src, rows, cols, out);
+        return out;
+    }
+
+    /**
+     * 梯度值矩阵：Sobel后求 sqrt(ix * ix + iy * iy)
+     */
+    public static float[] gradient(float[] src, int rows, int cols) {
+        float[] ix = new float[rows * cols];
+        float[] iy = new float[rows * cols];
+        KERNELS.sobel(src, rows, cols, ix, iy);
+        KERNELS.magnitude(ix, iy, ix); // 逐元素计算，可以直接写回ix
+        return ix;
+    }
+
+    /**
+     * 矩阵第 [from, to) 行的梯度值，写入out中从offset开始的 (to - from) * cols 个元素。
+     * 条带与上下各一行halo一起展开，Sobel只在这块缓冲区上计算，各条带可以并行调用
+     */
+    public static void gradientRows(int[][] matrix, int from, int to, float[] out, int offset) {
+        int cols = matrix[0].length;
+        int top = Math.max(0, from - 1);
+        int bottom = Math.min(matrix.length, to + 1);
+        float[] g = gradient(flatten(matrix, top, bottom), bottom - top, cols);
+        System.arraycopy(g, (from - top) * cols, out, offset, (to - from) * cols);
+    }
+
+    /**
+     * fg归一化：fg = 1 - g / maxG，maxG为全图最大梯度
+     */
+    public static float[] normalize(float[] g) {
+        float[] fg = new float[g.length];
+        KERNELS.normalize(g, KERNELS.max(g, 0, g.length), fg, 0, g.length);
+        return fg;
+    }
+
+    /**
+     * @return values[from, to) 的最大值（NaN会传播），区间为空时为负无穷
+     */
+    public static float max(float[] values, int from, int to) {
+        return KERNELS.max(values, from, to);
+    }
+
+    /**
+     * 对 [from, to) 做fg归一化 1 - g / maxG，out可以就是g
+     */
+    public static void normalize(float[] g, float maxG, float[] out, int from, int to) {
+        KERNELS.normalize(g, maxG, out, from, to);
+    }
+}
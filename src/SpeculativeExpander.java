@@ -0,0 +1,278 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 利用空闲核心做的推测性预扩展。
+ * <p>两类推测工作都在推测车道（{@link TaskLanes.Lane#SPECULATIVE}）上以最低优先级进行，交互搜索进行时让出CPU：</p>
+ * <ul>
+ *     <li>轨迹预扩展：按光标速度外推出它即将到达的位置，从当前种子点朝该位置做窗口A*
+ *     （{@link ComputeMinCostPath#windowedSearch}），结算过的像素距离都是精确的，
+ *     所以预测区域内的任何目标都可以直接回溯出路径，见 {@link #lookup}。
+ *     缓冲区只有两组随窗口大小的 {@link SearchWorkspace}，一组供读取、一组供下一次推测，二者轮换；</li>
+ *     <li>候选种子点：光标附近梯度最强的几个像素最可能是下一次点击（吸附）的位置，
+ *     光标停留 {@link #CANDIDATE_DEBOUNCE_MILLIS} 毫秒后才为它们建立最短路径树，点击后由 {@link #adoptTree} 直接接管，
+ *     新种子点立即可用。候选树覆盖整幅图像，像素数超过 {@link #CANDIDATE_TREE_PIXELS} 的图像不建。</li>
+ * </ul>
+ * <p>每次真实的鼠标输入都会中断正在进行的推测并按新的预测重新开始；
+ * 不再是候选的树会被取消，点击时未被采用的树全部丢弃。</p>
+ * <p>界面线程调用的 {@link #speculate} 只在调度锁下替换任务，不等待推测结果的锁；
+ * 候选树在锁外创建，只在锁内登记，查询与接管不会等待建树。</p>
+ */
+public class SpeculativeExpander {
+
+    static final int MAX_CANDIDATE_TREES = 2;
+    // 光标停留这么久之后才更新候选树，快速移动时不反复建树又取消
+    static final long CANDIDATE_DEBOUNCE_MILLIS = 80;
+    // 候选树每像素约37字节，超过该像素数的图像只做轨迹预扩展
+    static final long CANDIDATE_TREE_PIXELS = 4_000_000L;
+
+    private final Object scheduleLock = new Object();
+    private Future<?> running = null; // 受scheduleLock保护
+
+    private final Object lock = new Object();
+    // 轨迹预扩展采用双缓冲：published只读，spareWorkspace供下一次推测使用，二者在lock下交换；
+    // 推测进行中spareWorkspace为null，此时另一个推测（已被中断、尚未退出的旧任务）直接跳过
+    private PixelDijkstra published = null;
+    private SearchWorkspace publishedWorkspace = new SearchWorkspace(0);
+    private SearchWorkspace spareWorkspace = new SearchWorkspace(0);
+    private SeedPoint publishedSeed = null;
+    private long publishedVersion = -1;     // published所用特征快照的版本
+
+    private final List<LiveWireTree> candidateTrees = new ArrayList<>();
+    private long generation = 0;            // adoptTree与clear时递增，之前开始建的候选树不再登记
+
+    private int lookups = 0;
+    private int lookupHits = 0;
+    private int adoptions = 0;
+
+    /**
+     * 按最新的输入重新安排推测工作，正在进行的推测被中断
+     * @param features 特征快照，fg矩阵用于搜索，梯度矩阵用于挑选候选种子点
+     * @param seed 当前种子点
+     * @param predicted 光标预计到达的位置，为null时不做轨迹预扩展
+     * @param cursor 当前光标位置
+     * @param radius 候选种子点的搜索半径（像素）
+     */
+    public void speculate(FeatureSnapshot features, SeedPoint seed, SeedPoint predicted,
+                          SeedPoint cursor, int radius) {
+        long candidatesDue = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CANDIDATE_DEBOUNCE_MILLIS);
+        synchronized (scheduleLock) {
+            if (running != null) running.cancel(true);
+            running = TaskLanes.shared().submit(TaskLanes.Lane.SPECULATIVE, () -> {
+                if (predicted != null) expandTowards(features, seed, predicted);
+                if (features.pixelCount() > CANDIDATE_TREE_PIXELS || !awaitQuiet(candidatesDue)) return;
+                updateCandidates(features, strongestEdgePixels(features, cursor, radius, MAX_CANDIDATE_TREES));
+            });
+        }
+    }
+
+    /**
+     * 若target落在最近一次完成的轨迹预扩展中，直接回溯出路径
+     * @return 最短路径；未命中时返回null
+     */
+    public ComputeMinCostPath.PathResult lookup(FeatureSnapshot features, SeedPoint seed, SeedPoint target) {
+        synchronized (lock) {
+            lookups++;
+            if (published == null || publishedVersion != features.getVersion()
+                    || publishedSeed.getX() != seed.getX() || publishedSeed.getY() != seed.getY()
+                    || !published.inBounds(target.getX(), target.getY())) {
+                return null;
+            }
+            int index = published.index(target.getX(), target.getY());
+            if (!published.isSettled(index)) return null;
+            lookupHits++;
+            return published.pathTo(index);
+        }
+    }
+
+    /**
+     * 新种子点确定时调用：若已有为它预建的树则交出该树并恢复正常优先级，其余推测工作全部丢弃
+     * @return 预建的树；没有时返回null
+     */
+    public LiveWireTree adoptTree(FeatureSnapshot features, SeedPoint seed) {
+        cancelRunning();
+        synchronized (lock) {
+            generation++;
+            LiveWireTree adopted = null;
+            for (LiveWireTree tree : candidateTrees) {
+                if (adopted == null && tree.getFeatures().getVersion() == features.getVersion()
+                        && tree.getSeed().getX() == seed.getX() && tree.getSeed().getY() == seed.getY()) {
+                    adopted = tree;
+                } else {
+                    tree.cancel();
+                }
+            }
+            candidateTrees.clear();
+            if (adopted != null) {
+                adopted.setPriority(Thread.NORM_PRIORITY);
+                adoptions++;
+            }
+            return adopted;
+        }
+    }
+
+    /**
+     * 丢弃全部推测工作与结果，例如打开新图像时
+     */
+    public void clear() {
+        cancelRunning();
+        synchronized (lock) {
+            generation++;
+            for (LiveWireTree tree : candidateTrees) tree.cancel();
+            candidateTrees.clear();
+            published = null;
+            publishedSeed = null;
+            publishedVersion = -1;
+        }
+    }
+
+    private void cancelRunning() {
+        synchronized (scheduleLock) {
+            if (running != null) running.cancel(true);
+        }
+    }
+
+    // 等到due时刻；期间有新的输入（任务被中断）时返回false
+    private static boolean awaitQuiet(long due) {
+        long remaining = due - System.nanoTime();
+        if (remaining <= 0) return !Thread.currentThread().isInterrupted();
+        try {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void updateCandidates(FeatureSnapshot features, List<SeedPoint> candidates) {
+        List<SeedPoint> missing = new ArrayList<>();
+        long startGeneration;
+        synchronized (lock) {
+            startGeneration = generation;
+            // 取消不再是候选的树
+            Iterator<LiveWireTree> it = candidateTrees.iterator();
+            while (it.hasNext()) {
+                LiveWireTree tree = it.next();
+                boolean keep = tree.getFeatures().getVersion() == features.getVersion() && candidates.stream().anyMatch(c ->
+                        c.getX() == tree.getSeed().getX() && c.getY() == tree.getSeed().getY());
+                if (!keep) {
+                    tree.cancel();
+                    it.remove();
+                }
+            }
+            for (SeedPoint candidate : candidates) {
+                boolean exists = candidateTrees.stream().anyMatch(t ->
+                        t.getSeed().getX() == candidate.getX() && t.getSeed().getY() == candidate.getY());
+                if (!exists) missing.add(candidate);
+            }
+        }
+        // 在锁外分配并启动新树，登记时若已被接管或清空则直接取消
+        for (SeedPoint candidate : missing) {
+            if (Thread.currentThread().isInterrupted()) return;
+            LiveWireTree tree = LiveWireTree.start(features, candidate, TaskLanes.Lane.SPECULATIVE);
+            synchronized (lock) {
+                if (generation != startGeneration || candidateTrees.size() >= MAX_CANDIDATE_TREES) {
+                    tree.cancel();
+                    return;
+                }
+                candidateTrees.add(tree);
+            }
+        }
+    }
+
+    private void expandTowards(FeatureSnapshot features, SeedPoint seed, SeedPoint predicted) {
+        FeatureMap fgMatrix = features.getFgMatrix();
+        int rows = fgMatrix.getRows();
+        int cols = fgMatrix.getCols();
+        if (seed.getX() < 0 || seed.getX() >= rows || seed.getY() < 0 || seed.getY() >= cols
+                || predicted.getX() < 0 || predicted.getX() >= rows || predicted.getY() < 0 || predicted.getY() >= cols) {
+            return;
+        }
+        SearchWorkspace workspace;
+        synchronized (lock) {
+            workspace = spareWorkspace;
+            spareWorkspace = null;
+        }
+        if (workspace == null) return; // 另一个推测正在使用空闲缓冲区
+
+        PixelDijkstra search = ComputeMinCostPath.windowedSearch(fgMatrix, seed.getX(), seed.getY(),
+                predicted.getX(), predicted.getY(), workspace);
+
+        synchronized (lock) {
+            if (search != null) {
+                // 发布新结果，旧结果此后不会再被读取，它的缓冲区留作下一次推测使用
+                spareWorkspace = publishedWorkspace;
+                publishedWorkspace = workspace;
+                published = search;
+                publishedSeed = seed;
+                publishedVersion = features.getVersion();
+            } else {
+                spareWorkspace = workspace; // 被真实输入中断，结果作废
+            }
+        }
+    }
+
+    /**
+     * 在cursor周围radius范围内挑选梯度最强的count个像素（非极大值像素不参与）
+     */
+    static List<SeedPoint> strongestEdgePixels(FeatureSnapshot features, SeedPoint cursor, int radius, int count) {
+        List<SeedPoint> best = new ArrayList<>();
+        List<Double> bestValues = new ArrayList<>();
+        int rows = features.getRows();
+        int cols = features.getCols();
+        for (int x = Math.max(0, cursor.getX() - radius); x <= Math.min(rows - 1, cursor.getX() + radius); x++) {
+            for (int y = Math.max(0, cursor.getY() - radius); y <= Math.min(cols - 1, cursor.getY() + radius); y++) {
+                double value = features.gradient(x, y);
+                if (value <= 0 || !isLocalMaximum(features, x, y)) continue;
+                int position = 0;
+                while (position < best.size() && bestValues.get(position) >= value) position++;
+                if (position >= count) continue;
+                best.add(position, new SeedPoint(x, y));
+                bestValues.add(position, value);
+                if (best.size() > count) {
+                    best.removeLast();
+                    bestValues.removeLast();
+                }
+            }
+        }
+        return best;
+    }
+
+    private static boolean isLocalMaximum(FeatureSnapshot features, int x, int y) {
+        double value = features.gradient(x, y);
+        for (int[] direction : ComputeMinCostPath.DIRECTIONS) {
+            int nx = x + direction[0];
+            int ny = y + direction[1];
+            if (nx >= 0 && nx < features.getRows() && ny >= 0 && ny < features.getCols() && features.gradient(nx, ny) > value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getLookups() {
+        synchronized (lock) {
+            return lookups;
+        }
+    }
+
+    public int getLookupHits() {
+        synchronized (lock) {
+            return lookupHits;
+        }
+    }
+
+    public int getAdoptions() {
+        synchronized (lock) {
+            return adoptions;
+        }
+    }
+}
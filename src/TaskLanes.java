@@ -0,0 +1,386 @@
+package src;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 程序中所有后台工作的执行车道（lane）。
+ * <p>不同性质的工作分开排队、各自限定线程数，互不挤占：</p>
+ * <ul>
+ *     <li>{@link Lane#INTERACTIVE}：鼠标移动与点击触发的路径搜索，平台线程；</li>
+ *     <li>{@link Lane#BACKGROUND}：最短路径树的扩展、图结构构建、打开图像时的特征计算等较长的计算，平台线程，可被抢占；</li>
+ *     <li>{@link Lane#PARALLEL}：可以分治的数据并行计算（特征流水线的行条带、整图建树的桶内松弛、批量路径段），
+ *     一个并行度为CPU核数的ForkJoin池，经 {@link #invoke(ForkJoinTask)} 提交，可被抢占；</li>
+ *     <li>{@link Lane#SPECULATIVE}：推测性预扩展，平台线程，最低优先级，可被抢占；</li>
+ *     <li>{@link Lane#IO}：文件读写等以等待为主的工作，每个任务一个虚拟线程。</li>
+ * </ul>
+ * <p>抢占是协作式的：可抢占车道上的长任务定期调用 {@link #checkpoint()}。
+ * 交互车道上有任务排队或运行、且正在运行的计算任务多于CPU核数时，调用者暂停，直到交互任务全部完成；
+ * 有空闲核心时不暂停。一次暂停最长 {@link #MAX_PREEMPT_MS} 毫秒，交互任务在等待被暂停的任务
+ * （例如等待后台车道上懒构建的代价表）时也不会死锁；不可抢占车道经 {@link #invoke(ForkJoinTask)}
+ * 提交的分治任务执行期间，并行车道不暂停。</p>
+ * <p>每条车道的排队数、运行数、完成数与利用率都可以通过 {@link #stats(Lane)} 查看，界面的状态栏会定期显示。</p>
+ */
+public final class TaskLanes {
+
+    public enum Lane {
+        INTERACTIVE(false, Thread.NORM_PRIORITY + 1),
+        BACKGROUND(true, Thread.NORM_PRIORITY - 1),
+        PARALLEL(true, Thread.NORM_PRIORITY - 1),
+        SPECULATIVE(true, Thread.MIN_PRIORITY),
+        IO(false, Thread.NORM_PRIORITY);
+
+        final boolean preemptible;
+        final int priority;
+
+        Lane(boolean preemptible, int priority) {
+            this.preemptible = preemptible;
+            this.priority = priority;
+        }
+    }
+
+    // 被抢占的任务每隔这么久重新检查一次交互车道，防止漏掉唤醒
+    private static final long PREEMPT_POLL_MS = 50;
+    // 一次暂停的上限：交互任务可能正等着被暂停的任务，超过上限就继续执行
+    static final long MAX_PREEMPT_MS = 250;
+
+    private static final TaskLanes SHARED = new TaskLanes(Runtime.getRuntime().availableProcessors());
+    private static final ThreadLocal<Lane> CURRENT_LANE = new ThreadLocal<>();
+
+    private final int cores;
+    private final Map<Lane, LaneExecutor> lanes = new EnumMap<>(Lane.class);
+    // 只负责延时，到期后把任务交给对应的车道
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TaskLanes-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicInteger interactiveDemand = new AtomicInteger(); // 交互车道上排队与运行的任务数
+    private final AtomicInteger runningCompute = new AtomicInteger();    // 平台线程车道上正在运行（未暂停）的任务数
+    private final AtomicInteger urgentInvocations = new AtomicInteger(); // 不可抢占车道正在等待的分治任务数
+    private final AtomicLong preemptions = new AtomicLong();
+    private final Object gate = new Object();
+
+    /**
+     * @param cores CPU核数，决定各车道的线程数
+     */
+    TaskLanes(int cores) {
+        this.cores = cores;
+        lanes.put(Lane.INTERACTIVE, new LaneExecutor(Lane.INTERACTIVE, Math.max(2, cores / 2)));
+        lanes.put(Lane.BACKGROUND, new LaneExecutor(Lane.BACKGROUND, Math.max(2, cores - 1)));
+        lanes.put(Lane.PARALLEL, new LaneExecutor(Lane.PARALLEL, cores));
+        // 一次轨迹预扩展加上每棵候选树各占一个线程
+        lanes.put(Lane.SPECULATIVE, new LaneExecutor(Lane.SPECULATIVE, 1 + SpeculativeExpander.MAX_CANDIDATE_TREES));
+        lanes.put(Lane.IO, new LaneExecutor(Lane.IO, 0));
+    }
+
+    public static TaskLanes shared() {
+        return SHARED;
+    }
+
+    /**
+     * 在指定车道上执行任务
+     * @return 可取消的Future；cancel(true)会中断正在执行任务的线程
+     */
+    public <T> Future<T> submit(Lane lane, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        execute(lane, future);
+        return future;
+    }
+
+    public Future<?> submit(Lane lane, Runnable task) {
+        FutureTask<Void> future = new FutureTask<>(task, null);
+        execute(lane, future);
+        return future;
+    }
+
+    public void execute(Lane lane, Runnable task) {
+        lanes.get(lane).execute(task);
+    }
+
+    /**
+     * @return 把任务交给指定车道的Executor，用于CompletableFuture等接口
+     */
+    public Executor executor(Lane lane) {
+        return task -> execute(lane, task);
+    }
+
+    /**
+     * 在并行车道上执行一个分治任务并等待结果，任务中fork出的子任务都在并行车道的ForkJoin池中执行。
+     * 已经在并行车道上时（嵌套的并行）直接在当前线程上分治。
+     * 调用者不在可抢占车道上（交互车道、IO车道或界面线程）时，任务执行期间并行车道不暂停，否则交互任务会等待被它自己暂停的子任务
+     * @return 任务的结果；任务抛出的异常原样抛出
+     */
+    public <T> T invoke(ForkJoinTask<T> task) {
+        return lanes.get(Lane.PARALLEL).invoke(task);
+    }
+
+    /**
+     * @return 并行车道的ForkJoin池，供需要 {@link java.util.concurrent.ExecutorService} 接口的并行算法使用；
+     * 经它直接提交的任务不计入车道的完成数与利用率，但计入排队数与运行数
+     */
+    ForkJoinPool parallelPool() {
+        return lanes.get(Lane.PARALLEL).forkJoin;
+    }
+
+    /**
+     * @return 并行车道的并行度
+     */
+    public int getParallelism() {
+        return lanes.get(Lane.PARALLEL).threads;
+    }
+
+    /**
+     * 延时delayMillis毫秒后在指定车道上执行任务，延时期间不占用车道
+     */
+    public void schedule(Lane lane, Runnable task, long delayMillis) {
+        timer.schedule(() -> execute(lane, task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return 车道上是否有空闲线程（虚拟线程车道总是有）
+     */
+    public boolean hasIdleThread(Lane lane) {
+        return lanes.get(lane).hasIdleThread();
+    }
+
+    /**
+     * 可抢占车道上的长任务定期调用：交互车道忙且CPU已被占满时暂停，直到交互任务全部完成、当前线程被中断
+     * 或暂停满 {@link #MAX_PREEMPT_MS} 毫秒。
+     * 不在可抢占车道上的线程调用时立即返回
+     */
+    public static void checkpoint() {
+        SHARED.yieldToInteractive();
+    }
+
+    private void yieldToInteractive() {
+        Lane lane = CURRENT_LANE.get();
+        if (lane == null || !lane.preemptible || interactiveDemand.get() == 0) return;
+        if (lane == Lane.PARALLEL && urgentInvocations.get() > 0) return; // 可能正在为交互任务分治
+        if (runningCompute.get() + parallelPool().getActiveThreadCount() <= cores) return; // 还有空闲核心，不必让出
+        // 并行车道的线程按ForkJoin池的活动线程数计算，不在runningCompute中
+        boolean counted = lane != Lane.PARALLEL;
+        synchronized (gate) {
+            if (counted) runningCompute.decrementAndGet();
+            preemptions.incrementAndGet();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_PREEMPT_MS);
+            try {
+                long remaining;
+                while (interactiveDemand.get() > 0 && !Thread.currentThread().isInterrupted()
+                        && (remaining = deadline - System.nanoTime()) > 0) {
+                    gate.wait(Math.max(1, Math.min(PREEMPT_POLL_MS, TimeUnit.NANOSECONDS.toMillis(remaining))));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (counted) runningCompute.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return 指定车道当前的统计
+     */
+    public LaneStats stats(Lane lane) {
+        return lanes.get(lane).stats();
+    }
+
+    /**
+     * @return 可抢占任务因交互任务而暂停的累计次数
+     */
+    public long getPreemptions() {
+        return preemptions.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("TaskLanes[");
+        for (Lane lane : Lane.values()) {
+            builder.append(stats(lane)).append(", ");
+        }
+        return builder.append("preemptions=").append(preemptions.get()).append(']').toString();
+    }
+
+    /**
+     * 一条车道某一时刻的统计
+     */
+    public static final class LaneStats {
+        private final Lane lane;
+        private final int threads;
+        private final int queued;
+        private final int active;
+        private final long completed;
+        private final double utilization;
+
+        LaneStats(Lane lane, int threads, int queued, int active, long completed, double utilization) {
+            this.lane = lane;
+            this.threads = threads;
+            this.queued = queued;
+            this.active = active;
+            this.completed = completed;
+            this.utilization = utilization;
+        }
+
+        public Lane getLane() {
+            return lane;
+        }
+
+        /**
+         * @return 线程数，虚拟线程车道为0（不限）
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return 自创建以来的利用率：忙碌时间 / (线程数 × 经过时间)；虚拟线程车道与并行车道为平均并发的顶层任务数
+         */
+        public double getUtilization() {
+            return utilization;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s{threads=%d, queued=%d, active=%d, completed=%d, utilization=%.1f%%}",
+                    lane, threads, queued, active, completed, utilization * 100);
+        }
+    }
+
+    // 一条车道：固定大小的平台线程池、ForkJoin池（并行车道）或虚拟线程执行器，外加统计
+    private final class LaneExecutor {
+        private final Lane lane;
+        private final int threads;
+        private final ExecutorService executor;
+        private final ForkJoinPool forkJoin; // 并行车道的池，其余车道为null
+        private final long createdAt = System.nanoTime();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        LaneExecutor(Lane lane, int threads) {
+            this.lane = lane;
+            this.threads = threads;
+            this.forkJoin = lane == Lane.PARALLEL ? new ForkJoinPool(threads, ParallelWorker::new, null, false) : null;
+            if (forkJoin != null) {
+                this.executor = forkJoin;
+            } else if (threads == 0) {
+                this.executor = Executors.newThreadPerTaskExecutor(
+                        Thread.ofVirtual().name("lane-" + lane.name().toLowerCase() + "-", 0).factory());
+            } else {
+                AtomicInteger counter = new AtomicInteger();
+                this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "lane-" + lane.name().toLowerCase() + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(lane.priority);
+                    return thread;
+                });
+            }
+        }
+
+        // 包装后的任务即使被取消也会被执行一次（FutureTask此时什么都不做），保证计数总能归位
+        void execute(Runnable task) {
+            queued.incrementAndGet();
+            if (lane == Lane.INTERACTIVE) interactiveDemand.incrementAndGet();
+            executor.execute(() -> {
+                queued.decrementAndGet();
+                active.incrementAndGet();
+                boolean compute = threads > 0 && forkJoin == null;
+                if (compute) runningCompute.incrementAndGet();
+                CURRENT_LANE.set(lane);
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } finally {
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                    if (forkJoin == null) CURRENT_LANE.remove(); // 并行车道的线程始终属于该车道
+                    if (compute) runningCompute.decrementAndGet();
+                    active.decrementAndGet();
+                    completed.incrementAndGet();
+                    if (lane == Lane.INTERACTIVE && interactiveDemand.decrementAndGet() == 0) {
+                        synchronized (gate) {
+                            gate.notifyAll();
+                        }
+                    }
+                }
+            });
+        }
+
+        <T> T invoke(ForkJoinTask<T> task) {
+            if (ForkJoinTask.getPool() == forkJoin) return task.invoke();
+            Lane caller = CURRENT_LANE.get();
+            boolean urgent = caller == null || !caller.preemptible;
+            if (urgent) urgentInvocations.incrementAndGet();
+            try {
+                execute(task::quietlyInvoke); // 结果与异常都记录在task中，由join交给调用方
+                return task.join();
+            } finally {
+                if (urgent) urgentInvocations.decrementAndGet();
+            }
+        }
+
+        boolean hasIdleThread() {
+            if (forkJoin != null) return queued.get() == 0 && forkJoin.getActiveThreadCount() < threads;
+            return threads == 0 || (queued.get() == 0 && active.get() < threads);
+        }
+
+        // 并行车道的排队数包括已fork未执行的子任务，运行数为池中的活动线程数
+        LaneStats stats() {
+            double elapsed = Math.max(1, System.nanoTime() - createdAt);
+            if (forkJoin != null) {
+                int pending = queued.get() + forkJoin.getQueuedSubmissionCount() + (int) forkJoin.getQueuedTaskCount();
+                return new LaneStats(lane, threads, pending, forkJoin.getActiveThreadCount(), completed.get(),
+                        busyNanos.get() / elapsed);
+            }
+            double utilization = busyNanos.get() / (elapsed * Math.max(1, threads));
+            return new LaneStats(lane, threads, queued.get(), active.get(), completed.get(), utilization);
+        }
+    }
+
+    // 并行车道的工作线程：与其他车道一样降低优先级，并始终标记为属于并行车道，使子任务中的checkpoint生效
+    private static final class ParallelWorker extends ForkJoinWorkerThread {
+        ParallelWorker(ForkJoinPool pool) {
+            super(pool);
+            setDaemon(true);
+            setPriority(Lane.PARALLEL.priority);
+        }
+
+        @Override
+        protected void onStart() {
+            super.onStart();
+            setName("lane-parallel-" + getPoolIndex());
+            CURRENT_LANE.set(Lane.PARALLEL);
+        }
+    }
+}
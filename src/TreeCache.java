@@ -0,0 +1,205 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 按字节预算淘汰的多种子点最短路径树缓存。
+ * <p>每个种子点缓存至多 {@link #MAX_TREES_PER_SEED} 棵 {@link CompactTree}，树中结算区域内的任何目标都能直接回答，
+ * 而不仅是缓存过的那一对种子点。撤销、重新点击同一位置或编辑种子点时，已经做过的扩展不会重做。
+ * 同一种子点的窗口搜索可能朝不同方向扩展，各棵树覆盖不同的区域，因此都保留；
+ * 只有被另一棵树完全覆盖的树（见 {@link CompactTree#covers}）才是多余的。</p>
+ * <p>每棵树是一个条目，按最近使用顺序排列，总字节数超过预算时从最久未使用的一端淘汰，
+ * 命中、未命中与淘汰次数都有计数，便于观察预算是否合适。所有方法都是线程安全的。</p>
+ * <p>条目按 {@link FeatureSnapshot} 的版本号区分，换了图像之后旧版本的树不会被命中。</p>
+ */
+public class TreeCache {
+
+    public static final long DEFAULT_BUDGET_BYTES = 256L * 1024 * 1024;
+    public static final int MAX_TREES_PER_SEED = 4;
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // LRU顺序
+    private final Map<Key, List<Entry>> bySeed = new HashMap<>(); // 每个种子点的树，最近使用的在末尾
+    private long nextId = 0;
+    private long budgetBytes;
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public TreeCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * 查询seed到target的路径，依次尝试该种子点的各棵树
+     * @param features 查询所用的特征快照
+     * @param seed 种子点
+     * @param target 目标点
+     * @return 最短路径；缓存中没有覆盖target的树时返回null
+     */
+    public synchronized ComputeMinCostPath.PathResult lookup(FeatureSnapshot features, SeedPoint seed, SeedPoint target) {
+        List<Entry> trees = bySeed.get(new Key(features.getVersion(), seed.getX(), seed.getY()));
+        if (trees != null) {
+            for (int i = trees.size() - 1; i >= 0; i--) {
+                Entry entry = trees.get(i);
+                ComputeMinCostPath.PathResult path = entry.tree.pathTo(target.getX(), target.getY());
+                if (path != null) {
+                    touch(trees, i);
+                    hits++;
+                    return path;
+                }
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * 缓存一棵树：同一种子点已有覆盖它的树时不缓存，被它覆盖的旧树被替换，
+     * 覆盖不同区域的树并存，超出 {@link #MAX_TREES_PER_SEED} 时淘汰该种子点最久未使用的树
+     * @param features 建树所用的特征快照
+     * @param tree 最短路径树
+     */
+    public synchronized void put(FeatureSnapshot features, CompactTree tree) {
+        if (tree.byteSize() > budgetBytes) return; // 单棵树就超出预算，不缓存
+        Key key = new Key(features.getVersion(), tree.getSeed().getX(), tree.getSeed().getY());
+        List<Entry> trees = bySeed.computeIfAbsent(key, k -> new ArrayList<>());
+        for (int i = trees.size() - 1; i >= 0; i--) {
+            Entry old = trees.get(i);
+            if (old.tree.covers(tree)) {
+                touch(trees, i);
+                return;
+            }
+            if (tree.covers(old.tree)) {
+                remove(trees, i);
+            }
+        }
+        while (trees.size() >= MAX_TREES_PER_SEED) {
+            remove(trees, 0);
+            evictions++;
+        }
+        Entry entry = new Entry(nextId++, key, tree);
+        trees.add(entry);
+        entries.put(entry.id, entry);
+        bytes += tree.byteSize();
+        evictToBudget();
+    }
+
+    // 把种子点的第i棵树移到最近使用的位置
+    private void touch(List<Entry> trees, int i) {
+        Entry entry = trees.remove(i);
+        trees.add(entry);
+        entries.get(entry.id);
+    }
+
+    private void remove(List<Entry> trees, int i) {
+        Entry entry = trees.remove(i);
+        entries.remove(entry.id);
+        bytes -= entry.tree.byteSize();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bySeed.clear();
+        bytes = 0;
+    }
+
+    /**
+     * 调整内存预算，立即按新预算淘汰
+     */
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evictToBudget();
+    }
+
+    private void evictToBudget() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > budgetBytes && it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            List<Entry> trees = bySeed.get(entry.key);
+            trees.remove(entry);
+            if (trees.isEmpty()) bySeed.remove(entry.key);
+            bytes -= entry.tree.byteSize();
+            evictions++;
+        }
+    }
+
+    public synchronized long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return 缓存的树的棵数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("TreeCache[%d trees, %d/%d bytes, hits=%d, misses=%d, evictions=%d]",
+                entries.size(), bytes, budgetBytes, hits, misses, evictions);
+    }
+
+    private static final class Entry {
+        final long id;
+        final Key key;
+        final CompactTree tree;
+
+        Entry(long id, Key key, CompactTree tree) {
+            this.id = id;
+            this.key = key;
+            this.tree = tree;
+        }
+    }
+
+    // 按快照版本区分，不同图像（或重新计算后的特征）的树互不混用
+    private static final class Key {
+        final long version;
+        final int row;
+        final int col;
+
+        Key(long version, int row, int col) {
+            this.version = version;
+            this.row = row;
+            this.col = col;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key other)) return false;
+            return version == other.version && row == other.row && col == other.col;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, row, col);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package src;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote {@link FloatKernels} 的向量实现（jdk.incubator.vector）。
+ * <p>只有这个类引用Vector API：运行时没有 jdk.incubator.vector 模块时它不会被加载，
+ * {@link SimdFeatures} 改用标量实现。</p>
+ * <p>内部像素每次处理一个向量宽度：3*3邻域的九个值各用一次错位的连续加载取得，
+ * 只计算核中的非零项；边框一圈与每行末尾不足一个向量的像素交给 {@link ScalarFloatKernels} 的逐像素公式，
+ * 每个通道的运算顺序与标量公式相同，结果逐位相同。</p>
+ */
+final class VectorFloatKernels implements FloatKernels {
+
+    // 向量宽度必须是编译期可知的常量，JIT才会把运算编译成SIMD指令，因此放在static final中；
+    // 默认取平台首选宽度，可以用 -Dsimd.bits=64/128/256/512 指定，用于比较各宽度
+    private static final VectorSpecies<Float> SPECIES = selectSpecies();
+
+    private static VectorSpecies<Float> selectSpecies() {
+        String bits = System.getProperty("simd.bits");
+        return bits == null ? FloatVector.SPECIES_PREFERRED
+                : VectorSpecies.of(float.class, VectorShape.forBitSize(Integer.parseInt(bits)));
+    }
+
+    @Override
+    public void sobel(float[] src, int rows, int cols, float[] ix, float[] iy) {
+        ScalarFloatKernels.sobelBorder(src, rows, cols, ix, iy);
+        int lanes = SPECIES.length();
+        for (int y = 1; y < rows - 1; y++) {
+            int mid = y * cols;
+            int up = mid - cols;
+            int down = mid + cols;
+            int x = 1;
+            // 最右一次加载读到 x + lanes，不超过本行最后一个像素 cols - 1
+            for (; x <= cols - 1 - lanes; x += lanes) {
+                FloatVector u0 = FloatVector.fromArray(SPECIES, src, up + x - 1);
+                FloatVector u1 = FloatVector.fromArray(SPECIES, src, up + x);
+                FloatVector u2 = FloatVector.fromArray(SPECIES, src, up + x + 1);
+                FloatVector m0 = FloatVector.fromArray(SPECIES, src, mid + x - 1);
+                FloatVector m2 = FloatVector.fromArray(SPECIES, src, mid + x + 1);
+                FloatVector d0 = FloatVector.fromArray(SPECIES, src, down + x - 1);
+                FloatVector d1 = FloatVector.fromArray(SPECIES, src, down + x);
+                FloatVector d2 = FloatVector.fromArray(SPECIES, src, down + x + 1);
+                // 与ScalarFloatKernels.sobelX / sobelY的运算顺序相同
+                u2.sub(u0).add(m2.sub(m0).mul(2f)).add(d2.sub(d0)).intoArray(ix, mid + x);
+                d0.add(d1.mul(2f)).add(d2).sub(u0.add(u1.mul(2f)).add(u2)).intoArray(iy, mid + x);
+            }
+            for (; x < cols - 1; x++) {
+                ScalarFloatKernels.sobelInterior(src, cols, y, x, ix, iy);
+            }
+        }
+    }
+
+    @Override
+    public void laplacian(float[] src, int rows, int cols, float[] out) {
+        ScalarFloatKernels.laplacianBorder(rows, cols, out);
+        int lanes = SPECIES.length();
+        for (int y = 1; y < rows - 1; y++) {
+            int mid = y * cols;
+            int x = 1;
+            for (; x <= cols - 1 - lanes; x += lanes) {
+                FloatVector upper = FloatVector.fromArray(SPECIES, src, mid - cols + x);
+                FloatVector lower = FloatVector.fromArray(SPECIES, src, mid + cols + x);
+                FloatVector left = FloatVector.fromArray(SPECIES, src, mid + x - 1);
+                FloatVector right = FloatVector.fromArray(SPECIES, src, mid + x + 1);
+                FloatVector center = FloatVector.fromArray(SPECIES, src, mid + x);
+                upper.add(lower).add(left).add(right).sub(center.mul(4f)).intoArray(out, mid + x);
+            }
+            for (; x < cols - 1; x++) {
+                ScalarFloatKernels.laplacianInterior(src, cols, y, x, out);
+            }
+        }
+    }
+
+    @Override
+    public void magnitude(float[] ix, float[] iy, float[] out) {
+        int bound = SPECIES.loopBound(out.length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector gx = FloatVector.fromArray(SPECIES, ix, i);
+            FloatVector gy = FloatVector.fromArray(SPECIES, iy, i);
+            gx.mul(gx).add(gy.mul(gy)).lanewise(VectorOperators.SQRT).intoArray(out, i);
+        }
+        ScalarFloatKernels.magnitudeRange(ix, iy, out, i, out.length);
+    }
+
+    @Override
+    public float max(float[] values, int from, int to) {
+        int bound = from + SPECIES.loopBound(to - from);
+        FloatVector max = FloatVector.broadcast(SPECIES, Float.NEGATIVE_INFINITY);
+        int i = from;
+        for (; i < bound; i += SPECIES.length()) {
+            max = max.max(FloatVector.fromArray(SPECIES, values, i));
+        }
+        return ScalarFloatKernels.maxRange(values, i, to, max.reduceLanes(VectorOperators.MAX));
+    }
+
+    @Override
+    public void normalize(float[] g, float maxG, float[] out, int from, int to) {
+        int bound = from + SPECIES.loopBound(to - from);
+        FloatVector one = FloatVector.broadcast(SPECIES, 1f);
+        int i = from;
+        for (; i < bound; i += SPECIES.length()) {
+            one.sub(FloatVector.fromArray(SPECIES, g, i).div(maxG)).intoArray(out, i);
+        }
+        ScalarFloatKernels.normalizeRange(g, maxG, out, i, to);
+    }
+
+    @Override
+    public String name() {
+        return "vector-" + SPECIES.vectorBitSize();
+    }
+}
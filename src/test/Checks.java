@@ -0,0 +1,60 @@
+package src;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 等价性检查的计数器：记录通过与失败的比较，打印前几条失败的详情与汇总。
+ * <p>项目没有测试框架，各项检查都是普通的 {@code main} 方法，用它统计结果，失败时以非0状态退出。</p>
+ */
+final class Checks {
+
+    // 每项检查最多打印这么多条失败的详情，其余只计数
+    private static final int MAX_REPORTED = 10;
+
+    private final String name;
+    private int passed = 0;
+    private int failed = 0;
+
+    Checks(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 记录一次比较
+     * @param ok 比较是否通过
+     * @param format 失败时打印的说明，格式同 {@link String#format}
+     */
+    void check(boolean ok, String format, Object... args) {
+        if (ok) {
+            passed++;
+            return;
+        }
+        if (failed++ < MAX_REPORTED) {
+            System.err.println("[" + name + "] " + String.format(format, args));
+        }
+    }
+
+    /**
+     * 打印汇总
+     * @return 是否全部通过
+     */
+    boolean report() {
+        System.out.printf("%s: %d 项通过, %d 项失败%n", name, passed, failed);
+        return failed == 0;
+    }
+
+    /**
+     * 两个距离在相对误差tolerance内相等；都为负（不可达）也视为相等
+     */
+    static boolean close(double expected, double actual, double tolerance) {
+        if (expected < 0 || actual < 0) return expected < 0 && actual < 0;
+        return Math.abs(expected - actual) <= tolerance * Math.max(1, Math.abs(expected));
+    }
+
+    /**
+     * 检查结束后调用：有失败时以状态1退出
+     */
+    static void exit(boolean ok) {
+        if (!ok) System.exit(1);
+    }
+}
@@ -0,0 +1,150 @@
+package src;
+
+import java.util.Random;
+
+import static src.ComputeMinCostPath.DIRECTIONS;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 普通边权表、紧凑边权表与 {@link ComputeMinCostPath#calculateDynamicCost} 的等价性检查。
+ * <ul>
+ *     <li>普通表的静态代价与 calculateDynamicCost 在没有入射方向时的值只差float舍入，越出图像的边为正无穷；</li>
+ *     <li>紧凑表与普通表逐条边比较，差别不超过fg的16位量化误差乘步长；</li>
+ *     <li>同一对起点终点在两种表上的精确最短路长度，相对差别不超过单条边的最大相对量化误差；</li>
+ *     <li>特征流水线的紧凑快照与普通快照给出的fg与边权同样在量化误差之内。</li>
+ * </ul>
+ */
+public class CostTableEquivalenceCheck {
+
+    // fg量化误差的上界，见CompactFeatureStore
+    private static final double FG_ERROR = 0.5 / CompactFeatureStore.MAGNITUDE_ONE;
+    // float舍入的相对误差
+    private static final double FLOAT_TOLERANCE = 1e-6;
+    // 边权至少为 MIN_EDGE_COST × 步长，单条边的相对量化误差不超过 FG_ERROR / MIN_EDGE_COST，路径长度也是如此
+    private static final double PATH_TOLERANCE = FG_ERROR / ComputeMinCostPath.MIN_EDGE_COST + FLOAT_TOLERANCE;
+    private static final int MAPS = 30;
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 9;
+        Checks.exit(run(seed));
+    }
+
+    static boolean run(long seed) {
+        Checks checks = new Checks("边权表等价性");
+        Random random = new Random(seed);
+        for (int map = 0; map < MAPS; map++) {
+            int rows = 1 + random.nextInt(80);
+            int cols = 1 + random.nextInt(80);
+            FeatureMap fgMatrix = SearchEquivalenceCheck.randomFgMatrix(random, rows, cols, map % 4 == 0);
+            CostTable dense = CostTable.of(fgMatrix);
+            // 紧凑表按视图缓存，搜索时用同一个视图
+            FeatureMap compactFg = FeatureMap.view(CompactFeatureStore.of(fgMatrix));
+            CostTable compact = CostTable.of(compactFg);
+            checks.check(!dense.isCompact() && compact.isCompact(), "%s: 表的种类不对", fgMatrix);
+            checkDense(checks, fgMatrix, dense);
+            checkCompact(checks, fgMatrix, dense, compact);
+            checkPaths(checks, fgMatrix, compactFg, random);
+        }
+        for (int image = 0; image < MAPS / 3; image++) {
+            checkSnapshots(checks, random);
+        }
+        return checks.report();
+    }
+
+    // 普通表与逐边计算的边权相同
+    private static void checkDense(Checks checks, FeatureMap fgMatrix, CostTable dense) {
+        for (int row = 0; row < fgMatrix.getRows(); row++) {
+            for (int col = 0; col < fgMatrix.getCols(); col++) {
+                int pixel = dense.index(row, col);
+                for (int d = 0; d < DIRECTIONS.length; d++) {
+                    int nextRow = row + DIRECTIONS[d][0];
+                    int nextCol = col + DIRECTIONS[d][1];
+                    float actual = dense.staticCost(pixel, d);
+                    if (nextRow < 0 || nextRow >= fgMatrix.getRows() || nextCol < 0 || nextCol >= fgMatrix.getCols()) {
+                        checks.check(actual == Float.POSITIVE_INFINITY, "普通表 (%d, %d) 方向%d 越界的边为 %f", row, col, d, actual);
+                        continue;
+                    }
+                    double expected = ComputeMinCostPath.calculateDynamicCost(fgMatrix, nextRow, nextCol, -1, d);
+                    checks.check(Math.abs(actual - expected) <= FLOAT_TOLERANCE * expected,
+                            "普通表 (%d, %d) 方向%d: %f, 逐边计算 %f", row, col, d, actual, expected);
+                }
+            }
+        }
+    }
+
+    // 紧凑表逐条边与普通表比较
+    private static void checkCompact(Checks checks, FeatureMap fgMatrix, CostTable dense, CostTable compact) {
+        for (int row = 0; row < fgMatrix.getRows(); row++) {
+            for (int col = 0; col < fgMatrix.getCols(); col++) {
+                int pixel = dense.index(row, col);
+                for (int d = 0; d < DIRECTIONS.length; d++) {
+                    float expected = dense.staticCost(pixel, d);
+                    float actual = compact.staticCost(pixel, d);
+                    if (expected == Float.POSITIVE_INFINITY) {
+                        checks.check(actual == Float.POSITIVE_INFINITY, "紧凑表 (%d, %d) 方向%d 越界的边为 %f", row, col, d, actual);
+                        continue;
+                    }
+                    double step = Math.hypot(DIRECTIONS[d][0], DIRECTIONS[d][1]);
+                    checks.check(Math.abs(actual - expected) <= FG_ERROR * step + FLOAT_TOLERANCE * expected,
+                            "紧凑表 (%d, %d) 方向%d: %f, 普通表 %f", row, col, d, actual, expected);
+                }
+            }
+        }
+        for (int in = -1; in < DIRECTIONS.length; in++) {
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                checks.check(dense.turnPenalty(in, d) == compact.turnPenalty(in, d), "转向惩罚 %d -> %d 不同", in, d);
+            }
+        }
+        // 边权上界：紧凑表不逐边扫描，按最小梯度值与最长步长估计，可能偏大，但不能比普通表的小
+        checks.check(compact.maxEdgeCost() >= dense.maxEdgeCost() - 2 * (FG_ERROR * Math.sqrt(2) + FLOAT_TOLERANCE),
+                "%s: 边权上界 %f, 紧凑表 %f", fgMatrix, dense.maxEdgeCost(), compact.maxEdgeCost());
+    }
+
+    /**
+     * 两种表上的最短路长度相差不超过量化误差。
+     * 逐像素搜索在计入转向惩罚后只是近似，边权的微小差别可能让它选到另一条近似路径，
+     * 所以这里比较精确的方向展开搜索（{@link SearchStrategy#EXACT}）
+     */
+    private static void checkPaths(Checks checks, FeatureMap fgMatrix, FeatureMap compactFg, Random random) {
+        for (int query = 0; query < 5; query++) {
+            SeedPoint start = new SeedPoint(random.nextInt(fgMatrix.getRows()), random.nextInt(fgMatrix.getCols()));
+            SeedPoint end = new SeedPoint(random.nextInt(fgMatrix.getRows()), random.nextInt(fgMatrix.getCols()));
+            double expected = ComputeMinCostPath.findShortestPath(fgMatrix, start, end, SearchStrategy.EXACT).getDistance();
+            double actual = ComputeMinCostPath.findShortestPath(compactFg, start, end, SearchStrategy.EXACT).getDistance();
+            checks.check(Math.abs(actual - expected) <= PATH_TOLERANCE * expected,
+                    "%s (%d, %d) -> (%d, %d): 紧凑表 %f, 普通表 %f", fgMatrix, start.getX(), start.getY(),
+                    end.getX(), end.getY(), actual, expected);
+        }
+    }
+
+    // 特征流水线的两种快照：fg与边权在量化误差之内
+    private static void checkSnapshots(Checks checks, Random random) {
+        int width = 1 + random.nextInt(120);
+        int height = 1 + random.nextInt(120);
+        boolean gray = random.nextBoolean();
+        int[][] matrix = new int[width][height];
+        for (int[] column : matrix) {
+            for (int y = 0; y < height; y++) {
+                column[y] = gray ? random.nextInt(4) * 0x010101 : random.nextInt(1 << 24);
+            }
+        }
+        FeatureSnapshot plain = FeaturePipeline.compute(matrix, false);
+        FeatureSnapshot compact = FeaturePipeline.compute(matrix, true);
+        FeatureMap plainFg = plain.getFgMatrix();
+        FeatureMap compactFg = compact.getFgMatrix();
+        CostTable plainTable = CostTable.of(plainFg);
+        CostTable compactTable = CostTable.of(compactFg);
+        checks.check(!plainTable.isCompact() && compactTable.isCompact(), "快照 %dx%d: 表的种类不对", width, height);
+        checks.check(plain.getMaxGradient() == compact.getMaxGradient(), "快照 %dx%d: 最大梯度不同", width, height);
+        for (int row = 0; row < width; row++) {
+            for (int col = 0; col < height; col++) {
+                float expected = plainFg.get(row, col);
+                float actual = compactFg.get(row, col);
+                checks.check(Float.isNaN(expected) ? Float.isNaN(actual) : Math.abs(actual - expected) <= FG_ERROR + FLOAT_TOLERANCE,
+                        "快照 (%d, %d): fg %f, 紧凑 %f", row, col, expected, actual);
+            }
+        }
+        checkCompact(checks, plainFg, plainTable, compactTable);
+    }
+}
@@ -0,0 +1,20 @@
+package src;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 依次运行全部等价性检查，有任何一项失败时以状态1退出。
+ * <p>检查不随应用发布，编译与运行方式见 README 的“等价性检查”一节；
+ * 每项检查也可以单独运行，参数为随机数种子。</p>
+ */
+public class EquivalenceChecks {
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        boolean ok = SearchEquivalenceCheck.run(seed);
+        ok &= CostTableEquivalenceCheck.run(seed);
+        ok &= KernelEquivalenceCheck.run(seed);
+        ok &= PipelineEquivalenceCheck.run(seed);
+        Checks.exit(ok);
+    }
+}
@@ -0,0 +1,101 @@
+package src;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 向量内核与标量内核的等价性检查。
+ * <p>{@link FloatKernels} 约定两种实现对每个元素执行相同顺序的浮点运算，结果逐位相同。
+ * 这里在各种尺寸（包括窄于一个向量、行尾有剩余像素的尺寸）的随机数据上逐位比较 {@link SimdFeatures#kernels()}
+ * 与 {@link ScalarFloatKernels}，并把float梯度与 {@link ProcessMatrix#findGMatrix} 的double实现比较。
+ * 运行时没有 jdk.incubator.vector 模块时两边都是标量实现，检查只验证标量实现自身。</p>
+ */
+public class KernelEquivalenceCheck {
+
+    private static final int ROUNDS = 300;
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 20;
+        Checks.exit(run(seed));
+    }
+
+    static boolean run(long seed) {
+        Checks checks = new Checks("内核等价性（" + SimdFeatures.implementation() + "）");
+        FloatKernels vector = SimdFeatures.kernels();
+        FloatKernels scalar = new ScalarFloatKernels();
+        Random random = new Random(seed);
+        for (int round = 0; round < ROUNDS; round++) {
+            int rows = 1 + random.nextInt(40);
+            int cols = 1 + random.nextInt(round % 10 == 0 ? 600 : 70);
+            int size = rows * cols;
+            float[] src = new float[size];
+            for (int i = 0; i < size; i++) {
+                src[i] = random.nextInt(1 << 24);
+            }
+            String where = rows + "x" + cols;
+
+            float[] scalarIx = new float[size];
+            float[] scalarIy = new float[size];
+            float[] vectorIx = new float[size];
+            float[] vectorIy = new float[size];
+            scalar.sobel(src, rows, cols, scalarIx, scalarIy);
+            vector.sobel(src, rows, cols, vectorIx, vectorIy);
+            checks.check(Arrays.equals(scalarIx, vectorIx) && Arrays.equals(scalarIy, vectorIy), "sobel %s 不同", where);
+
+            float[] scalarLaplacian = new float[size];
+            float[] vectorLaplacian = new float[size];
+            scalar.laplacian(src, rows, cols, scalarLaplacian);
+            vector.laplacian(src, rows, cols, vectorLaplacian);
+            checks.check(Arrays.equals(scalarLaplacian, vectorLaplacian), "laplacian %s 不同", where);
+
+            float[] scalarMagnitude = new float[size];
+            float[] vectorMagnitude = new float[size];
+            scalar.magnitude(scalarIx, scalarIy, scalarMagnitude);
+            vector.magnitude(scalarIx, scalarIy, vectorMagnitude);
+            checks.check(Arrays.equals(scalarMagnitude, vectorMagnitude), "magnitude %s 不同", where);
+
+            // 任意区间上的最大值与归一化，out与g相同（原地归一化）的情况也比较
+            int from = random.nextInt(size);
+            int to = from + random.nextInt(size - from + 1);
+            float scalarMax = scalar.max(scalarMagnitude, from, to);
+            float vectorMax = vector.max(scalarMagnitude, from, to);
+            checks.check(Float.compare(scalarMax, vectorMax) == 0, "max %s [%d, %d): %f, 标量 %f", where, from, to, vectorMax, scalarMax);
+            float maxG = scalar.max(scalarMagnitude, 0, size);
+            float[] scalarFg = new float[size];
+            float[] vectorFg = new float[size];
+            scalar.normalize(scalarMagnitude, maxG, scalarFg, from, to);
+            vector.normalize(scalarMagnitude, maxG, vectorFg, from, to);
+            checks.check(Arrays.equals(scalarFg, vectorFg), "normalize %s [%d, %d) 不同", where, from, to);
+            float[] inPlace = scalarMagnitude.clone();
+            vector.normalize(inPlace, maxG, inPlace, from, to);
+            checks.check(Arrays.equals(inPlace, from, to, scalarFg, from, to), "原地normalize %s [%d, %d) 不同", where, from, to);
+
+            checkAgainstDouble(checks, random, rows, cols);
+        }
+        return checks.report();
+    }
+
+    // 只有蓝色通道且不超过255时int实现的 Ix * Ix + Iy * Iy 不会溢出，float梯度应等于double梯度舍入为float
+    private static void checkAgainstDouble(Checks checks, Random random, int rows, int cols) {
+        int[][] matrix = new int[rows][cols];
+        for (int[] line : matrix) {
+            for (int col = 0; col < cols; col++) {
+                line[col] = random.nextInt(256);
+            }
+        }
+        double[][] expected = ProcessMatrix.findGMatrix(matrix);
+        float[] actual = SimdFeatures.gradient(SimdFeatures.flatten(matrix), rows, cols);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                float value = actual[row * cols + col];
+                if (value != (float) expected[row][col]) {
+                    checks.check(false, "梯度 %dx%d (%d, %d): %f, double实现 %f", rows, cols, row, col, value, expected[row][col]);
+                    return;
+                }
+            }
+        }
+        checks.check(true, "");
+    }
+}
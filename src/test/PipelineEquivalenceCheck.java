@@ -0,0 +1,148 @@
+package src;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 按行条带并行的特征流水线与整幅图像一次计算的等价性检查。
+ * <p>条带在并行车道上以任意顺序完成，每个条带只写自己的行，边界行的邻域从输入矩阵读取，
+ * 所以结果应与把整幅图像当作一个条带计算时逐位相同：</p>
+ * <ul>
+ *     <li>{@link FeaturePipeline} 的梯度图、fg图与最大梯度，对比整幅图像上的 {@link SimdFeatures}；</li>
+ *     <li>{@link ProcessMatrix#computeFeatures} 的全部特征，对比 {@link ProcessMatrix#featureStrip} 一次处理所有行，
+ *     只计算一项特征的 findLaplacian、computeZeroCrossing、calculateGradientDirections 也与之相同；</li>
+ *     <li>{@link CompactFeatureStore#compute} 分块得到的梯度值、方向区间与过零点，对比整幅图像的特征量化后的值；</li>
+ *     <li>{@link FeaturePipeline#toRGBMatrix} 按条带转换的RGB矩阵，对比逐像素的 getRGB。</li>
+ * </ul>
+ * <p>图像的行数覆盖从不足一个条带到几十个条带的范围。</p>
+ */
+public class PipelineEquivalenceCheck {
+
+    private static final int IMAGES = 24;
+    private static final int[] IMAGE_TYPES = {
+            BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_4BYTE_ABGR
+    };
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 19;
+        Checks.exit(run(seed));
+    }
+
+    static boolean run(long seed) {
+        Checks checks = new Checks("流水线等价性");
+        Random random = new Random(seed);
+        for (int image = 0; image < IMAGES; image++) {
+            int width = 1 + random.nextInt(image % 4 == 0 ? 600 : 120);
+            int height = 1 + random.nextInt(120);
+            int[][] matrix = randomMatrix(random, width, height, image % 3);
+            String where = width + "x" + height;
+            checkGradients(checks, matrix, where);
+            checkFeatures(checks, matrix, where);
+            checkCompactStore(checks, matrix, where);
+            checkRGBMatrix(checks, random, where, width, height, IMAGE_TYPES[image % IMAGE_TYPES.length]);
+        }
+        return checks.report();
+    }
+
+    /**
+     * @param mode 0为只有少数几种灰度（大片平坦区域，梯度与拉普拉斯多为0），1为随机RGB，2为带alpha通道的随机值
+     */
+    private static int[][] randomMatrix(Random random, int width, int height, int mode) {
+        int[][] matrix = new int[width][height];
+        for (int[] column : matrix) {
+            for (int y = 0; y < height; y++) {
+                column[y] = switch (mode) {
+                    case 0 -> random.nextInt(4) * 0x010101;
+                    case 1 -> random.nextInt(1 << 24);
+                    default -> 0xFF000000 | random.nextInt(1 << 24);
+                };
+            }
+        }
+        return matrix;
+    }
+
+    private static void checkGradients(Checks checks, int[][] matrix, String where) {
+        int rows = matrix.length;
+        int cols = matrix[0].length;
+        float[] gradient = SimdFeatures.gradient(SimdFeatures.flatten(matrix), rows, cols);
+        FeatureMap gMatrix = FeaturePipeline.findGMatrix(matrix);
+        checks.check(Arrays.equals(gradient, gMatrix.getData()), "%s: 条带梯度图与整幅图像不同", where);
+        checks.check(Arrays.equals(SimdFeatures.normalize(gradient), FeaturePipeline.findFgMatrix(gMatrix).getData()),
+                "%s: 条带fg图与整幅图像不同", where);
+        float max = SimdFeatures.max(gradient, 0, gradient.length);
+        checks.check(Double.compare(max, FeaturePipeline.findMaxGradient(gMatrix)) == 0,
+                "%s: 最大梯度 %f, 整幅图像 %f", where, FeaturePipeline.findMaxGradient(gMatrix), max);
+    }
+
+    private static void checkFeatures(Checks checks, int[][] matrix, String where) {
+        ProcessMatrix.Features strips = ProcessMatrix.computeFeatures(matrix);
+        ProcessMatrix.Features whole = new ProcessMatrix.Features(matrix.length, matrix[0].length);
+        ProcessMatrix.featureStrip(matrix, 0, matrix.length, whole);
+        checks.check(Arrays.deepEquals(strips.getIx(), whole.getIx()) && Arrays.deepEquals(strips.getIy(), whole.getIy()),
+                "%s: 条带Ix/Iy与整幅图像不同", where);
+        checks.check(sameBits(strips.getMagnitude(), whole.getMagnitude()), "%s: 条带梯度值与整幅图像不同", where);
+        checks.check(sameBits(strips.getDirection(), whole.getDirection()), "%s: 条带梯度方向与整幅图像不同", where);
+        checks.check(sameBits(strips.getLaplacian(), whole.getLaplacian()), "%s: 条带拉普拉斯值与整幅图像不同", where);
+        checks.check(Arrays.deepEquals(strips.getZeroCrossing(), whole.getZeroCrossing()), "%s: 条带过零点与整幅图像不同", where);
+        checks.check(sameBits(ProcessMatrix.findLaplacian(matrix), whole.getLaplacian()), "%s: findLaplacian不同", where);
+        checks.check(Arrays.deepEquals(ProcessMatrix.computeZeroCrossing(matrix), whole.getZeroCrossing()),
+                "%s: computeZeroCrossing不同", where);
+        checks.check(sameBits(ProcessMatrix.calculateGradientDirections(matrix), whole.getDirection()),
+                "%s: calculateGradientDirections不同", where);
+    }
+
+    private static void checkCompactStore(Checks checks, int[][] matrix, String where) {
+        FeatureMap fgMatrix = FeaturePipeline.findFgMatrix(FeaturePipeline.findGMatrix(matrix));
+        CompactFeatureStore store = CompactFeatureStore.compute(matrix, fgMatrix);
+        ProcessMatrix.Features whole = new ProcessMatrix.Features(matrix.length, matrix[0].length);
+        ProcessMatrix.featureStrip(matrix, 0, matrix.length, whole);
+        int wrong = 0;
+        for (int row = 0; row < matrix.length; row++) {
+            for (int col = 0; col < matrix[0].length; col++) {
+                int pixel = store.index(row, col);
+                int expectedMagnitude = CompactFeatureStore.quantizeMagnitude(fgMatrix.get(row, col));
+                float expectedFg = expectedMagnitude == CompactFeatureStore.MAGNITUDE_NAN ? Float.NaN
+                        : 1 - expectedMagnitude * (1f / CompactFeatureStore.MAGNITUDE_ONE);
+                if (Float.compare(store.fg(pixel), expectedFg) != 0
+                        || store.directionBin(pixel) != CompactFeatureStore.quantizeDirection(whole.getDirection()[row][col])
+                        || store.isZeroCrossing(pixel) != whole.getZeroCrossing()[row][col]) {
+                    wrong++;
+                }
+            }
+        }
+        checks.check(wrong == 0, "%s: 紧凑存储有%d个像素与整幅图像的特征不同", where, wrong);
+    }
+
+    private static void checkRGBMatrix(Checks checks, Random random, String where, int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        int[][] matrix = FeaturePipeline.toRGBMatrix(image);
+        BufferedImage converted = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        converted.getGraphics().drawImage(image, 0, 0, null);
+        boolean same = true;
+        for (int y = 0; y < height && same; y++) {
+            for (int x = 0; x < width && same; x++) {
+                same = matrix[x][y] == (converted.getRGB(x, y) & 0xFFFFFF);
+            }
+        }
+        checks.check(same, "%s: 类型%d的图像按条带转换的RGB矩阵与逐像素转换不同", where, type);
+    }
+
+    private static boolean sameBits(double[][] a, double[][] b) {
+        if (a.length != b.length) return false;
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < a[i].length; j++) {
+                if (Double.doubleToRawLongBits(a[i][j]) != Double.doubleToRawLongBits(b[i][j])) return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,204 @@
+package src;
+
+import java.util.List;
+import java.util.Random;
+
+import static src.ComputeMinCostPath.DIRECTIONS;
+
+/**
+ * @author 邵之航
+ * @version 1.0
+ * @apiNote 各最短路搜索实现与 {@link PixelDijkstra} 的等价性检查。
+ * <p>在随机fg图（部分含NaN像素）上随机取起点终点，以 {@link PixelDijkstra} 的整图搜索为基准：</p>
+ * <ul>
+ *     <li>A*、窗口搜索、随时可交出结果的搜索、{@link SearchSession}、{@link LiveWireTree} 与 delta-stepping 的距离与基准相同；</li>
+ *     <li>桶队列的距离与基准之差不超过它报告的量化误差上界；</li>
+ *     <li>计入转向惩罚后只有 {@link DirectionalDijkstra} 是精确的：它不比基准长，双向与金字塔搜索不比它短；</li>
+ *     <li>每条路径都从起点出发、逐步走到相邻像素、到达终点，沿路径累加的边权等于报告的距离。</li>
+ * </ul>
+ */
+public class SearchEquivalenceCheck {
+
+    // 与基准比较距离的相对误差：精确搜索只有累加顺序不同带来的舍入
+    private static final double EXACT_TOLERANCE = 1e-9;
+    // 最短路径树与方向展开搜索以float保存距离
+    private static final double FLOAT_TOLERANCE = 1e-5;
+    private static final int MAPS = 40;
+    private static final int QUERIES_PER_MAP = 8;
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 2;
+        Checks.exit(run(seed));
+    }
+
+    static boolean run(long seed) {
+        Checks checks = new Checks("搜索等价性");
+        Random random = new Random(seed);
+        for (int map = 0; map < MAPS; map++) {
+            // 最后几张图稍大，窗口搜索需要扩大窗口
+            int rows = map < MAPS - 4 ? 1 + random.nextInt(60) : 150 + random.nextInt(100);
+            int cols = map < MAPS - 4 ? 1 + random.nextInt(60) : 150 + random.nextInt(100);
+            FeatureMap fgMatrix = randomFgMatrix(random, rows, cols, map % 5 == 0);
+            for (int query = 0; query < QUERIES_PER_MAP; query++) {
+                SeedPoint start = new SeedPoint(random.nextInt(rows), random.nextInt(cols));
+                SeedPoint end = new SeedPoint(random.nextInt(rows), random.nextInt(cols));
+                checkQuery(checks, fgMatrix, start, end);
+            }
+            checkTrees(checks, fgMatrix, random);
+        }
+        return checks.report();
+    }
+
+    /**
+     * @param withNaN 是否让约5%的像素为NaN（边权按1计）
+     */
+    static FeatureMap randomFgMatrix(Random random, int rows, int cols, boolean withNaN) {
+        FeatureMap fgMatrix = new FeatureMap(rows, cols);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                fgMatrix.set(row, col, withNaN && random.nextInt(20) == 0 ? Float.NaN : random.nextFloat());
+            }
+        }
+        return fgMatrix;
+    }
+
+    private static void checkQuery(Checks checks, FeatureMap fgMatrix, SeedPoint start, SeedPoint end) {
+        String where = describe(fgMatrix, start, end);
+        PixelDijkstra reference = new PixelDijkstra(fgMatrix);
+        reference.reset(start.getX(), start.getY());
+        int target = reference.index(end.getX(), end.getY());
+        reference.expandUntil(target);
+        ComputeMinCostPath.PathResult expected = reference.pathTo(target);
+        checkPath(checks, fgMatrix, start, end, expected, "PixelDijkstra " + where);
+
+        for (SearchStrategy strategy : SearchStrategy.values()) {
+            ComputeMinCostPath.PathResult actual = ComputeMinCostPath.findShortestPath(fgMatrix, start, end, strategy);
+            checkPath(checks, fgMatrix, start, end, actual, strategy + " " + where);
+            switch (strategy) {
+                case DIJKSTRA, ASTAR, WINDOWED -> checks.check(
+                        Checks.close(expected.getDistance(), actual.getDistance(), EXACT_TOLERANCE),
+                        "%s %s: %f, 基准 %f", strategy, where, actual.getDistance(), expected.getDistance());
+                case BUCKET -> checks.check(
+                        Math.abs(actual.getDistance() - expected.getDistance()) <= actual.getErrorBound() + EXACT_TOLERANCE,
+                        "BUCKET %s: %f, 基准 %f, 误差上界 %f", where, actual.getDistance(), expected.getDistance(),
+                        actual.getErrorBound());
+                default -> {
+                    // 与转向惩罚有关的近似搜索，下面与精确的方向展开搜索比较
+                }
+            }
+        }
+
+        ComputeMinCostPath.PathResult exact = ComputeMinCostPath.findShortestPath(fgMatrix, start, end, SearchStrategy.EXACT);
+        checks.check(exact.getDistance() <= expected.getDistance() * (1 + FLOAT_TOLERANCE) + FLOAT_TOLERANCE,
+                "EXACT %s: %.9f 比基准 %.9f 长", where, exact.getDistance(), expected.getDistance());
+        for (SearchStrategy strategy : new SearchStrategy[]{SearchStrategy.BIDIRECTIONAL, SearchStrategy.HIERARCHICAL}) {
+            ComputeMinCostPath.PathResult actual = ComputeMinCostPath.findShortestPath(fgMatrix, start, end, strategy);
+            checks.check(actual.getDistance() >= exact.getDistance() * (1 - FLOAT_TOLERANCE) - FLOAT_TOLERANCE,
+                    "%s %s: %.9f 比最优 %.9f 短", strategy, where, actual.getDistance(), exact.getDistance());
+        }
+
+        ComputeMinCostPath.PathResult anytime = ComputeMinCostPath.findShortestPathAnytime(fgMatrix, start, end,
+                SearchBudget.ofNodes(64), partial -> checks.check(partial.isPartial(), "部分路径没有标记 %s", where));
+        checks.check(!anytime.isPartial() && Checks.close(expected.getDistance(), anytime.getDistance(), EXACT_TOLERANCE),
+                "Anytime %s: %f, 基准 %f", where, anytime.getDistance(), expected.getDistance());
+
+        ComputeMinCostPath.PathResult session = new SearchSession(fgMatrix, start).pathTo(end);
+        checks.check(Checks.close(expected.getDistance(), session.getDistance(), EXACT_TOLERANCE),
+                "SearchSession %s: %f, 基准 %f", where, session.getDistance(), expected.getDistance());
+    }
+
+    // 以随机种子点建整图最短路径树，与逐个终点的基准搜索比较
+    private static void checkTrees(Checks checks, FeatureMap fgMatrix, Random random) {
+        int rows = fgMatrix.getRows();
+        int cols = fgMatrix.getCols();
+        SeedPoint seed = new SeedPoint(random.nextInt(rows), random.nextInt(cols));
+        CompactTree parallel = DeltaStepping.buildTree(fgMatrix, seed);
+        CompactTree serial = new DeltaStepping(fgMatrix, null).build(seed.getX(), seed.getY());
+        LiveWireTree liveWire = LiveWireTree.start(new FeatureSnapshot(null, fgMatrix, fgMatrix), seed);
+        try {
+            while (!liveWire.isDone()) {
+                Thread.sleep(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        PixelDijkstra reference = new PixelDijkstra(fgMatrix);
+        reference.reset(seed.getX(), seed.getY());
+        reference.expandUntil(-1);
+        for (int query = 0; query < QUERIES_PER_MAP; query++) {
+            SeedPoint end = new SeedPoint(random.nextInt(rows), random.nextInt(cols));
+            String where = describe(fgMatrix, seed, end);
+            int target = reference.index(end.getX(), end.getY());
+            double expected = reference.isSettled(target) ? reference.distance(target) : -1;
+
+            ComputeMinCostPath.PathResult fromParallel = parallel.pathTo(end.getX(), end.getY());
+            ComputeMinCostPath.PathResult fromSerial = serial.pathTo(end.getX(), end.getY());
+            checks.check(fromParallel != null && Checks.close(expected, fromParallel.getDistance(), FLOAT_TOLERANCE),
+                    "DeltaStepping %s: %s, 基准 %f", where, fromParallel == null ? "null" : fromParallel.getDistance(), expected);
+            checks.check(fromParallel != null && fromSerial != null && fromParallel.getDistance() == fromSerial.getDistance()
+                            && fromParallel.getPath().size() == fromSerial.getPath().size(),
+                    "DeltaStepping 并行与串行的树不同 %s", where);
+            if (fromParallel != null) checkPath(checks, fgMatrix, seed, end, fromParallel, "DeltaStepping " + where, FLOAT_TOLERANCE);
+
+            ComputeMinCostPath.PathResult fromLiveWire = liveWire.getPath(end);
+            checks.check(fromLiveWire != null && Checks.close(expected, fromLiveWire.getDistance(), EXACT_TOLERANCE),
+                    "LiveWireTree %s: %s, 基准 %f", where, fromLiveWire == null ? "null" : fromLiveWire.getDistance(), expected);
+        }
+    }
+
+    private static void checkPath(Checks checks, FeatureMap fgMatrix, SeedPoint start, SeedPoint end,
+                                  ComputeMinCostPath.PathResult result, String where) {
+        checkPath(checks, fgMatrix, start, end, result, where, EXACT_TOLERANCE);
+    }
+
+    /**
+     * 路径从start出发、每步走到八邻域中的一个像素、到达end，且沿路径按 {@link #edgeCost} 累加的长度等于报告的距离
+     */
+    private static void checkPath(Checks checks, FeatureMap fgMatrix, SeedPoint start, SeedPoint end,
+                                  ComputeMinCostPath.PathResult result, String where, double tolerance) {
+        List<int[]> path = result.getPath();
+        if (path.isEmpty()) {
+            checks.check(result.getDistance() < 0, "%s: 空路径的距离为 %f", where, result.getDistance());
+            return;
+        }
+        int[] first = path.get(0);
+        int[] last = path.get(path.size() - 1);
+        checks.check(first[0] == start.getX() && first[1] == start.getY() && last[0] == end.getX() && last[1] == end.getY(),
+                "%s: 路径端点不对", where);
+        double length = 0;
+        int inDirection = -1;
+        for (int i = 1; i < path.size(); i++) {
+            int direction = directionOf(path.get(i)[0] - path.get(i - 1)[0], path.get(i)[1] - path.get(i - 1)[1]);
+            if (direction < 0) {
+                checks.check(false, "%s: 第%d步不是相邻像素", where, i);
+                return;
+            }
+            length += edgeCost(fgMatrix, path.get(i)[0], path.get(i)[1], inDirection, direction);
+            inDirection = direction;
+        }
+        checks.check(Checks.close(length, result.getDistance(), Math.max(tolerance, 1e-6)),
+                "%s: 路径长度 %.9f, 报告的距离 %.9f", where, length, result.getDistance());
+    }
+
+    /**
+     * 搜索所用的边权：即 {@link ComputeMinCostPath#calculateDynamicCost}，
+     * 只是fg为NaN的像素按 {@link CostTable} 的约定取静态代价1后仍乘上转向惩罚
+     */
+    private static double edgeCost(FeatureMap fgMatrix, int row, int col, int inDirection, int direction) {
+        if (Float.isNaN(fgMatrix.get(row, col))) return ComputeMinCostPath.turnPenalty(inDirection, direction);
+        return ComputeMinCostPath.calculateDynamicCost(fgMatrix, row, col, inDirection, direction);
+    }
+
+    private static String describe(FeatureMap fgMatrix, SeedPoint start, SeedPoint end) {
+        return String.format("(%d, %d) -> (%d, %d) on %s", start.getX(), start.getY(), end.getX(), end.getY(), fgMatrix);
+    }
+
+    private static int directionOf(int dRow, int dCol) {
+        for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+            if (DIRECTIONS[direction][0] == dRow && DIRECTIONS[direction][1] == dCol) return direction;
+        }
+        return -1;
+    }
+}